@@ -0,0 +1,53 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of one field from an already parsed detail page, one benchmark per field of {@link DetailPageSpec}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dcsfd.cache.enabled=false"})
+public class DetailFieldBenchmark {
+
+	@Param({"19977", "147525"})
+	public String id;
+
+	@Param({"TITLE_YEAR", "GENRE", "RATING", "PLOT", "POSTER", "CREATORS", "IMDB"})
+	public String field;
+
+	private Document doc;
+	private EnumSet<DetailField> fields;
+
+	@Setup
+	public void setUp() throws Exception {
+		doc = Jsoup.parse(Corpus.page(PageKind.DETAIL.url(id)), "");
+		fields = EnumSet.of(DetailField.valueOf(field));
+	}
+
+	@Benchmark
+	public MediaMetadata extract() {
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		DetailPageSpec.extract(doc, md, fields);
+		return md;
+	}
+}
@@ -0,0 +1,85 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tinymediamanager.scraper.MediaLanguages;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.io.StringReader;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The detail page as a whole: html parsing, extraction of all fields and getMetadata served from the corpus. The
+ * replay keeps the pages in memory and the page cache is off, so getMetadata measures everything but the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dcsfd.cache.enabled=false"})
+public class DetailPageBenchmark {
+
+	@Param({"19977", "147525"})
+	public String id;
+
+	private String html;
+	private Document doc;
+	private CsfdMetadataProvider provider;
+	private PageLoader live;
+
+	@Setup
+	public void setUp() throws Exception {
+		html = Corpus.page(PageKind.DETAIL.url(id));
+		doc = Jsoup.parse(html, "");
+		live = Corpus.replay();
+		provider = new CsfdMetadataProvider();
+	}
+
+	@TearDown
+	public void tearDown() {
+		PageLoader.setInstance(live);
+	}
+
+	@Benchmark
+	public Document parse() {
+		return Jsoup.parse(html, "");
+	}
+
+	@Benchmark
+	public MediaMetadata extractAll() {
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		DetailPageSpec.extract(doc, md, EnumSet.allOf(DetailField.class));
+		return md;
+	}
+
+	@Benchmark
+	public MediaMetadata streamAll() throws Exception {
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		new StreamingDetailExtractor(EnumSet.allOf(DetailField.class)).extract(new StringReader(html), md);
+		return md;
+	}
+
+	@Benchmark
+	public MediaMetadata getMetadata() throws Exception {
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setLanguage(MediaLanguages.cs);
+		options.setId(Constants.PROVIDER_ID, id);
+		return provider.getMetadata(options);
+	}
+}
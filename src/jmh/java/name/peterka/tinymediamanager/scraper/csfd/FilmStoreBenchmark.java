@@ -0,0 +1,60 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of a film store with 20000 films at the start of TMM, it should stay well below a second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FilmStoreBenchmark {
+
+	private static final int FILMS = 20000;
+
+	private File file;
+
+	@Setup
+	public void setUp() throws Exception {
+		file = new File(Files.createTempDirectory("csfd-films").toFile(), FilmStore.FILE_NAME);
+		MediaMetadata scraped = new MediaMetadata(Constants.PROVIDER_ID);
+		DetailPageSpec.extract(Corpus.document("detail-19977.html"), scraped, EnumSet.allOf(DetailField.class));
+		FilmStore store = FilmStore.open(file);
+		for (int i = 0; i < FILMS; i++) {
+			scraped.storeMetadata(MediaMetadata.TITLE, "Film " + i);
+			store.put(String.valueOf(i), "hash" + i, scraped);
+		}
+		System.out.println(FILMS + " films: " + file.length() + " bytes");
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+		file.getParentFile().delete();
+	}
+
+	@Benchmark
+	public FilmStore open() throws IOException {
+		return FilmStore.open(file);
+	}
+}
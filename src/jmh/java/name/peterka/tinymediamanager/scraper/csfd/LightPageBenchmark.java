@@ -0,0 +1,81 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.net.URLEncoder;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Desktop and mobile variant of the detail and search page: parsing and extraction of all fields. The size of the
+ * pages is printed at the setup, the same numbers as the "bytes.read.KIND" counters of a live run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LightPageBenchmark {
+
+	@Param({"desktop", "mobile"})
+	public String variant;
+
+	private boolean mobile;
+	private String detailHtml;
+	private String searchHtml;
+	private Document detail;
+	private Document search;
+
+	@Setup
+	public void setUp() throws Exception {
+		mobile = "mobile".equals(variant);
+		String query = URLEncoder.encode("Planeta opic", "UTF-8");
+		detailHtml = Corpus.page((mobile ? PageKind.MOBILE_DETAIL : PageKind.DETAIL).url("19977"));
+		searchHtml = Corpus.page((mobile ? PageKind.MOBILE_SEARCH : PageKind.SEARCH).url(query));
+		detail = Jsoup.parse(detailHtml, "");
+		search = Jsoup.parse(searchHtml, "");
+		System.out.println(variant + ": detail " + detailHtml.getBytes("UTF-8").length + " bytes, search "
+				+ searchHtml.getBytes("UTF-8").length + " bytes");
+	}
+
+	@Benchmark
+	public Document parseDetail() {
+		return Jsoup.parse(detailHtml, "");
+	}
+
+	@Benchmark
+	public MediaMetadata extractDetail() {
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		if (mobile) {
+			MobilePageSpec.extractDetail(detail, md, EnumSet.allOf(DetailField.class));
+		} else {
+			DetailPageSpec.extract(detail, md, EnumSet.allOf(DetailField.class));
+		}
+		return md;
+	}
+
+	@Benchmark
+	public Document parseSearch() {
+		return Jsoup.parse(searchHtml, "");
+	}
+
+	@Benchmark
+	public List<SearchEntry> extractSearch() {
+		return mobile ? MobilePageSpec.extractSearch(search) : SearchPageSpec.extract(search);
+	}
+}
@@ -0,0 +1,66 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tinymediamanager.scraper.MediaSearchOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search page parsing alone and the whole search() served from the corpus, with the search cache off
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dcsfd.cache.enabled=false", "-Dcsfd.searchCache.entries=0"})
+public class SearchBenchmark {
+
+	@Param({"Krtek a autíčko", "Planeta opic"})
+	public String query;
+
+	private String html;
+	private MediaSearchOptions options;
+	private CsfdMetadataProvider provider;
+	private PageLoader live;
+
+	@Setup
+	public void setUp() throws Exception {
+		html = Corpus.page(PageKind.SEARCH.url(URLEncoder.encode(query, "UTF-8")));
+		options = new MediaSearchOptions(MediaType.MOVIE, MediaSearchOptions.SearchParam.QUERY, query);
+		options.set(MediaSearchOptions.SearchParam.LANGUAGE, "cs");
+		live = Corpus.replay();
+		provider = new CsfdMetadataProvider();
+	}
+
+	@TearDown
+	public void tearDown() {
+		PageLoader.setInstance(live);
+	}
+
+	@Benchmark
+	public List<SearchEntry> parse() {
+		return SearchPageSpec.extract(Jsoup.parse(html, ""));
+	}
+
+	@Benchmark
+	public List<MediaSearchResult> search() throws Exception {
+		return provider.search(options);
+	}
+}
@@ -0,0 +1,51 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping helpers called for every page, over the genre lines and image urls of the corpus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilBenchmark {
+
+	private final String[] genreLines = {
+			"Sci-Fi / Dobrodružný",
+			"Animovaný / Pohádka / Rodinný",
+			"Drama / Krimi / Thriller / Mysteriózní",
+			"Komedie"};
+
+	private final String[] imageUrls = {
+			"//img.csfd.cz/files/images/film/posters/000/065/65520_fdb7a4.jpg",
+			"http://img.csfd.cz/files/images/film/posters/000/007/7413_cbd1e0.jpg?h180",
+			"//img.csfd.cz/files/images/film/photos/000/158/158473_2b6a9e.jpg?w700"};
+
+	@Benchmark
+	public void getTmmGenres(Blackhole bh) {
+		for (String line : genreLines) {
+			bh.consume(GenresUtil.getTmmGenres(line));
+		}
+	}
+
+	@Benchmark
+	public void fixImageUrl(Blackhole bh) {
+		for (String url : imageUrls) {
+			bh.consume(ImageUtil.fixImageUrl(url));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+
+/**
+ * Outcome of one item of a {@link BatchScraper} run: either the metadata or the error of that item
+ */
+public class BatchResult {
+	private final int index;
+	private final MediaScrapeOptions options;
+	private final MediaMetadata metadata;
+	private final Exception error;
+
+	BatchResult(int index, MediaScrapeOptions options, MediaMetadata metadata, Exception error) {
+		this.index = index;
+		this.options = options;
+		this.metadata = metadata;
+		this.error = error;
+	}
+
+	/**
+	 * @return position of the item in the submitted list
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public MediaScrapeOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * @return scraped metadata, null when the item failed
+	 */
+	public MediaMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * @return why the item failed, null on success
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResult[" + index + ", " + (isSuccess() ? "ok" : error.toString()) + "]";
+	}
+}
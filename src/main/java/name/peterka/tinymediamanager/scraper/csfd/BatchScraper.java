@@ -0,0 +1,234 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scrapes many movies at once on a bounded number of workers. Every item gets its own {@link BatchResult}, a failed
+ * item does not stop the others. Results are handed over as soon as they are ready, in completion order.
+ * <p>
+ * <pre>
+ * try (BatchScraper batch = new BatchScraper(new CsfdMetadataProvider(), 8)) {
+ *     Iterator&lt;BatchResult&gt; results = batch.scrape(BatchScraper.optionsForIds(ids));
+ *     ...
+ * }
+ * </pre>
+ */
+public class BatchScraper implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchScraper.class);
+	private static final AtomicInteger POOLS = new AtomicInteger();
+
+	/**
+	 * Receives the results, called from the worker threads
+	 */
+	public interface Callback {
+		void onResult(BatchResult result);
+	}
+
+	private final CsfdMetadataProvider provider;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+
+	/**
+	 * @param workers number of movies scraped at the same time
+	 */
+	public BatchScraper(CsfdMetadataProvider provider, int workers) {
+		this(provider, Executors.newFixedThreadPool(workers, new DaemonThreadFactory("csfd-batch-" + POOLS.incrementAndGet())), workers);
+	}
+
+	private BatchScraper(CsfdMetadataProvider provider, ExecutorService executor, int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+		}
+		this.provider = provider;
+		this.executor = executor;
+		this.permits = new Semaphore(maxConcurrency);
+	}
+
+	/**
+	 * Runs every item on its own virtual thread when the JVM has them (Java 21+), otherwise falls back to a pool of
+	 * maxConcurrency threads. At most maxConcurrency items are scraped at the same time either way.
+	 */
+	public static BatchScraper withVirtualThreads(CsfdMetadataProvider provider, int maxConcurrency) {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			return new BatchScraper(provider, executor, maxConcurrency);
+		} catch (ReflectiveOperationException e) {
+			LOGGER.debug("virtual threads are not available, using a thread pool");
+			return new BatchScraper(provider, maxConcurrency);
+		}
+	}
+
+	/**
+	 * Scrape options for plain csfd ids
+	 */
+	public static List<MediaScrapeOptions> optionsForIds(Collection<String> csfdIds) {
+		List<MediaScrapeOptions> result = new ArrayList<>(csfdIds.size());
+		for (String csfdId : csfdIds) {
+			MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+			options.setId(Constants.PROVIDER_ID, csfdId);
+			result.add(options);
+		}
+		return result;
+	}
+
+	/**
+	 * Scrapes all items and returns when the last one is done
+	 */
+	public void scrape(List<MediaScrapeOptions> items, final Callback callback) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(items.size());
+		submit(items, new Callback() {
+			@Override
+			public void onResult(BatchResult result) {
+				try {
+					callback.onResult(result);
+				} catch (RuntimeException e) {
+					LOGGER.warn("batch callback failed for " + result + ": " + e.getMessage(), e);
+				} finally {
+					done.countDown();
+				}
+			}
+		});
+		done.await();
+	}
+
+	/**
+	 * Starts scraping and returns at once; the iterator blocks until the next result is ready
+	 */
+	public Iterator<BatchResult> scrape(List<MediaScrapeOptions> items) {
+		final BlockingQueue<BatchResult> queue = new LinkedBlockingQueue<>();
+		final int total = items.size();
+		submit(items, new Callback() {
+			@Override
+			public void onResult(BatchResult result) {
+				queue.add(result);
+			}
+		});
+
+		return new Iterator<BatchResult>() {
+			private int taken;
+
+			@Override
+			public boolean hasNext() {
+				return taken < total;
+			}
+
+			@Override
+			public BatchResult next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				try {
+					BatchResult result = queue.take();
+					taken++;
+					return result;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("interrupted while waiting for batch results", e);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * One item; it delivers exactly one result, also when it is cancelled before it starts
+	 */
+	private final class Item implements Runnable {
+		private final int index;
+		private final MediaScrapeOptions options;
+		private final Callback callback;
+
+		Item(int index, MediaScrapeOptions options, Callback callback) {
+			this.index = index;
+			this.options = options;
+			this.callback = callback;
+		}
+
+		@Override
+		public void run() {
+			callback.onResult(scrapeOne(index, options));
+		}
+
+		void cancel() {
+			callback.onResult(new BatchResult(index, options, null, new CancellationException("batch closed before item " + index
+					+ " started")));
+		}
+	}
+
+	private void submit(List<MediaScrapeOptions> items, Callback callback) {
+		for (int i = 0; i < items.size(); i++) {
+			Item item = new Item(i, items.get(i), callback);
+			try {
+				executor.execute(item);
+			} catch (RejectedExecutionException e) {
+				item.cancel();
+			}
+		}
+	}
+
+	private BatchResult scrapeOne(int index, MediaScrapeOptions options) {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new BatchResult(index, options, null, e);
+		}
+		try {
+			MediaMetadata md = provider.getMetadata(options);
+			return new BatchResult(index, options, md, null);
+		} catch (Exception e) {
+			LOGGER.debug("batch item " + index + " failed: " + e.getMessage());
+			return new BatchResult(index, options, null, e);
+		} catch (Throwable t) {
+			// the caller waits for a result of every item
+			LOGGER.warn("batch item " + index + " failed: " + t, t);
+			return new BatchResult(index, options, null, new ExecutionException(t));
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Stops the workers; running items are interrupted, items which did not start yet get a result with a
+	 * {@link CancellationException}
+	 */
+	@Override
+	public void close() {
+		for (Runnable task : executor.shutdownNow()) {
+			if (task instanceof Item) {
+				((Item) task).cancel();
+			}
+		}
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
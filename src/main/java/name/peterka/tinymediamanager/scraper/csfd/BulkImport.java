@@ -0,0 +1,385 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaArtwork;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless import of many movies, for the first scrape of a large library. Every item goes through three stages,
+ * each with its own queue and workers: resolve (search by title and year, skipped for known ids), scrape
+ * ({@link CsfdMetadataProvider#getMetadata}) and artwork ({@link CsfdMovieArtworkProvider#getArtwork}).
+ * <p>
+ * Results are handed to the sink as soon as an item is done. Every successful item is appended to the checkpoint
+ * file; a new run with the same file skips them, so an import which crashed or was stopped by throttling resumes
+ * where it stopped. A run stops after {@value #MAX_FAILURES_IN_ROW} failures in a row; the queued items are handed
+ * to the sink as cancelled.
+ * <p>
+ * <pre>
+ * try (BulkImport bulk = new BulkImport(new CsfdMetadataProvider(), new CsfdMovieArtworkProvider(), checkpoint, 2, 4, 2)) {
+ *     bulk.run(items, sink);
+ * }
+ * </pre>
+ */
+public class BulkImport implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkImport.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final AtomicInteger IMPORTS = new AtomicInteger();
+
+	static final int QUEUE_CAPACITY = 100;
+	static final int MAX_FAILURES_IN_ROW = 10;
+
+	/**
+	 * Receives the results, called from the stage threads one at a time
+	 */
+	public interface Sink {
+		void onResult(BulkResult result);
+	}
+
+	/**
+	 * One movie to import, either by csfd id or by title and year
+	 */
+	public static final class Item {
+		private final String csfdId;
+		private final String title;
+		private final String year;
+
+		private Item(String csfdId, String title, String year) {
+			this.csfdId = csfdId;
+			this.title = title;
+			this.year = year;
+		}
+
+		public static Item byId(String csfdId) {
+			return new Item(csfdId, null, null);
+		}
+
+		/**
+		 * @param year null when not known
+		 */
+		public static Item byTitle(String title, String year) {
+			return new Item(null, title, year);
+		}
+
+		/**
+		 * @return key of the item in the checkpoint file
+		 */
+		String getKey() {
+			return csfdId != null ? "csfd:" + csfdId : "title:" + TitleUtil.normalize(title) + "|" + StringUtils.defaultString(year);
+		}
+
+		@Override
+		public String toString() {
+			return csfdId != null ? csfdId : title + " (" + year + ")";
+		}
+	}
+
+	private final CsfdMetadataProvider metadataProvider;
+	private final CsfdMovieArtworkProvider artworkProvider;
+	private final File checkpoint;
+	private final Set<String> done;
+	private final ThreadPoolExecutor resolving;
+	private final ThreadPoolExecutor scraping;
+	private final ThreadPoolExecutor fetchingArtwork;
+
+	private final Object lock = new Object();
+	private int outstanding;
+	private int failuresInRow;
+	private volatile boolean stopped;
+	private Writer checkpointWriter;
+
+	/**
+	 * @param artworkProvider null to import metadata only
+	 * @param checkpoint      file with the finished items, created when it does not exist
+	 */
+	public BulkImport(CsfdMetadataProvider metadataProvider, CsfdMovieArtworkProvider artworkProvider, File checkpoint,
+			int resolveWorkers, int scrapeWorkers, int artworkWorkers) throws IOException {
+		this.metadataProvider = metadataProvider;
+		this.artworkProvider = artworkProvider;
+		this.checkpoint = checkpoint;
+		this.done = readCheckpoint(checkpoint);
+
+		String prefix = "csfd-import-" + IMPORTS.incrementAndGet();
+		this.resolving = stage(prefix + "-resolve", resolveWorkers);
+		this.scraping = stage(prefix + "-scrape", scrapeWorkers);
+		this.fetchingArtwork = stage(prefix + "-artwork", artworkWorkers);
+		if (!done.isEmpty()) {
+			LOGGER.info("resuming import, " + done.size() + " items are done already");
+		}
+	}
+
+	/**
+	 * Workers with a bounded queue, a full queue blocks the stage which feeds it
+	 */
+	private static ThreadPoolExecutor stage(String name, int workers) {
+		return new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+				new DaemonThreadFactory(name), new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				if (executor.isShutdown()) {
+					throw new RejectedExecutionException("import is closed");
+				}
+				try {
+					executor.getQueue().put(r);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("interrupted", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Imports the items which are not in the checkpoint yet and returns when they are done
+	 *
+	 * @return items processed by this run
+	 */
+	public int run(List<Item> items, Sink sink) throws InterruptedException {
+		int submitted = 0;
+		for (Item item : items) {
+			if (stopped) {
+				LOGGER.warn("import stopped after " + MAX_FAILURES_IN_ROW + " failures in a row, run it again to resume");
+				break;
+			}
+			if (done.contains(item.getKey())) {
+				continue;
+			}
+			synchronized (lock) {
+				outstanding++;
+			}
+			submitted++;
+			submit(resolving, resolve(item, sink), item, sink);
+		}
+
+		synchronized (lock) {
+			while (outstanding > 0) {
+				lock.wait();
+			}
+		}
+		return submitted;
+	}
+
+	/**
+	 * @return true when the run stopped because of failures in a row
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	private Runnable resolve(final Item item, final Sink sink) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				if (skipWhenStopped(item, sink)) {
+					return;
+				}
+				try {
+					String csfdId = item.csfdId != null ? item.csfdId : search(item);
+					if (csfdId == null) {
+						finish(new BulkResult(item, null, null, null, new Exception("nothing found for " + item)), sink, false);
+						return;
+					}
+					submit(scraping, scrape(item, csfdId, sink), item, sink);
+				} catch (Exception e) {
+					finish(new BulkResult(item, null, null, null, e), sink, true);
+				}
+			}
+		};
+	}
+
+	private Runnable scrape(final Item item, final String csfdId, final Sink sink) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				if (skipWhenStopped(item, sink)) {
+					return;
+				}
+				try {
+					MediaMetadata md = metadataProvider.getMetadata(options(csfdId));
+					if (artworkProvider == null) {
+						finish(new BulkResult(item, csfdId, md, null, null), sink, false);
+					} else {
+						submit(fetchingArtwork, artwork(item, csfdId, md, sink), item, sink);
+					}
+				} catch (Exception e) {
+					finish(new BulkResult(item, csfdId, null, null, e), sink, true);
+				}
+			}
+		};
+	}
+
+	private Runnable artwork(final Item item, final String csfdId, final MediaMetadata md, final Sink sink) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					List<MediaArtwork> artwork = artworkProvider.getArtwork(options(csfdId));
+					finish(new BulkResult(item, csfdId, md, artwork, downloadImages(md, artwork), null), sink, false);
+				} catch (Exception e) {
+					finish(new BulkResult(item, csfdId, md, null, e), sink, true);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return files of the poster and the artwork, null when the image store is off
+	 */
+	private static Map<String, File> downloadImages(MediaMetadata md, List<MediaArtwork> artwork) throws IOException {
+		if (!ImageStore.isEnabled()) {
+			return null;
+		}
+		Set<String> urls = new LinkedHashSet<>();
+		String poster = md.getStringValue(MediaMetadata.POSTER_URL);
+		if (!poster.isEmpty()) {
+			urls.add(poster);
+		}
+		for (MediaArtwork a : artwork) {
+			urls.add(a.getDefaultUrl());
+		}
+		return ImageStore.getInstance().downloadAll(urls);
+	}
+
+	/**
+	 * Queued items are not sent to a site which keeps failing, the next run picks them up
+	 */
+	private boolean skipWhenStopped(Item item, Sink sink) {
+		if (!stopped) {
+			return false;
+		}
+		finish(new BulkResult(item, null, null, null, new CancellationException("import stopped")), sink, false);
+		return true;
+	}
+
+	private void submit(ExecutorService stage, Runnable task, Item item, Sink sink) {
+		try {
+			stage.execute(task);
+		} catch (RejectedExecutionException e) {
+			finish(new BulkResult(item, null, null, null, e), sink, true);
+		}
+	}
+
+	/**
+	 * @return id of the best scored search result, null when nothing was found
+	 */
+	private String search(Item item) throws Exception {
+		MediaSearchOptions options = new MediaSearchOptions(MediaType.MOVIE, MediaSearchOptions.SearchParam.QUERY, item.title);
+		if (StringUtils.isNotBlank(item.year)) {
+			options.set(MediaSearchOptions.SearchParam.YEAR, item.year);
+		}
+		MediaSearchResult best = null;
+		// a search page which can not be read is an error, not a title which was not found
+		for (MediaSearchResult result : metadataProvider.search(options, true)) {
+			if (best == null || result.getScore() > best.getScore()) {
+				best = result;
+			}
+		}
+		return best != null ? best.getId() : null;
+	}
+
+	private static MediaScrapeOptions options(String csfdId) {
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(Constants.PROVIDER_ID, csfdId);
+		return options;
+	}
+
+	/**
+	 * @param error true when the item failed, a title which was not found is not an error
+	 */
+	private void finish(BulkResult result, Sink sink, boolean error) {
+		try {
+			synchronized (sink) {
+				sink.onResult(result);
+			}
+			if (result.isSuccess()) {
+				writeCheckpoint(result.getItem());
+			}
+		} catch (RuntimeException e) {
+			LOGGER.warn("import sink failed for " + result + ": " + e.getMessage(), e);
+		} finally {
+			synchronized (lock) {
+				failuresInRow = error ? failuresInRow + 1 : 0;
+				if (failuresInRow >= MAX_FAILURES_IN_ROW) {
+					stopped = true;
+				}
+				outstanding--;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private synchronized void writeCheckpoint(Item item) {
+		try {
+			if (checkpointWriter == null) {
+				checkpointWriter = new OutputStreamWriter(new FileOutputStream(checkpoint, true), UTF8);
+			}
+			checkpointWriter.write(item.getKey() + "\n");
+			checkpointWriter.flush();
+			done.add(item.getKey());
+		} catch (IOException e) {
+			LOGGER.warn("could not write checkpoint " + checkpoint + ": " + e.getMessage());
+		}
+	}
+
+	private static Set<String> readCheckpoint(File checkpoint) throws IOException {
+		Set<String> done = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		if (!checkpoint.isFile()) {
+			return done;
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpoint), UTF8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					done.add(line);
+				}
+			}
+		}
+		return done;
+	}
+
+	/**
+	 * Stops the workers, items which did not start yet are dropped
+	 */
+	@Override
+	public void close() throws IOException {
+		for (ExecutorService stage : new ExecutorService[]{resolving, scraping, fetchingArtwork}) {
+			stage.shutdownNow();
+		}
+		synchronized (this) {
+			if (checkpointWriter != null) {
+				checkpointWriter.close();
+				checkpointWriter = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.tinymediamanager.scraper.MediaArtwork;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of one item of a {@link BulkImport}: the movie with its artwork, or the error of the stage which failed
+ */
+public class BulkResult {
+	private final BulkImport.Item item;
+	private final String csfdId;
+	private final MediaMetadata metadata;
+	private final List<MediaArtwork> artwork;
+	private final Map<String, File> images;
+	private final Exception error;
+
+	BulkResult(BulkImport.Item item, String csfdId, MediaMetadata metadata, List<MediaArtwork> artwork, Exception error) {
+		this(item, csfdId, metadata, artwork, null, error);
+	}
+
+	BulkResult(BulkImport.Item item, String csfdId, MediaMetadata metadata, List<MediaArtwork> artwork,
+			Map<String, File> images, Exception error) {
+		this.item = item;
+		this.csfdId = csfdId;
+		this.metadata = metadata;
+		this.artwork = artwork;
+		this.images = images;
+		this.error = error;
+	}
+
+	public BulkImport.Item getItem() {
+		return item;
+	}
+
+	/**
+	 * @return id of the movie, null when the title was not found
+	 */
+	public String getCsfdId() {
+		return csfdId;
+	}
+
+	/**
+	 * @return scraped metadata, null when the item failed
+	 */
+	public MediaMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * @return artwork of the gallery, null when the import has no artwork provider or the item failed
+	 */
+	public List<MediaArtwork> getArtwork() {
+		return artwork;
+	}
+
+	/**
+	 * @return downloaded poster and artwork by url, null unless the image store is enabled (csfd.images.enabled)
+	 */
+	public Map<String, File> getImages() {
+		return images;
+	}
+
+	/**
+	 * @return why the item failed, null on success
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	@Override
+	public String toString() {
+		return "BulkResult[" + item + ", " + (isSuccess() ? csfdId : error.toString()) + "]";
+	}
+}
@@ -0,0 +1,98 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to a part of csfd.cz (search, movie detail, gallery) which keeps failing. After
+ * {@code failures} failed requests in a row the breaker opens and requests fail at once; when the open time is over
+ * one trial request goes out, its success closes the breaker, its failure opens it again.
+ * <p>
+ * A failure is an I/O error or a server error (HTTP 5xx), a missing page is an answer of a healthy site.
+ */
+final class CircuitBreaker {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	static final String FAILURES = "csfd.breaker.failures";
+	static final String OPEN_SECONDS = "csfd.breaker.openSeconds";
+
+	/**
+	 * Request refused by an open breaker
+	 */
+	static final class OpenException extends IOException {
+		OpenException(String message) {
+			super(message);
+		}
+	}
+
+	private final String name;
+	private final int threshold;
+	private final long openNanos;
+
+	private int failuresInRow;
+	private boolean open;
+	private long openedAt;
+	// start of the trial request of an open breaker, 0 when there is none
+	private long trialStartedAt;
+
+	/**
+	 * @param threshold failures in a row which open the breaker
+	 * @param openMillis how long requests are refused before a trial request
+	 */
+	CircuitBreaker(String name, int threshold, long openMillis) {
+		this.name = name;
+		this.threshold = Math.max(1, threshold);
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+	}
+
+	static CircuitBreaker createDefault(String name) {
+		return new CircuitBreaker(name, CsfdConfig.getInt(FAILURES, 5), CsfdConfig.getLong(OPEN_SECONDS, 30) * 1000);
+	}
+
+	/**
+	 * @return true when the request may go out, for an open breaker only the trial request
+	 */
+	synchronized boolean allowRequest() {
+		if (!open) {
+			return true;
+		}
+		long now = System.nanoTime();
+		// a trial which never reported back does not block the breaker for good
+		if (now - openedAt >= openNanos && (trialStartedAt == 0 || now - trialStartedAt >= openNanos)) {
+			trialStartedAt = now;
+			LOGGER.debug(name + " breaker lets a trial request through");
+			return true;
+		}
+		return false;
+	}
+
+	synchronized void onSuccess() {
+		failuresInRow = 0;
+		trialStartedAt = 0;
+		if (open) {
+			open = false;
+			LOGGER.info(name + " requests to csfd.cz work again");
+		}
+	}
+
+	synchronized void onFailure() {
+		failuresInRow++;
+		if (trialStartedAt != 0 || !open && failuresInRow >= threshold) {
+			if (!open) {
+				LOGGER.info(name + " requests to csfd.cz failed " + failuresInRow + " times in a row, refusing them for "
+						+ TimeUnit.NANOSECONDS.toSeconds(openNanos) + "s");
+				ScraperMetrics.getInstance().count("breaker.opened");
+			}
+			open = true;
+			openedAt = System.nanoTime();
+			trialStartedAt = 0;
+		}
+	}
+
+	synchronized boolean isOpen() {
+		return open;
+	}
+}
@@ -5,4 +5,6 @@ package name.peterka.tinymediamanager.scraper.csfd;
  */
 public class Constants {
 	static final String BASE_URL = "http://www.csfd.cz";
+	static final String MOBILE_URL = "http://m.csfd.cz";
+	static final String PROVIDER_ID = "csfd";
 }
@@ -0,0 +1,128 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.io.File;
+
+/**
+ * Runtime settings of the scraper. Every value can be overridden by a system property (-Dcsfd.xxx=...).
+ */
+public class CsfdConfig {
+	static final String CACHE_ENABLED = "csfd.cache.enabled";
+	static final String CACHE_DIR = "csfd.cache.dir";
+	static final String CACHE_TTL_HOURS = "csfd.cache.ttlHours";
+	static final String CACHE_MEMORY_ENTRIES = "csfd.cache.memoryEntries";
+	static final String CACHE_DISK_MB = "csfd.cache.diskMb";
+	static final String STREAMING_EXTRACTION = "csfd.streaming";
+	static final String LIGHT_PAGES = "csfd.lightPages";
+	static final String LIGHT_PAGES_IMDB = "csfd.lightPages.imdb";
+	static final String REPLAY_DIR = "csfd.replay.dir";
+	static final String RECORD_DIR = "csfd.record.dir";
+	static final String METRICS_ENABLED = "csfd.metrics.enabled";
+	static final String REVALIDATE = "csfd.cache.revalidate";
+
+	private CsfdConfig() {
+	}
+
+	static boolean isCacheEnabled() {
+		return getBoolean(CACHE_ENABLED, true);
+	}
+
+	static File getCacheDir() {
+		return new File(System.getProperty(CACHE_DIR, "cache" + File.separator + "csfd"));
+	}
+
+	static long getCacheTtlMillis() {
+		return getLong(CACHE_TTL_HOURS, 7 * 24) * 60 * 60 * 1000;
+	}
+
+	static int getCacheMemoryEntries() {
+		return getInt(CACHE_MEMORY_ENTRIES, 200);
+	}
+
+	static long getCacheDiskBytes() {
+		return getLong(CACHE_DISK_MB, 512) * 1024 * 1024;
+	}
+
+	/**
+	 * Read the detail page as a stream and stop at the last needed field instead of parsing the whole page
+	 */
+	static boolean isStreamingExtraction() {
+		return getBoolean(STREAMING_EXTRACTION, false);
+	}
+
+	/**
+	 * Read the pages of the mobile site first, they are a fraction of the desktop pages; see {@link MobilePageSpec}
+	 */
+	static boolean isLightPages() {
+		return getBoolean(LIGHT_PAGES, false);
+	}
+
+	/**
+	 * Read the desktop page also when the IMDb id is the only field the mobile page does not have
+	 */
+	static boolean isLightPagesImdb() {
+		return getBoolean(LIGHT_PAGES_IMDB, false);
+	}
+
+	/**
+	 * Revalidate expired pages with a conditional request instead of downloading them again
+	 */
+	static boolean isRevalidation() {
+		return getBoolean(REVALIDATE, true);
+	}
+
+	static boolean isMetricsEnabled() {
+		return getBoolean(METRICS_ENABLED, true);
+	}
+
+	/**
+	 * @return corpus served instead of csfd.cz, null to go to the site
+	 */
+	static File getReplayDir() {
+		return getFile(REPLAY_DIR);
+	}
+
+	/**
+	 * @return directory where the downloaded pages are recorded for replay, null to not record
+	 */
+	static File getRecordDir() {
+		return getFile(RECORD_DIR);
+	}
+
+	static File getFile(String key) {
+		String value = System.getProperty(key);
+		return value == null || value.trim().isEmpty() ? null : new File(value.trim());
+	}
+
+	static boolean getBoolean(String key, boolean defaultValue) {
+		String value = System.getProperty(key);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	static int getInt(String key, int defaultValue) {
+		return (int) getLong(key, defaultValue);
+	}
+
+	static long getLong(String key, long defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	static double getDouble(String key, double defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
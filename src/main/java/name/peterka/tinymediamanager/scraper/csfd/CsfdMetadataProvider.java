@@ -2,15 +2,9 @@ package name.peterka.tinymediamanager.scraper.csfd;
 
 import net.xeoh.plugins.base.annotations.PluginImplementation;
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.nodes.TextNode;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.tinymediamanager.scraper.MediaCastMember;
-import org.tinymediamanager.scraper.MediaGenres;
 import org.tinymediamanager.scraper.MediaMetadata;
 import org.tinymediamanager.scraper.MediaProviderInfo;
 import org.tinymediamanager.scraper.MediaScrapeOptions;
@@ -19,20 +13,29 @@ import org.tinymediamanager.scraper.MediaSearchOptions.SearchParam;
 import org.tinymediamanager.scraper.MediaSearchResult;
 import org.tinymediamanager.scraper.MediaType;
 import org.tinymediamanager.scraper.UnsupportedMediaTypeException;
-import org.tinymediamanager.scraper.http.Url;
 import org.tinymediamanager.scraper.mediaprovider.IMovieMetadataProvider;
 import org.tinymediamanager.scraper.util.MetadataUtil;
-import org.tinymediamanager.scraper.util.StrgUtils;
 
-import java.io.InputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * A meta data provider for the site csfd.cz
+ * <p>
+ * Thread-safe: TMM calls one instance from several threads. Every call keeps its page and metadata to itself, the
+ * shared state (page loader, caches, indexes and stores) is safe for concurrent use and concurrent requests for one
+ * page share its download. {@code ConcurrencyStressTest} checks it, {@code LoadHarness} measures it.
  *
  * @author Martin Peterka
  */
@@ -40,18 +43,34 @@ import java.util.regex.Pattern;
 public class CsfdMetadataProvider implements IMovieMetadataProvider {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CsfdMetadataProvider.class);
 
-	private static MediaProviderInfo providerInfo = createMediaProviderInfo();
+	private static final MediaProviderInfo providerInfo = createMediaProviderInfo();
+	private static final SearchCache SEARCH_CACHE = SearchCache.createDefault();
+	private static final SingleFlight<String, List<SearchEntry>> SEARCHES = new SingleFlight<>();
+	private static final IdIndex ID_INDEX = IdIndex.isEnabled() ? IdIndex.createDefault() : null;
+	private static volatile FilmStore filmStore = FilmStore.isEnabled() ? FilmStore.createDefault() : null;
+	private static final TitleIndex TITLE_INDEX = TitleIndex.isEnabled() ? TitleIndex.createDefault() : null;
+	private static final PersonCache PERSONS = PersonCache.createDefault();
+
+	// titles of the local index which are scored
+	private static final int LOCAL_CANDIDATES = 20;
 
 	public CsfdMetadataProvider() {
 	}
 
 	private static MediaProviderInfo createMediaProviderInfo() {
-		MediaProviderInfo providerInfo = new MediaProviderInfo("csfd", "Česko-Slovenská filmová databáze (CSFD.cz)",
+		MediaProviderInfo providerInfo = new MediaProviderInfo(Constants.PROVIDER_ID, "Česko-Slovenská filmová databáze (CSFD.cz)",
 				"<html><h3>Česko-Slovenská filmová databáze</h3><br />Available languages: CZ</html>",
 				CsfdMetadataProvider.class.getResource("/csfd_cz.png"));
 		return providerInfo;
 	}
 
+	/**
+	 * Replaces the film store, e.g. by one kept in memory for a test; null turns it off
+	 */
+	static void setFilmStore(FilmStore store) {
+		filmStore = store;
+	}
+
 	@Override
 	public MediaProviderInfo getProviderInfo() {
 		return providerInfo;
@@ -59,6 +78,16 @@ public class CsfdMetadataProvider implements IMovieMetadataProvider {
 
 	@Override
 	public MediaMetadata getMetadata(MediaScrapeOptions options) throws Exception {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long allocation = metrics.startAllocation();
+		try {
+			return readMetadata(options);
+		} finally {
+			metrics.stopAllocation(ScraperMetrics.Call.METADATA, allocation);
+		}
+	}
+
+	private MediaMetadata readMetadata(MediaScrapeOptions options) throws Exception {
 		LOGGER.debug("getMetadata() " + options.toString());
 
 		if (options.getType() != MediaType.MOVIE) {
@@ -67,52 +96,110 @@ public class CsfdMetadataProvider implements IMovieMetadataProvider {
 
 		String detailUrl;
 
-		String imdbId = options.getImdbId();
-		String optionsId = StringUtils.isNotBlank(imdbId) ? imdbId : options.getId(getProviderInfo().getId());
+		String optionsId = resolveCsfdId(options.getImdbId(), options.getId(getProviderInfo().getId()));
 		if (StringUtils.isNotBlank(optionsId)) {
-			detailUrl = Constants.BASE_URL + "/film/" + optionsId;
+			detailUrl = PageKind.DETAIL.url(optionsId);
 			LOGGER.debug("detailUrl by id=" + optionsId + ": " + detailUrl);
 		} else if (options.getResult() != null) {
 			detailUrl = options.getResult().getUrl();
 			optionsId = extractCsfdId(detailUrl);
 			LOGGER.debug("detailUrl by url=" + detailUrl + ", optionsId=" + optionsId);
+			if (StringUtils.isBlank(optionsId)) {
+				throw new Exception("We did not get any useful movie url");
+			}
 		} else {
 			throw new Exception("We did not get any useful movie url");
 		}
 
 		MediaMetadata md = new MediaMetadata(providerInfo.getId());
 
-		md.storeMetadata(MediaMetadata.IMDB, optionsId);// kvuli artwork :/
+		// csfd id unless the real IMDb id is known, the artwork provider gets this one :/
+		md.storeMetadata(MediaMetadata.IMDB, optionsId);
 		md.setId("csfd", optionsId);
 		md.setId("imdb", optionsId);
 
-		Url url = new Url(detailUrl);
-		try (InputStream in = url.getInputStream()) {
-			Document doc = Jsoup.parse(in, "UTF-8", "");
-
-			// title year
-			addTitleYear(md, doc);
-
-			// Genre
-			addGenre(md, doc);
-
-			// rating
-			addRating(md, doc);
-
-			// plot
-			addPlot(md, doc);
-
-			// poster
-			addPoster(md, doc);
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		try {
+			FilmStore store = filmStore;
+			boolean reused = reuseStored(store, optionsId, md);
+			EnumSet<DetailField> missing = reused ? EnumSet.noneOf(DetailField.class) : EnumSet.allOf(DetailField.class);
+			String knownImdbId = ID_INDEX != null ? ID_INDEX.findImdbId(optionsId) : null;
+			if (knownImdbId != null) {
+				// the link is at the end of the page, do not read the whole page just for it
+				DetailPageSpec.storeImdbId(md, "imdb.com/title/" + knownImdbId);
+				missing.remove(DetailField.IMDB);
+			}
+			if (CsfdConfig.isLightPages() && !missing.isEmpty()) {
+				missing = extractMobile(optionsId, md, missing);
+			}
+			// content hash of the desktop page text the metadata was read from, the key of the film store
+			String readHash = null;
+			if (CsfdConfig.isStreamingExtraction() && !missing.isEmpty()) {
+				StreamingDetailExtractor extractor = new StreamingDetailExtractor(missing);
+				try (RecordingReader reader = new RecordingReader(PageLoader.getInstance().openReader(PageKind.DETAIL, optionsId),
+						store != null)) {
+					// includes reading the page when it is streamed from csfd.cz
+					long start = metrics.start();
+					missing = extractor.extract(reader, md);
+					metrics.stop(ScraperMetrics.Stage.EXTRACT, start);
+					if (store != null) {
+						readHash = PageVersion.contentHash(reader.recorded((int) extractor.consumed()));
+					}
+				}
+				if (!missing.isEmpty()) {
+					LOGGER.debug("streaming extractor missed " + missing + ", reading them from the whole page");
+				}
+			}
+			if (!missing.isEmpty()) {
+				String html = PageLoader.getInstance().load(PageKind.DETAIL, optionsId);
+				Document doc = PageLoader.getInstance().parse(PageKind.DETAIL, html);
+				if (store != null) {
+					readHash = PageVersion.contentHash(html);
+				}
+				long start = metrics.start();
+				missing = DetailPageSpec.extract(doc, md, missing);
+				metrics.stop(ScraperMetrics.Stage.EXTRACT, start);
+				if (!missing.isEmpty()) {
+					LOGGER.debug("not found on " + detailUrl + ": " + missing);
+				}
+			}
+			for (DetailField field : missing) {
+				metrics.count("extract.missing." + field);
+			}
+			// the stored metadata of an unchanged page is already there
+			if (readHash != null && !store.contains(optionsId, readHash)) {
+				store.put(optionsId, readHash, md);
+				metrics.count("metadata.stored");
+			}
+			// photos of known persons are free, unknown ones are read in the background for the next movies with them
+			List<String> unknownPersons = PERSONS.enrich(md.getCastMembers());
+			if (PersonCache.isEnabled() && !unknownPersons.isEmpty()) {
+				PERSONS.resolveLater(unknownPersons, PersonCache.getPerMovie());
+			}
 
-			// creators
-			addCreators(md, doc);
+			if (ID_INDEX != null) {
+				ID_INDEX.add(optionsId, md.getId("imdb") == null ? null : md.getId("imdb").toString(),
+						md.getStringValue(MediaMetadata.TITLE), md.getStringValue(MediaMetadata.ORIGINAL_TITLE),
+						md.getStringValue(MediaMetadata.YEAR));
+			}
+			if (TITLE_INDEX != null) {
+				String year = md.getStringValue(MediaMetadata.YEAR);
+				String poster = md.getStringValue(MediaMetadata.POSTER_URL);
+				List<SearchEntry> titles = new ArrayList<>(2);
+				for (String title : new String[]{md.getStringValue(MediaMetadata.TITLE), md.getStringValue(MediaMetadata.ORIGINAL_TITLE)}) {
+					if (StringUtils.isNotBlank(title)) {
+						titles.add(new SearchEntry(optionsId, title, year, detailUrl, StringUtils.isEmpty(poster) ? null : poster));
+					}
+				}
+				TITLE_INDEX.addAll(titles);
+			}
 
 			MediaSearchResult mediaSearchResult = new MediaSearchResult(getProviderInfo().getId());
 			mediaSearchResult.setIMDBId(optionsId);
 			mediaSearchResult.setId(optionsId);
 			mediaSearchResult.setMetadata(md);
 			options.setResult(mediaSearchResult);
+			Prefetcher.getInstance().afterDetail(optionsId);
 
 		} catch (Exception e) {
 			LOGGER.error("Error parsing " + detailUrl + ": " + e.getMessage(), e);
@@ -124,197 +211,324 @@ public class CsfdMetadataProvider implements IMovieMetadataProvider {
 		return md;
 	}
 
-	private void addPoster(MediaMetadata md, Document doc) {
-		Element poster = doc.getElementById("poster").getElementsByTag("img").first();
-		String src = poster.attr("src");
-		src = ImageUtil.fixImageUrl(src);
-		md.storeMetadata(MediaMetadata.POSTER_URL, src);
+	@Override
+	public List<MediaSearchResult> search(MediaSearchOptions options) throws Exception {
+		return search(options, false);
 	}
 
-	private void addTitleYear(MediaMetadata md, Document doc) {
-		// title / year
-		// 	<meta property="og:title" content="Planeta opic / Planet of the Apes (1968)">
-		Elements ogTitle = doc.getElementsByAttributeValue("property", "og:title");
-		if (!ogTitle.isEmpty()) {
-			String ogTitleContent = ogTitle.first().attr("content");
-			Pattern p = Pattern.compile("(.*) / (.*) \\(([0-9]{4})\\)");
-			Matcher m = p.matcher(ogTitleContent);
-			if (m.matches()) {
-				md.storeMetadata(MediaMetadata.TITLE, StrgUtils.removeCommonSortableName(m.group(1)));
-				md.storeMetadata(MediaMetadata.ORIGINAL_TITLE, StrgUtils.removeCommonSortableName(m.group(2)));
-				md.storeMetadata(MediaMetadata.YEAR, m.group(3));
-			} else {
-				Element header = doc.getElementsByClass("header").first();
-				md.storeMetadata(MediaMetadata.TITLE, ((TextNode) header.getElementsByTag("h1").first().childNodes().get(0)).text().trim());
-				String origin = doc.getElementsByClass("origin").first().text();
-				Pattern originPattern = Pattern.compile(".*, ([0-9]{4}).*");
-				Matcher originMatcher = originPattern.matcher(origin);
-				if (originMatcher.matches()) {
-					md.storeMetadata(MediaMetadata.YEAR, originMatcher.group(1));
-				}
-			}
+	/**
+	 * @param failOnError true to throw when the search page can not be read, TMM gets an empty list then
+	 */
+	List<MediaSearchResult> search(MediaSearchOptions options, boolean failOnError) throws Exception {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long allocation = metrics.startAllocation();
+		try {
+			return searchMovies(options, failOnError);
+		} finally {
+			metrics.stopAllocation(ScraperMetrics.Call.SEARCH, allocation);
 		}
 	}
 
-	private void addGenre(MediaMetadata md, Document doc) {
-		Elements genre = doc.getElementsByClass("genre");
-		for (Element g : genre) {
-			List<MediaGenres> tmmGenres = GenresUtil.getTmmGenres(g.text());
-			for (MediaGenres tmmGenre : tmmGenres) {
-				md.addGenre(tmmGenre);
+	private List<MediaSearchResult> searchMovies(MediaSearchOptions options, boolean failOnError) throws Exception {
+		LOGGER.debug("search() " + options.toString());
+
+		if (options.getMediaType() != MediaType.MOVIE) {
+			throw new UnsupportedMediaTypeException(options.getMediaType());
+		}
+
+		List<MediaSearchResult> resultList = new ArrayList<MediaSearchResult>();
+		String searchQuery = options.get(SearchParam.QUERY);
+		String year = options.get(MediaSearchOptions.SearchParam.YEAR);
+		List<SearchEntry> entries = null;
+
+		// 1. movies scraped before, only an IMDb id is exact; a title and year just ranks the real results
+		String imdbId = options.get(SearchParam.IMDBID);
+		String knownId = ID_INDEX != null && IdIndex.isImdbId(imdbId) ? ID_INDEX.findByImdbId(imdbId) : null;
+		String indexedId = null;
+		if (knownId != null) {
+			LOGGER.debug("found in id index: " + knownId);
+			entries = Collections.singletonList(knownEntry(knownId, searchQuery, year));
+			searchQuery = null;
+		} else if (ID_INDEX != null && StringUtils.isNotBlank(searchQuery) && StringUtils.isNotBlank(year) && !"0".equals(year)) {
+			indexedId = ID_INDEX.findByTitle(searchQuery, year);
+		}
+
+		// 2. titles seen before, only a confident match saves the search page
+		if (StringUtils.isNotEmpty(searchQuery)) {
+			List<MediaSearchResult> local = searchLocally(searchQuery, year, indexedId);
+			if (local != null) {
+				LOGGER.debug("found in title index: " + local.get(0).getTitle());
+				ScraperMetrics.getInstance().count("titleIndex.hits");
+				Prefetcher.getInstance().afterSearch(local);
+				return local;
 			}
 		}
-	}
 
-	private void addRating(MediaMetadata md, Document doc) {
-		Elements ratings = doc.getElementsByClass("average");
-		if (!ratings.isEmpty()) {
-			String r = ratings.text();
-			if (!r.isEmpty()) {
+		// 3. search for search string
+		if (StringUtils.isNotEmpty(searchQuery)) {
+			String query = MetadataUtil.removeNonSearchCharacters(searchQuery);
+			entries = SEARCH_CACHE.get(query);
+			if (entries != null) {
+				LOGGER.debug("search cache hit: " + query);
+				ScraperMetrics.getInstance().count("searchCache.hits");
+			} else {
 				try {
-					r = r.replaceAll("%", "");
-					double rating = Double.parseDouble(r) / 10.0;
-					md.storeMetadata(MediaMetadata.RATING, rating);
-					String voteCount = doc.getElementsByAttributeValue("itemProp", "ratingCount").attr("content");
-					md.storeMetadata(MediaMetadata.VOTE_COUNT, voteCount);
+					entries = searchEntries(query);
 				} catch (Exception e) {
-					LOGGER.debug("could not parse rating" + e.getMessage(), e);
+					if (failOnError) {
+						throw e;
+					}
+					LOGGER.error(String.format("failed to search for %s: %s", searchQuery, e.getMessage()), e);
 				}
 			}
 		}
-	}
 
-	private void addPlot(MediaMetadata md, Document doc) {
-		Element plots = doc.getElementById("plots");
-		if (plots != null) {
-			String plot = plots.getElementsByClass("content").first().getElementsByTag("div").first().text();
-			md.storeMetadata(MediaMetadata.PLOT, plot);
+		if (entries == null || entries.isEmpty()) {
+			LOGGER.debug("nothing found :(");
+			return resultList;
 		}
+
+		for (SearchEntry entry : entries) {
+			MediaSearchResult sr = entry.toSearchResult(providerInfo.getId());
+
+			if (knownId != null) {
+				sr.setScore(1);
+				resultList.add(sr);
+				continue;
+			}
+
+			sr.setScore(score(searchQuery, year, sr, indexedId));
+			resultList.add(sr);
+		}
+		Prefetcher.getInstance().afterSearch(resultList);
+		return resultList;
 	}
 
-	private void addCreators(MediaMetadata md, Document doc) {
-		Elements creators = doc.getElementsByClass("creators").first().getElementsByTag("h4");
+	/**
+	 * compare score based on names
+	 *
+	 * @param indexedId csfd id the id index has for the title and year, null when none
+	 */
+	private static float score(String searchQuery, String year, MediaSearchResult sr, String indexedId) {
+		// the index keeps only hashes and the last movie of a title and year, a real result of that year confirms it
+		if (sr.getId().equals(indexedId) && year.equals(sr.getYear())) {
+			LOGGER.debug("search result " + indexedId + " was scraped before as " + searchQuery + " (" + year + ")");
+			return 1;
+		}
+		float score = MetadataUtil.calculateScore(searchQuery, sr.getTitle());
 
-		for (int i = 0; i < creators.size(); i++) {
-			Element creator = creators.get(i);
-			MediaCastMember.CastType castType = getCastType(creator);
+		if (year != null && !year.isEmpty() && !year.equals("0") && !year.equals(sr.getYear())) {
+			LOGGER.debug("parsed year does not match search result year - downgrading score by 0.01");
+			score = score - 0.01f;
+		}
+		return score;
+	}
 
-			Elements persons = creator.parent().getElementsByTag("a");
-			for (int j = 0; j < persons.size(); j++) {
-				String person = persons.get(j).text();
-				MediaCastMember cm = new MediaCastMember();
-				cm.setName(person);
-				cm.setType(castType);
-				md.addCastMember(cm);
+	/**
+	 * @return the title index entry of the movie with its real title, year and poster; one made of the query when the
+	 * index does not have it
+	 */
+	private static SearchEntry knownEntry(String csfdId, String searchQuery, String year) {
+		if (TITLE_INDEX != null && StringUtils.isNotBlank(searchQuery)) {
+			for (SearchEntry entry : TITLE_INDEX.find(searchQuery, LOCAL_CANDIDATES)) {
+				if (entry.id.equals(csfdId)) {
+					return entry;
+				}
 			}
 		}
+		return new SearchEntry(csfdId, searchQuery, year, PageKind.DETAIL.url(csfdId), null);
 	}
 
-	private MediaCastMember.CastType getCastType(Element creator) {
-		MediaCastMember.CastType castType = MediaCastMember.CastType.OTHER;
-		String creatorType = creator.text();
-		if ("Režie:".equals(creatorType)) {
-			castType = MediaCastMember.CastType.DIRECTOR;
+	/**
+	 * Scores the titles of the local index like the search page. Without a year a remake or a movie not seen yet can
+	 * not be told apart, so the search page is asked then.
+	 *
+	 * @return best first, null when the index is not sure
+	 */
+	private List<MediaSearchResult> searchLocally(String searchQuery, String year, String indexedId) {
+		if (TITLE_INDEX == null || StringUtils.isBlank(year) || "0".equals(year)) {
+			return null;
 		}
-		if ("Předloha:".equals(creatorType)) {
-			castType = MediaCastMember.CastType.WRITER;
+		Map<String, MediaSearchResult> best = new LinkedHashMap<>();
+		for (SearchEntry entry : TITLE_INDEX.find(searchQuery, LOCAL_CANDIDATES)) {
+			MediaSearchResult sr = entry.toSearchResult(providerInfo.getId());
+			sr.setScore(score(searchQuery, year, sr, indexedId));
+			MediaSearchResult known = best.get(entry.id);
+			// czech and original title of one movie
+			if (known == null || sr.getScore() > known.getScore()) {
+				best.put(entry.id, sr);
+			}
 		}
-		if ("Hrají:".equals(creatorType)) {
-			castType = MediaCastMember.CastType.ACTOR;
+		List<MediaSearchResult> results = new ArrayList<>(best.values());
+		Collections.sort(results, new Comparator<MediaSearchResult>() {
+			@Override
+			public int compare(MediaSearchResult a, MediaSearchResult b) {
+				return Float.compare(b.getScore(), a.getScore());
+			}
+		});
+		if (results.isEmpty() || results.get(0).getScore() < TITLE_INDEX.getMinScore() || !year.equals(results.get(0).getYear())) {
+			return null;
 		}
-		return castType;
+		return results;
 	}
 
-	@Override
-	public List<MediaSearchResult> search(MediaSearchOptions options) throws Exception {
-		LOGGER.debug("search() " + options.toString());
+	/**
+	 * Downloads and parses the search page, the rows are not scored yet. Concurrent searches for the same query share
+	 * one download and parse.
+	 */
+	private List<SearchEntry> searchEntries(final String query) throws Exception {
+		return SEARCHES.execute(SearchCache.key(query), new Callable<List<SearchEntry>>() {
+			@Override
+			public List<SearchEntry> call() throws Exception {
+				LOGGER.debug("search for everything: " + query);
+				String encoded = URLEncoder.encode(query, "UTF-8");
+				List<SearchEntry> entries = CsfdConfig.isLightPages() ? searchMobile(encoded) : null;
+				if (entries == null) {
+					Document doc = PageLoader.getInstance().loadDocument(PageKind.SEARCH, encoded);
+					ScraperMetrics metrics = ScraperMetrics.getInstance();
+					long start = metrics.start();
+					entries = SearchPageSpec.extract(doc);
+					metrics.stop(ScraperMetrics.Stage.EXTRACT, start);
+				}
+				SEARCH_CACHE.put(query, entries);
+				if (TITLE_INDEX != null) {
+					TITLE_INDEX.addAll(entries);
+				}
+				return entries;
+			}
+		});
+	}
 
-		if (options.getMediaType() != MediaType.MOVIE) {
-			throw new UnsupportedMediaTypeException(options.getMediaType());
+	/**
+	 * Rows of the mobile search page, they have no posters
+	 *
+	 * @return null when the page could not be read or has no rows, the desktop page is asked then
+	 */
+	private static List<SearchEntry> searchMobile(String encodedQuery) {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		try {
+			Document doc = PageLoader.getInstance().loadDocument(PageKind.MOBILE_SEARCH, encodedQuery);
+			long start = metrics.start();
+			List<SearchEntry> entries = MobilePageSpec.extractSearch(doc);
+			metrics.stop(ScraperMetrics.Stage.EXTRACT, start);
+			if (!entries.isEmpty()) {
+				return entries;
+			}
+		} catch (IOException e) {
+			LOGGER.debug("could not load mobile search " + encodedQuery + ", using the desktop page: " + e.getMessage());
+			metrics.count("light.failed");
+			return null;
 		}
+		metrics.count("light.fallback");
+		return null;
+	}
 
-		List<MediaSearchResult> resultList = new ArrayList<MediaSearchResult>();
-		String searchString = "";
-		String searchQuery = "";
-		Elements movieLinks = null;
-		String year = options.get(MediaSearchOptions.SearchParam.YEAR);
+	/**
+	 * Reads the fields from the mobile detail page, the desktop page is read only for the fields it does not have. The
+	 * IMDb id alone is not worth the desktop page unless {@link CsfdConfig#isLightPagesImdb()}.
+	 *
+	 * @return fields which are still missing, all of them when the mobile page could not be read
+	 */
+	private static EnumSet<DetailField> extractMobile(String csfdId, MediaMetadata md, EnumSet<DetailField> fields) {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		Document doc;
+		try {
+			doc = PageLoader.getInstance().loadDocument(PageKind.MOBILE_DETAIL, csfdId);
+		} catch (IOException e) {
+			LOGGER.debug("could not load mobile detail of " + csfdId + ", using the desktop page: " + e.getMessage());
+			metrics.count("light.failed");
+			return fields;
+		}
+		long start = metrics.start();
+		EnumSet<DetailField> missing = MobilePageSpec.extractDetail(doc, md, fields);
+		metrics.stop(ScraperMetrics.Stage.EXTRACT, start);
+		// the mobile page has no IMDb link, the whole desktop page just for it would undo the light pages
+		if (missing.equals(EnumSet.of(DetailField.IMDB)) && !CsfdConfig.isLightPagesImdb()) {
+			LOGGER.debug("mobile detail of " + csfdId + " misses only the IMDb id, keeping the csfd id");
+			metrics.count("light.imdbSkipped");
+			return EnumSet.noneOf(DetailField.class);
+		}
+		if (!missing.isEmpty()) {
+			LOGGER.debug("mobile detail of " + csfdId + " misses " + missing + ", reading them from the desktop page");
+			metrics.count("light.fallback");
+		}
+		return missing;
+	}
 
+	/**
+	 * Loads the detail page of a movie scraped before; when its content did not change the stored metadata is copied to
+	 * md and the page is not parsed. A film stored from a streamed part of the page is reused only when the part is read
+	 * again.
+	 */
+	private static boolean reuseStored(FilmStore store, String csfdId, MediaMetadata md) throws IOException {
+		PageLoader loader = PageLoader.getInstance();
+		if (store == null || !store.contains(csfdId)) {
+			return false;
+		}
+		// streaming and light pages do not read the whole page, do not download it just for the check
+		boolean wholePage = !CsfdConfig.isStreamingExtraction() && !CsfdConfig.isLightPages();
+		if (!wholePage && !loader.getCache().contains(PageKind.DETAIL, csfdId)) {
+			return false;
+		}
+		String html = loader.load(PageKind.DETAIL, csfdId);
+		if (!store.copyTo(csfdId, PageVersion.contentHash(html), md)) {
+			return false;
+		}
+		LOGGER.debug("detail page of " + csfdId + " did not change, reusing its metadata");
+		ScraperMetrics.getInstance().count("metadata.reused");
+		return true;
+	}
 
-		// 2. search for search string
-		if (StringUtils.isNotEmpty(options.get(SearchParam.QUERY))) {
-			try {
-				String query = options.get(MediaSearchOptions.SearchParam.QUERY);
-				searchQuery = query;
-				query = MetadataUtil.removeNonSearchCharacters(query);
-				searchString = Constants.BASE_URL + "/hledat/?q=" + URLEncoder.encode(query, "UTF-8");
-				LOGGER.debug("search for everything: " + query);
+	/**
+	 * Keeps the chars read from the page, for the content hash of the part the streaming extractor used
+	 */
+	private static final class RecordingReader extends FilterReader {
+		private final StringBuilder recorded;
 
-				Url url = new Url(searchString);
-				InputStream in = url.getInputStream();
-				Document doc = Jsoup.parse(in, "UTF-8", "");
-				in.close();
-				// only look for movie links
-				movieLinks = doc.getElementsByClass("film");
-				LOGGER.debug("found " + movieLinks.size() + " search results");
-			} catch (Exception e) {
-				LOGGER.error(String.format("failed to search for %s: %s", searchQuery, e.getMessage()), e);
-			}
+		RecordingReader(Reader in, boolean record) {
+			super(in);
+			recorded = record ? new StringBuilder() : null;
 		}
 
-		if (movieLinks == null || movieLinks.isEmpty()) {
-			LOGGER.debug("nothing found :(");
-			return resultList;
+		@Override
+		public int read() throws IOException {
+			int c = in.read();
+			if (c != -1 && recorded != null) {
+				recorded.append((char) c);
+			}
+			return c;
 		}
 
-		for (Element movieLink : movieLinks) {
-			try {
-				MediaSearchResult sr = new MediaSearchResult(providerInfo.getId());
-				String csfdId = extractCsfdId(movieLink.toString());
-				sr.setId(csfdId);
-				sr.setIMDBId(csfdId);
-				sr.setTitle(movieLink.text());
-				LOGGER.debug(String.format("found movie '%s', id=%s", sr.getTitle(), sr.getId()));
-
-				Elements firstDecription = movieLink.parent().parent().getElementsByTag("p");
-				if (!firstDecription.isEmpty()) {
-					String description = firstDecription.get(0).text();
-					int yearIndex = description.lastIndexOf(",");
-					String movieYear = description.substring(yearIndex + 2).trim();// skrip comma
-					sr.setYear(movieYear);
-				} else {
-					// z Dalsi nalezene zaznamy
-					String yearDesc = movieLink.parent().getElementsByClass("film-year").text().replaceAll("\\(|\\)", "");
-					sr.setYear(yearDesc);
-				}
-				sr.setMediaType(MediaType.MOVIE);
-				sr.setUrl(Constants.BASE_URL + "/" + movieLink.attr("href"));
-				String poster = movieLink.parent().parent().parent().getElementsByClass("film-poster-small").get(0).attr("src");
-				sr.setPosterUrl(ImageUtil.fixImageUrl(poster));
-
-				// check if it has at least a title and url
-				if (StringUtils.isBlank(sr.getTitle()) || StringUtils.isBlank(sr.getUrl())) {
-					continue;
-				}
-
-				// compare score based on names
-				float score = MetadataUtil.calculateScore(searchQuery, sr.getTitle());
+		@Override
+		public int read(char[] buffer, int off, int len) throws IOException {
+			int n = in.read(buffer, off, len);
+			if (n > 0 && recorded != null) {
+				recorded.append(buffer, off, n);
+			}
+			return n;
+		}
 
-				if (year != null && !year.isEmpty() && !year.equals("0") && !year.equals(sr.getYear())) {
-					LOGGER.debug("parsed year does not match search result year - downgrading score by 0.01");
-					score = score - 0.01f;
-				}
-				sr.setScore(score);
+		String recorded(int length) {
+			return recorded.substring(0, Math.min(length, recorded.length()));
+		}
+	}
 
-				resultList.add(sr);
-			} catch (Exception e) {
-				LOGGER.warn("error parsing movie result: " + e.getMessage(), e);
-			}
+	/**
+	 * The IMDb id of TMM is the csfd id for movies scraped by older versions, a real IMDb id is looked up in the index
+	 *
+	 * @return csfd id or null
+	 */
+	static String resolveCsfdId(String imdbId, String csfdId) {
+		if (IdIndex.isImdbId(imdbId)) {
+			String indexed = ID_INDEX != null ? ID_INDEX.findByImdbId(imdbId) : null;
+			return StringUtils.isNotBlank(csfdId) ? csfdId : indexed;
 		}
-		return resultList;
+		return StringUtils.isNotBlank(imdbId) ? imdbId : csfdId;
 	}
 
 	private String extractCsfdId(String movieLink) {
-		return StrgUtils.substr(movieLink, "film\\/(\\d+).*");
+		Matcher m = SearchPageSpec.FILM_ID.matcher(movieLink);
+		return m.find() ? m.group(1) : "";
 	}
 
 }
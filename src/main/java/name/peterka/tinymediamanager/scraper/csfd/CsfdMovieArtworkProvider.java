@@ -1,35 +1,32 @@
 package name.peterka.tinymediamanager.scraper.csfd;
 
 import net.xeoh.plugins.base.annotations.PluginImplementation;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tinymediamanager.scraper.MediaArtwork;
 import org.tinymediamanager.scraper.MediaProviderInfo;
 import org.tinymediamanager.scraper.MediaScrapeOptions;
-import org.tinymediamanager.scraper.http.Url;
 import org.tinymediamanager.scraper.mediaprovider.IMovieArtworkProvider;
 
-import java.io.InputStream;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static name.peterka.tinymediamanager.scraper.csfd.Constants.BASE_URL;
 
 /**
  * Artwork provider for csfd.cz
+ * <p>
+ * Thread-safe like {@link CsfdMetadataProvider}; every call gets its own {@link GalleryIterator}, which must not be
+ * shared between threads.
  */
 @PluginImplementation
 public class CsfdMovieArtworkProvider implements IMovieArtworkProvider {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CsfdMetadataProvider.class);
 
 
-	private MediaProviderInfo providerInfo;
+	private final MediaProviderInfo providerInfo;
 
 	public CsfdMovieArtworkProvider() {
 		providerInfo = createMediaProviderInfo();
@@ -48,56 +45,47 @@ public class CsfdMovieArtworkProvider implements IMovieArtworkProvider {
 	}
 
 	/**
-	 * @param options
-	 * @return
-	 * @throws Exception
+	 * @throws IOException when a page of the gallery could not be read
 	 */
 	@Override
 	public List<MediaArtwork> getArtwork(MediaScrapeOptions options) throws Exception {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long allocation = metrics.startAllocation();
+		try {
+			List<MediaArtwork> result = new ArrayList<>();
+			Iterator<MediaArtwork> artwork = getArtwork(options, Integer.MAX_VALUE);
+			while (artwork.hasNext()) {
+				result.add(artwork.next());
+			}
+			return result;
+		} catch (GalleryIterator.ReadException e) {
+			throw e.getCause();
+		} finally {
+			metrics.stopAllocation(ScraperMetrics.Call.ARTWORK, allocation);
+		}
+	}
+
+	/**
+	 * Reads the gallery lazily, the pages are fetched while the caller iterates. A page which can not be read ends
+	 * the iteration with an unchecked exception whose cause is the IOException.
+	 *
+	 * @param limit max. artwork, pages beyond it are not downloaded
+	 * @return nothing when the csfd id of the movie is not known
+	 */
+	public Iterator<MediaArtwork> getArtwork(MediaScrapeOptions options, int limit) {
 		String csfdId = options.getId(getProviderInfo().getId());
 		if (csfdId == null) {
-			csfdId = options.getImdbId();//XXX je to tak, asi
+			// id stored by the metadata provider, older versions stored it as the IMDb id
+			csfdId = CsfdMetadataProvider.resolveCsfdId(options.getImdbId(), options.getId(Constants.PROVIDER_ID));
 		}
 
 		LOGGER.debug("get artwork options " + options);
-		LOGGER.debug("get artwork page id=" + csfdId);
-		LinkedList<MediaArtwork> result = new LinkedList<>();
-
-		Url url = new Url(BASE_URL + "/film/" + csfdId + "/galerie");
-		try (InputStream in = url.getInputStream()) {
-			Document doc = Jsoup.parse(in, "UTF-8", "");
-
-			Elements photos = doc.getElementsByClass("photo");
-
-			LOGGER.debug("Photos: " + photos);
-
-			for (int i = 0; i < photos.size(); i++) {
-				Element photo = photos.get(i);
-
-				String style = photo.attr("style");
-				Pattern p = Pattern.compile(".*'(.*)'.*");
-				Matcher matcher = p.matcher(style);
-				if (matcher.matches()) {
-					String background = matcher.group(1);
-					String backgroundUrl = ImageUtil.fixImageUrl(background);
-
-					MediaArtwork artwork = new MediaArtwork();
-					MediaArtwork.MediaArtworkType type = MediaArtwork.MediaArtworkType.POSTER;
-					artwork.setType(type);
-					artwork.setDefaultUrl(backgroundUrl);
-					artwork.setPreviewUrl(backgroundUrl);
-					artwork.setProviderId(providerInfo.getId());
-					artwork.setSizeOrder(MediaArtwork.FanartSizes.MEDIUM.getOrder());
-					artwork.addImageSize(700, 400, backgroundUrl);// TODO: lepe
-					artwork.setImdbId(csfdId);
-
-					LOGGER.debug(String.format("Found artwork at %s / result=%s", backgroundUrl, artwork));
-					result.add(artwork);
-				}
-
-			}
-
-			return result;
+		if (StringUtils.isBlank(csfdId)) {
+			// a real IMDb id which is not in the id index
+			LOGGER.debug("no csfd id for " + options.getImdbId() + ", no artwork");
+			return Collections.emptyIterator();
 		}
+		LOGGER.debug("get artwork page id=" + csfdId);
+		return new GalleryIterator(csfdId, providerInfo.getId(), limit);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named daemon threads, so background work of the scraper never keeps TMM from exiting
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+	private final String prefix;
+	private final AtomicInteger thread = new AtomicInteger();
+
+	DaemonThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, prefix + "-" + thread.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+}
@@ -0,0 +1,15 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+/**
+ * Fields read from the detail page of a movie
+ */
+enum DetailField {
+	TITLE_YEAR,
+	GENRE,
+	RATING,
+	PLOT,
+	POSTER,
+	CREATORS,
+	// link to imdb.com, near the end of the page
+	IMDB
+}
@@ -0,0 +1,240 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaGenres;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.util.StrgUtils;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What is read from the detail page of a movie
+ */
+final class DetailPageSpec {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DetailPageSpec.class);
+
+	// <meta property="og:title" content="Planeta opic / Planet of the Apes (1968)">
+	static final Pattern OG_TITLE = Pattern.compile("(.*) / (.*) \\(([0-9]{4})\\)");
+	// USA, 1968, 112 min
+	private static final Pattern ORIGIN_YEAR = Pattern.compile(".*, ([0-9]{4}).*");
+	// http://www.imdb.com/title/tt0063442/
+	static final Pattern IMDB_LINK = Pattern.compile("imdb\\.com/title/(tt\\d+)");
+	// /tvurce/5952-charlton-heston/
+	static final Pattern PERSON_LINK = Pattern.compile("tvurce/(\\d+)");
+
+	/**
+	 * Values which need more than one element, combined in {@link #finish}
+	 */
+	private static final class Page {
+		final MediaMetadata md;
+		boolean titleFallback;
+		Element header;
+		String origin;
+		StringBuilder average;
+		String voteCount = "";
+
+		Page(MediaMetadata md) {
+			this.md = md;
+		}
+	}
+
+	private static final ExtractionSpec<Page> SPEC = ExtractionSpec.<Page>builder()
+			.attribute("property", "og:title", DetailField.TITLE_YEAR, true, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					Matcher m = OG_TITLE.matcher(element.attr("content"));
+					if (m.matches()) {
+						page.md.storeMetadata(MediaMetadata.TITLE, StrgUtils.removeCommonSortableName(m.group(1)));
+						page.md.storeMetadata(MediaMetadata.ORIGINAL_TITLE, StrgUtils.removeCommonSortableName(m.group(2)));
+						page.md.storeMetadata(MediaMetadata.YEAR, m.group(3));
+						return true;
+					}
+					page.titleFallback = true;
+					return false;
+				}
+			})
+			.className("header", DetailField.TITLE_YEAR, true, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					page.header = element;
+					return false;
+				}
+			})
+			.className("origin", DetailField.TITLE_YEAR, true, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					page.origin = element.text();
+					return false;
+				}
+			})
+			.className("genre", DetailField.GENRE, false, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					for (MediaGenres tmmGenre : GenresUtil.getTmmGenres(element.text())) {
+						page.md.addGenre(tmmGenre);
+					}
+					return true;
+				}
+			})
+			.className("average", DetailField.RATING, false, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					String text = element.text();
+					if (page.average == null) {
+						page.average = new StringBuilder(text);
+					} else if (!text.isEmpty()) {
+						page.average.append(' ').append(text);
+					}
+					return false;
+				}
+			})
+			.attribute("itemprop", "ratingCount", DetailField.RATING, true, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					page.voteCount = element.attr("content");
+					return false;
+				}
+			})
+			.id("plots", DetailField.PLOT, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					Element content = element.getElementsByClass("content").first();
+					if (content == null) {
+						return false;
+					}
+					page.md.storeMetadata(MediaMetadata.PLOT, content.getElementsByTag("div").first().text());
+					return true;
+				}
+			})
+			.id("poster", DetailField.POSTER, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					Element poster = element.getElementsByTag("img").first();
+					if (poster == null) {
+						return false;
+					}
+					page.md.storeMetadata(MediaMetadata.POSTER_URL, ImageUtil.fixImageUrl(poster.attr("src")));
+					return true;
+				}
+			})
+			.className("creators", DetailField.CREATORS, true, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					for (Element creator : element.getElementsByTag("h4")) {
+						MediaCastMember.CastType castType = getCastType(creator.text());
+						for (Element person : creator.parent().getElementsByTag("a")) {
+							MediaCastMember cm = new MediaCastMember();
+							cm.setName(person.text());
+							cm.setType(castType);
+							storePersonId(cm, person.attr("href"));
+							page.md.addCastMember(cm);
+						}
+					}
+					return true;
+				}
+			})
+			.className("www-imdb", DetailField.IMDB, true, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					return storeImdbId(page.md, element.attr("href"));
+				}
+			})
+			.build();
+
+	private DetailPageSpec() {
+	}
+
+	/**
+	 * Reads the fields from the page into the metadata in one pass.
+	 *
+	 * @return requested fields which were not found on the page
+	 */
+	static EnumSet<DetailField> extract(Node page, MediaMetadata md, EnumSet<DetailField> fields) {
+		Page target = new Page(md);
+		Set<Object> captured = SPEC.extract(page, target, fields);
+		finish(target, fields, captured);
+
+		EnumSet<DetailField> missing = EnumSet.copyOf(fields);
+		missing.removeAll(captured);
+		return missing;
+	}
+
+	private static void finish(Page page, EnumSet<DetailField> fields, Set<Object> captured) {
+		MediaMetadata md = page.md;
+
+		// title without original title, take it from the header
+		if (fields.contains(DetailField.TITLE_YEAR) && page.titleFallback && page.header != null) {
+			try {
+				Node title = page.header.getElementsByTag("h1").first().childNode(0);
+				md.storeMetadata(MediaMetadata.TITLE, ((TextNode) title).text().trim());
+				if (page.origin != null) {
+					Matcher originMatcher = ORIGIN_YEAR.matcher(page.origin);
+					if (originMatcher.matches()) {
+						md.storeMetadata(MediaMetadata.YEAR, originMatcher.group(1));
+					}
+				}
+				captured.add(DetailField.TITLE_YEAR);
+			} catch (Exception e) {
+				LOGGER.debug("could not parse title from header: " + e.getMessage(), e);
+			}
+		}
+
+		if (fields.contains(DetailField.RATING) && page.average != null && page.average.length() > 0) {
+			try {
+				double rating = Double.parseDouble(page.average.toString().replace("%", "")) / 10.0;
+				md.storeMetadata(MediaMetadata.RATING, rating);
+				md.storeMetadata(MediaMetadata.VOTE_COUNT, page.voteCount);
+				captured.add(DetailField.RATING);
+			} catch (Exception e) {
+				LOGGER.debug("could not parse rating" + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Stores the IMDb id of the imdb.com link
+	 *
+	 * @return false when the link has no id
+	 */
+	static boolean storeImdbId(MediaMetadata md, String href) {
+		Matcher m = IMDB_LINK.matcher(href);
+		if (!m.find()) {
+			return false;
+		}
+		md.storeMetadata(MediaMetadata.IMDB, m.group(1));
+		md.setId("imdb", m.group(1));
+		return true;
+	}
+
+	/**
+	 * Stores the csfd id of the person link, see {@link PersonCache}
+	 */
+	static void storePersonId(MediaCastMember cm, String href) {
+		Matcher m = PERSON_LINK.matcher(href);
+		if (m.find()) {
+			cm.setId(m.group(1));
+		}
+	}
+
+	static MediaCastMember.CastType getCastType(String creatorType) {
+		MediaCastMember.CastType castType = MediaCastMember.CastType.OTHER;
+		if ("Režie:".equals(creatorType)) {
+			castType = MediaCastMember.CastType.DIRECTOR;
+		}
+		if ("Předloha:".equals(creatorType)) {
+			castType = MediaCastMember.CastType.WRITER;
+		}
+		if ("Hrají:".equals(creatorType)) {
+			castType = MediaCastMember.CastType.ACTOR;
+		}
+		return castType;
+	}
+}
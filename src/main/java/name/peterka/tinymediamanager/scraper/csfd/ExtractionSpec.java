@@ -0,0 +1,264 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Declarative description of what to read from a page. The rules are compiled once into lookup tables by id, tag,
+ * class and attribute; {@link #extract} then fills the target in a single traversal of the document instead of one
+ * document scan per field.
+ * <p>
+ * A compiled spec is immutable and can be shared between threads.
+ *
+ * @param <T> object the handlers write into
+ */
+final class ExtractionSpec<T> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExtractionSpec.class);
+
+	/**
+	 * Reads one matched element into the target
+	 */
+	interface Handler<T> {
+		/**
+		 * @return true when the field of the rule was captured
+		 */
+		boolean handle(Element element, T target);
+	}
+
+	private static final class Rule<T> {
+		final int index;
+		final Object field;
+		final boolean firstOnly;
+		final String key;
+		final String value;
+		final Handler<T> handler;
+
+		Rule(int index, Object field, boolean firstOnly, String key, String value, Handler<T> handler) {
+			this.index = index;
+			this.field = field;
+			this.firstOnly = firstOnly;
+			this.key = key;
+			this.value = value;
+			this.handler = handler;
+		}
+	}
+
+	private final int ruleCount;
+	private final Map<String, List<Rule<T>>> byId;
+	private final Map<String, List<Rule<T>>> byTag;
+	private final List<Rule<T>> byClass;
+	private final List<Rule<T>> byAttribute;
+
+	private ExtractionSpec(Builder<T> builder) {
+		this.ruleCount = builder.ruleCount;
+		this.byId = builder.byId;
+		this.byTag = builder.byTag;
+		this.byClass = builder.byClass;
+		this.byAttribute = builder.byAttribute;
+	}
+
+	static <T> Builder<T> builder() {
+		return new Builder<>();
+	}
+
+	/**
+	 * Walks the document once and runs the matching rules.
+	 *
+	 * @param fields fields to read, null for all of them
+	 * @return fields which were captured by at least one rule
+	 */
+	Set<Object> extract(Node root, T target, Collection<?> fields) {
+		Extraction extraction = new Extraction(target, fields);
+		traverse(extraction, root);
+		return extraction.captured;
+	}
+
+	/**
+	 * Depth first walk, same order as jsoup's NodeTraversor
+	 */
+	static void traverse(NodeVisitor visitor, Node root) {
+		Node node = root;
+		int depth = 0;
+		while (node != null) {
+			visitor.head(node, depth);
+			if (node.childNodeSize() > 0) {
+				node = node.childNode(0);
+				depth++;
+			} else {
+				while (node.nextSibling() == null && depth > 0) {
+					visitor.tail(node, depth);
+					node = node.parentNode();
+					depth--;
+				}
+				visitor.tail(node, depth);
+				if (node == root) {
+					break;
+				}
+				node = node.nextSibling();
+			}
+		}
+	}
+
+	private final class Extraction implements NodeVisitor {
+		final T target;
+		final boolean[] active = new boolean[ruleCount];
+		final boolean[] fired = new boolean[ruleCount];
+		final Set<Object> captured = new HashSet<>();
+
+		Extraction(T target, Collection<?> fields) {
+			this.target = target;
+			activate(byId.values(), fields);
+			activate(byTag.values(), fields);
+			activate(byClass, fields);
+			activate(byAttribute, fields);
+		}
+
+		private void activate(Collection<List<Rule<T>>> rules, Collection<?> fields) {
+			for (List<Rule<T>> list : rules) {
+				activate(list, fields);
+			}
+		}
+
+		private void activate(List<Rule<T>> rules, Collection<?> fields) {
+			for (Rule<T> rule : rules) {
+				active[rule.index] = fields == null || fields.contains(rule.field);
+			}
+		}
+
+		@Override
+		public void head(Node node, int depth) {
+			if (!(node instanceof Element)) {
+				return;
+			}
+			Element element = (Element) node;
+
+			if (!byId.isEmpty()) {
+				String id = element.id();
+				if (!id.isEmpty()) {
+					run(byId.get(id), element);
+				}
+			}
+			run(byTag.get(element.tagName()), element);
+			if (!byClass.isEmpty()) {
+				String classes = element.attr("class");
+				if (!classes.isEmpty()) {
+					for (Rule<T> rule : byClass) {
+						if (containsToken(classes, rule.value)) {
+							run(rule, element);
+						}
+					}
+				}
+			}
+			for (Rule<T> rule : byAttribute) {
+				if (element.hasAttr(rule.key) && rule.value.equalsIgnoreCase(element.attr(rule.key))) {
+					run(rule, element);
+				}
+			}
+		}
+
+		@Override
+		public void tail(Node node, int depth) {
+			// all rules run on the opening tag
+		}
+
+		private void run(List<Rule<T>> rules, Element element) {
+			if (rules != null) {
+				for (Rule<T> rule : rules) {
+					run(rule, element);
+				}
+			}
+		}
+
+		private void run(Rule<T> rule, Element element) {
+			if (!active[rule.index] || (rule.firstOnly && fired[rule.index])) {
+				return;
+			}
+			fired[rule.index] = true;
+			try {
+				if (rule.handler.handle(element, target)) {
+					captured.add(rule.field);
+				}
+			} catch (Exception e) {
+				LOGGER.debug("could not read " + rule.field + ": " + e.getMessage(), e);
+				ScraperMetrics.getInstance().count("extract.failed." + (rule.field == null ? "page" : rule.field));
+			}
+		}
+	}
+
+	/**
+	 * Whitespace separated token lookup without splitting the class attribute
+	 */
+	static boolean containsToken(String tokens, String token) {
+		int from = 0;
+		int length = token.length();
+		while ((from = tokens.indexOf(token, from)) >= 0) {
+			int end = from + length;
+			if ((from == 0 || Character.isWhitespace(tokens.charAt(from - 1)))
+					&& (end == tokens.length() || Character.isWhitespace(tokens.charAt(end)))) {
+				return true;
+			}
+			from = end;
+		}
+		return false;
+	}
+
+	static final class Builder<T> {
+		private int ruleCount;
+		private final Map<String, List<Rule<T>>> byId = new HashMap<>();
+		private final Map<String, List<Rule<T>>> byTag = new HashMap<>();
+		private final List<Rule<T>> byClass = new ArrayList<>();
+		private final List<Rule<T>> byAttribute = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Like getElementById, the handler gets the first element with the id
+		 */
+		Builder<T> id(String id, Object field, Handler<T> handler) {
+			add(byId, id, new Rule<>(ruleCount++, field, true, null, id, handler));
+			return this;
+		}
+
+		Builder<T> tag(String tag, Object field, boolean firstOnly, Handler<T> handler) {
+			String name = tag.toLowerCase(Locale.ROOT);
+			add(byTag, name, new Rule<>(ruleCount++, field, firstOnly, null, name, handler));
+			return this;
+		}
+
+		Builder<T> className(String className, Object field, boolean firstOnly, Handler<T> handler) {
+			byClass.add(new Rule<>(ruleCount++, field, firstOnly, null, className, handler));
+			return this;
+		}
+
+		Builder<T> attribute(String key, String value, Object field, boolean firstOnly, Handler<T> handler) {
+			byAttribute.add(new Rule<>(ruleCount++, field, firstOnly, key.toLowerCase(Locale.ROOT), value, handler));
+			return this;
+		}
+
+		ExtractionSpec<T> build() {
+			return new ExtractionSpec<>(this);
+		}
+
+		private void add(Map<String, List<Rule<T>>> index, String key, Rule<T> rule) {
+			List<Rule<T>> rules = index.get(key);
+			if (rules == null) {
+				rules = new ArrayList<>(1);
+				index.put(key, rules);
+			}
+			rules.add(rule);
+		}
+	}
+}
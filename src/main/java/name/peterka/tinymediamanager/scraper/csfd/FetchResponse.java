@@ -0,0 +1,65 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Status, headers and body of one HTTP response. The body has to be closed by the caller.
+ */
+final class FetchResponse implements Closeable {
+	private final String url;
+	private final int status;
+	private final Map<String, List<String>> headers;
+	private final InputStream body;
+
+	FetchResponse(String url, int status, Map<String, List<String>> headers, InputStream body) {
+		this.url = url;
+		this.status = status;
+		this.headers = headers == null ? Collections.<String, List<String>>emptyMap() : headers;
+		this.body = body;
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return first value of the header (case insensitive) or null
+	 */
+	String getHeader(String name) {
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if (header.getKey() != null && header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+				return header.getValue().get(0);
+			}
+		}
+		return null;
+	}
+
+	Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	InputStream getBody() {
+		return body;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (body != null) {
+			body.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HTTP " + status + " " + url;
+	}
+}
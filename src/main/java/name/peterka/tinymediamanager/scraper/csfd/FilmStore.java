@@ -0,0 +1,441 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaGenres;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metadata read from detail pages, keyed by csfd id and the content hash of the page (see {@link PageVersion}).
+ * A rescrape of a page whose content did not change rebuilds the metadata from here instead of parsing the page.
+ * <p>
+ * The file is a log of binary records. Strings (titles, names, genres, ...) are stored once: a record starts with the
+ * strings it uses for the first time, fields refer to strings by their number. A film scraped again appends a new
+ * record; the file is compacted when it is opened and holds more than twice as many records as films.
+ */
+final class FilmStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FilmStore.class);
+
+	static final String ENABLED = "csfd.filmStore.enabled";
+	static final String FILE_NAME = "films.db";
+
+	private static final int MAGIC = 0x43534653;// CSFS
+	private static final int VERSION = 2;
+	private static final int HEADER = 8;
+	private static final MediaCastMember.CastType[] CAST_TYPES = MediaCastMember.CastType.values();
+
+	/**
+	 * One film, every string is a number in the string table
+	 */
+	private static final class Film {
+		int hash;
+		int title;
+		int originalTitle;
+		int year;
+		int plot;
+		int poster;
+		int voteCount;
+		int imdbId;
+		double rating = Double.NaN;
+		int[] genres;
+		int[] castNames;
+		byte[] castTypes;
+		// csfd person ids, 0 when the name had no link
+		int[] castIds;
+	}
+
+	private final File file;
+	private final List<String> strings = new ArrayList<>();
+	private final Map<String, Integer> stringNumbers = new HashMap<>();
+	private final Map<String, Film> films = new HashMap<>();
+	private int writtenStrings;
+	private int records;
+	private boolean broken;
+
+	private FilmStore(File file) {
+		this.file = file;
+		number("");
+		writtenStrings = 1;
+	}
+
+	/**
+	 * @param file null for a store kept in memory only
+	 */
+	static FilmStore open(File file) throws IOException {
+		FilmStore store = new FilmStore(file);
+		if (file == null) {
+			return store;
+		}
+		if (file.isFile()) {
+			store.load();
+			if (store.records > 2 * store.films.size() + 100) {
+				return store.compact();
+			}
+		} else {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("could not create " + dir);
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Store next to the page cache, in memory when the cache is off or the file can not be used
+	 */
+	static FilmStore createDefault() {
+		if (CsfdConfig.isCacheEnabled()) {
+			File file = new File(CsfdConfig.getCacheDir(), FILE_NAME);
+			try {
+				return open(file);
+			} catch (IOException e) {
+				LOGGER.warn("could not open film store " + file + ", keeping it in memory: " + e.getMessage());
+			}
+		}
+		return new FilmStore(null);
+	}
+
+	static boolean isEnabled() {
+		return CsfdConfig.getBoolean(ENABLED, true);
+	}
+
+	synchronized int size() {
+		return films.size();
+	}
+
+	synchronized boolean contains(String csfdId) {
+		return films.containsKey(csfdId);
+	}
+
+	/**
+	 * @return true when the film is stored for the page with this content hash
+	 */
+	synchronized boolean contains(String csfdId, String hash) {
+		Film film = films.get(csfdId);
+		return film != null && strings.get(film.hash).equals(hash);
+	}
+
+	/**
+	 * Rebuilds the metadata stored for the page with this content hash
+	 *
+	 * @return false when the page changed or was not stored
+	 */
+	synchronized boolean copyTo(String csfdId, String hash, MediaMetadata md) {
+		Film film = films.get(csfdId);
+		if (film == null || !strings.get(film.hash).equals(hash)) {
+			return false;
+		}
+		store(md, MediaMetadata.TITLE, film.title);
+		store(md, MediaMetadata.ORIGINAL_TITLE, film.originalTitle);
+		store(md, MediaMetadata.YEAR, film.year);
+		store(md, MediaMetadata.PLOT, film.plot);
+		store(md, MediaMetadata.POSTER_URL, film.poster);
+		if (!Double.isNaN(film.rating)) {
+			md.storeMetadata(MediaMetadata.RATING, film.rating);
+			store(md, MediaMetadata.VOTE_COUNT, film.voteCount);
+		}
+		if (film.imdbId != 0) {
+			DetailPageSpec.storeImdbId(md, "imdb.com/title/" + strings.get(film.imdbId));
+		}
+		for (int genre : film.genres) {
+			md.addGenre(MediaGenres.getGenre(strings.get(genre)));
+		}
+		for (int i = 0; i < film.castNames.length; i++) {
+			MediaCastMember cm = new MediaCastMember();
+			cm.setName(strings.get(film.castNames[i]));
+			cm.setType(CAST_TYPES[film.castTypes[i]]);
+			if (film.castIds[i] != 0) {
+				cm.setId(String.valueOf(film.castIds[i]));
+			}
+			md.addCastMember(cm);
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the values read from the detail page with this content hash
+	 */
+	synchronized void put(String csfdId, String hash, MediaMetadata md) {
+		Film film = new Film();
+		film.hash = number(hash);
+		film.title = number(md.getStringValue(MediaMetadata.TITLE));
+		film.originalTitle = number(md.getStringValue(MediaMetadata.ORIGINAL_TITLE));
+		film.year = number(md.getStringValue(MediaMetadata.YEAR));
+		film.plot = number(md.getStringValue(MediaMetadata.PLOT));
+		film.poster = number(md.getStringValue(MediaMetadata.POSTER_URL));
+		film.voteCount = number(md.getStringValue(MediaMetadata.VOTE_COUNT));
+		String imdbId = md.getStringValue(MediaMetadata.IMDB);
+		film.imdbId = IdIndex.isImdbId(imdbId) ? number(imdbId) : 0;
+		if (!md.getStringValue(MediaMetadata.RATING).isEmpty()) {
+			film.rating = md.getDoubleValue(MediaMetadata.RATING);
+		}
+		List<MediaGenres> genres = md.getGenres();
+		film.genres = new int[genres.size()];
+		for (int i = 0; i < film.genres.length; i++) {
+			film.genres[i] = number(genres.get(i).name());
+		}
+		List<MediaCastMember> cast = md.getCastMembers();
+		film.castNames = new int[cast.size()];
+		film.castTypes = new byte[cast.size()];
+		film.castIds = new int[cast.size()];
+		for (int i = 0; i < film.castNames.length; i++) {
+			film.castNames[i] = number(cast.get(i).getName());
+			MediaCastMember.CastType type = cast.get(i).getType();
+			film.castTypes[i] = (byte) (type != null ? type : MediaCastMember.CastType.OTHER).ordinal();
+			film.castIds[i] = personId(cast.get(i).getId());
+		}
+		films.put(csfdId, film);
+		append(csfdId, film);
+	}
+
+	private static int personId(String id) {
+		if (id == null) {
+			return 0;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(id));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private void store(MediaMetadata md, String key, int string) {
+		if (string != 0) {
+			md.storeMetadata(key, strings.get(string));
+		}
+	}
+
+	/**
+	 * @return number of the string in the table, added when it is new
+	 */
+	private int number(String s) {
+		String value = s == null ? "" : s;
+		Integer number = stringNumbers.get(value);
+		if (number == null) {
+			number = strings.size();
+			strings.add(value);
+			stringNumbers.put(value, number);
+		}
+		return number;
+	}
+
+	private void append(String csfdId, Film film) {
+		if (file == null || broken) {
+			return;
+		}
+		int id = number(csfdId);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+			if (file.length() == 0) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+			}
+			writeVarInt(out, strings.size() - writtenStrings);
+			for (int i = writtenStrings; i < strings.size(); i++) {
+				out.writeUTF(strings.get(i));
+			}
+			writeVarInt(out, id);
+			writeFilm(out, film);
+			writtenStrings = strings.size();
+			records++;
+		} catch (IOException e) {
+			// the next records would refer to strings which are not in the file
+			broken = true;
+			LOGGER.warn("could not write film store " + file + ", keeping new films in memory: " + e.getMessage());
+		}
+	}
+
+	private static void writeFilm(DataOutput out, Film film) throws IOException {
+		for (int string : new int[]{film.hash, film.title, film.originalTitle, film.year, film.plot, film.poster,
+				film.voteCount, film.imdbId}) {
+			writeVarInt(out, string);
+		}
+		out.writeDouble(film.rating);
+		writeVarInt(out, film.genres.length);
+		for (int genre : film.genres) {
+			writeVarInt(out, genre);
+		}
+		writeVarInt(out, film.castNames.length);
+		for (int i = 0; i < film.castNames.length; i++) {
+			writeVarInt(out, film.castNames[i]);
+			out.writeByte(film.castTypes[i]);
+			writeVarInt(out, film.castIds[i]);
+		}
+	}
+
+	private static Film readFilm(DataInput in) throws IOException {
+		Film film = new Film();
+		film.hash = readVarInt(in);
+		film.title = readVarInt(in);
+		film.originalTitle = readVarInt(in);
+		film.year = readVarInt(in);
+		film.plot = readVarInt(in);
+		film.poster = readVarInt(in);
+		film.voteCount = readVarInt(in);
+		film.imdbId = readVarInt(in);
+		film.rating = in.readDouble();
+		film.genres = new int[readVarInt(in)];
+		for (int i = 0; i < film.genres.length; i++) {
+			film.genres[i] = readVarInt(in);
+		}
+		int cast = readVarInt(in);
+		film.castNames = new int[cast];
+		film.castTypes = new byte[cast];
+		film.castIds = new int[cast];
+		for (int i = 0; i < cast; i++) {
+			film.castNames[i] = readVarInt(in);
+			film.castTypes[i] = in.readByte();
+			film.castIds[i] = readVarInt(in);
+		}
+		return film;
+	}
+
+	private void load() throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		try (InputStream in = new FileInputStream(file)) {
+			new DataInputStream(in).readFully(data);
+		}
+		ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+		DataInputStream in = new DataInputStream(bytes);
+		if (data.length < HEADER || in.readInt() != MAGIC || in.readInt() != VERSION) {
+			LOGGER.warn("film store " + file + " has an unknown format, starting a new one");
+			truncate(0);
+			return;
+		}
+
+		int valid = HEADER;
+		int validStrings = strings.size();
+		try {
+			while (bytes.available() > 0) {
+				int newStrings = readVarInt(in);
+				List<String> added = new ArrayList<>(newStrings);
+				for (int i = 0; i < newStrings; i++) {
+					added.add(in.readUTF());
+				}
+				int id = readVarInt(in);
+				Film film = readFilm(in);
+				for (String s : added) {
+					number(s);
+				}
+				if (id >= strings.size() || !isValid(film)) {
+					throw new IOException("bad record at " + valid);
+				}
+				films.put(strings.get(id), film);
+				records++;
+				valid = data.length - bytes.available();
+				validStrings = strings.size();
+			}
+		} catch (EOFException e) {
+			LOGGER.warn("film store " + file + " ends with a half written record, dropping it");
+			truncate(valid, validStrings);
+		} catch (IOException e) {
+			// the next records could refer to strings of the bad one
+			LOGGER.warn("film store " + file + " is broken, dropping it from the last valid record: " + e.getMessage());
+			truncate(valid, validStrings);
+		}
+		writtenStrings = strings.size();
+		LOGGER.debug("film store has " + films.size() + " films, " + strings.size() + " strings");
+	}
+
+	/**
+	 * @return true when every string of the film is in the table and the cast types are known
+	 */
+	private boolean isValid(Film film) {
+		int max = Math.max(film.hash, Math.max(film.title, film.originalTitle));
+		for (int string : new int[]{film.year, film.plot, film.poster, film.voteCount, film.imdbId}) {
+			max = Math.max(max, string);
+		}
+		for (int genre : film.genres) {
+			max = Math.max(max, genre);
+		}
+		for (int name : film.castNames) {
+			max = Math.max(max, name);
+		}
+		for (byte type : film.castTypes) {
+			if (type < 0 || type >= CAST_TYPES.length) {
+				return false;
+			}
+		}
+		return max < strings.size();
+	}
+
+	/**
+	 * Drops the records from length on, with the strings they added to the table
+	 */
+	private void truncate(long length, int stringCount) throws IOException {
+		while (strings.size() > stringCount) {
+			stringNumbers.remove(strings.remove(strings.size() - 1));
+		}
+		truncate(length);
+	}
+
+	private void truncate(long length) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length);
+		}
+	}
+
+	/**
+	 * Writes the current films to a new file, without the replaced records and their strings
+	 */
+	private FilmStore compact() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		if (tmp.exists() && !tmp.delete()) {
+			throw new IOException("could not delete " + tmp);
+		}
+		FilmStore compacted = new FilmStore(tmp);
+		for (Map.Entry<String, Film> entry : films.entrySet()) {
+			MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+			String hash = strings.get(entry.getValue().hash);
+			copyTo(entry.getKey(), hash, md);
+			compacted.put(entry.getKey(), hash, md);
+		}
+		if (compacted.broken) {
+			throw new IOException("could not write " + tmp);
+		}
+		if (!file.delete() || !tmp.renameTo(file)) {
+			throw new IOException("could not replace " + file + " by " + tmp);
+		}
+		LOGGER.debug("compacted film store from " + records + " to " + films.size() + " records");
+		return open(file);
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("varint too long");
+	}
+}
@@ -0,0 +1,256 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaArtwork;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Artwork of the gallery of one movie, read lazily page by page. The first page tells the page count; the next pages
+ * are fetched in parallel, at most fanOut of them ahead of the caller, and only as many as the limit can still use.
+ * The artwork comes in gallery order.
+ * <p>
+ * A page which can not be read ends the iteration with a {@link ReadException}, so a failing site is not taken for
+ * a movie without artwork.
+ */
+final class GalleryIterator implements Iterator<MediaArtwork> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(GalleryIterator.class);
+
+	static final String FAN_OUT = "csfd.gallery.fanOut";
+
+	// background-image: url('//img.csfd.cz/files/images/film/photos/...jpg?w700');
+	private static final Pattern BACKGROUND = Pattern.compile(".*'(.*)'.*");
+	private static final Pattern PAGE_NUMBER = Pattern.compile("strana-(\\d+)");
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("csfd-gallery"));
+
+	/**
+	 * A gallery page could not be read, the cause is the IOException
+	 */
+	static final class ReadException extends RuntimeException {
+		ReadException(IOException cause) {
+			super(cause.getMessage(), cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+	private final String csfdId;
+	private final String providerId;
+	private final int limit;
+	private final int fanOut;
+	private final Deque<Future<List<MediaArtwork>>> pending = new ArrayDeque<>();
+
+	private Iterator<MediaArtwork> current;
+	private int pageCount;
+	private int perPage;
+	private int nextPage = 2;
+	private int returned;
+
+	/**
+	 * @param limit max. artwork the caller wants, pages beyond it are not fetched
+	 */
+	GalleryIterator(String csfdId, String providerId, int limit) {
+		this(csfdId, providerId, limit, CsfdConfig.getInt(FAN_OUT, 3));
+	}
+
+	GalleryIterator(String csfdId, String providerId, int limit, int fanOut) {
+		this.csfdId = csfdId;
+		this.providerId = providerId;
+		this.limit = limit;
+		this.fanOut = Math.max(1, fanOut);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (returned >= limit) {
+			cancel();
+			return false;
+		}
+		try {
+			if (current == null) {
+				readFirstPage();
+			}
+			while (!current.hasNext()) {
+				if (pending.isEmpty()) {
+					return false;
+				}
+				current = await(pending.poll()).iterator();
+				schedule();
+			}
+			return true;
+		} catch (IOException e) {
+			LOGGER.warn("could not read gallery of " + csfdId + ": " + e.getMessage());
+			cancel();
+			current = new ArrayList<MediaArtwork>().iterator();
+			throw new ReadException(e);
+		}
+	}
+
+	@Override
+	public MediaArtwork next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		returned++;
+		return current.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return pages of the gallery, known after the first page was read
+	 */
+	int getPageCount() {
+		return pageCount;
+	}
+
+	private void readFirstPage() throws IOException {
+		Document doc = PageLoader.getInstance().loadDocument(PageKind.GALLERY, csfdId);
+		List<MediaArtwork> artwork = readArtwork(doc);
+		pageCount = readPageCount(doc);
+		perPage = Math.max(1, artwork.size());
+		LOGGER.debug("gallery of " + csfdId + " has " + pageCount + " pages");
+		current = artwork.iterator();
+		schedule();
+	}
+
+	/**
+	 * Keeps up to fanOut next pages in flight, as long as the limit can use them
+	 */
+	private void schedule() {
+		while (pending.size() < fanOut && nextPage <= pageCount) {
+			long expected = returned + (long) perPage * (pending.size() + (current.hasNext() ? 1 : 0));
+			if (expected >= limit) {
+				break;
+			}
+			final int page = nextPage++;
+			pending.add(EXECUTOR.submit(new Callable<List<MediaArtwork>>() {
+				@Override
+				public List<MediaArtwork> call() throws Exception {
+					// the caller's thread does not see what this one allocates
+					ScraperMetrics metrics = ScraperMetrics.getInstance();
+					long allocation = metrics.startAllocation();
+					try {
+						return readArtwork(PageLoader.getInstance().loadDocument(PageKind.GALLERY_PAGE, PageKind.pageId(csfdId, page)));
+					} finally {
+						metrics.addAllocation(ScraperMetrics.Call.ARTWORK, allocation);
+					}
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Drops the pages which did not start; a running download is not interrupted, other callers may share it and it
+	 * still ends in the cache
+	 */
+	private void cancel() {
+		for (Future<List<MediaArtwork>> page : pending) {
+			page.cancel(false);
+		}
+		pending.clear();
+		nextPage = pageCount + 1;
+	}
+
+	private static List<MediaArtwork> await(Future<List<MediaArtwork>> page) throws IOException {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while reading the gallery", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	private List<MediaArtwork> readArtwork(Document doc) {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long start = metrics.start();
+		List<MediaArtwork> result = new ArrayList<>();
+		for (Element photo : doc.getElementsByClass("photo")) {
+			Matcher matcher = BACKGROUND.matcher(photo.attr("style"));
+			if (matcher.matches()) {
+				String backgroundUrl = ImageUtil.fixImageUrl(matcher.group(1));
+
+				MediaArtwork artwork = new MediaArtwork();
+				artwork.setType(MediaArtwork.MediaArtworkType.POSTER);
+				artwork.setDefaultUrl(backgroundUrl);
+				artwork.setPreviewUrl(backgroundUrl);
+				artwork.setProviderId(providerId);
+				artwork.setImdbId(csfdId);
+
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(String.format("Found artwork at %s / result=%s", backgroundUrl, artwork));
+				}
+				result.add(artwork);
+			}
+		}
+		metrics.stop(ScraperMetrics.Stage.EXTRACT, start);
+		addSizes(result);
+		return result;
+	}
+
+	/**
+	 * Real sizes when probing is enabled, otherwise the usual size of a csfd.cz photo
+	 */
+	private static void addSizes(List<MediaArtwork> artwork) {
+		Map<String, ImageProber.Size> sizes = Collections.emptyMap();
+		if (ImageProber.isEnabled() && !artwork.isEmpty()) {
+			List<String> urls = new ArrayList<>(artwork.size());
+			for (MediaArtwork a : artwork) {
+				urls.add(a.getDefaultUrl());
+			}
+			sizes = ImageProber.getInstance().probeAll(urls);
+		}
+		for (MediaArtwork a : artwork) {
+			ImageProber.Size size = sizes.get(a.getDefaultUrl());
+			if (size != null) {
+				ImageProber.apply(a, a.getDefaultUrl(), size);
+			} else {
+				a.setSizeOrder(MediaArtwork.FanartSizes.MEDIUM.getOrder());
+				a.addImageSize(700, 400, a.getDefaultUrl());// TODO: lepe
+			}
+		}
+	}
+
+	/**
+	 * @return highest page number in the paginator, 1 when there is none
+	 */
+	static int readPageCount(Document doc) {
+		int pages = 1;
+		for (Element paginator : doc.getElementsByClass("paginator")) {
+			for (Element link : paginator.getElementsByTag("a")) {
+				Matcher m = PAGE_NUMBER.matcher(link.attr("href"));
+				if (m.find()) {
+					pages = Math.max(pages, Integer.parseInt(m.group(1)));
+				}
+			}
+		}
+		return pages;
+	}
+}
@@ -2,7 +2,7 @@ package name.peterka.tinymediamanager.scraper.csfd;
 
 import org.tinymediamanager.scraper.MediaGenres;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,8 +13,8 @@ public class GenresUtil {
 		 * Maps scraper Genres to internal TMM genres
 		 */
 	static List<MediaGenres> getTmmGenres(String genreLine) {
-		LinkedList<MediaGenres> result = new LinkedList<>();
 		String[] genres = genreLine.split(" / ");
+		List<MediaGenres> result = new ArrayList<>(genres.length);
 		for (String genre : genres) {
 			MediaGenres tmmGenre = translateGenre(genre);
 			if (tmmGenre == null) {
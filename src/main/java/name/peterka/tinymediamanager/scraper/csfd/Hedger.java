@@ -0,0 +1,213 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hedged requests against slow responses: the time until the response headers is recorded per part of the site, and
+ * a request which takes longer than the 95th percentile gets one duplicate; the response which comes first is used,
+ * the other one is closed. The hedge needs a free token of the {@link RateLimiter}, so it never slows down other
+ * requests and is not sent while csfd.cz is under pressure.
+ */
+final class Hedger {
+	private static final Logger LOGGER = LoggerFactory.getLogger(Hedger.class);
+
+	static final String ENABLED = "csfd.hedge.enabled";
+	static final String PERCENTILE = "csfd.hedge.percentile";
+	static final String MIN_DELAY_MILLIS = "csfd.hedge.minDelayMillis";
+
+	// responses needed before the percentile is trusted
+	static final int MIN_SAMPLES = 20;
+	// the histograms start again after this many responses, so the delay follows the site
+	private static final int WINDOW = 1000;
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("csfd-hedge"));
+
+	private final boolean enabled;
+	private final double percentile;
+	private final long minDelayNanos;
+	private final LatencyHistogram[] latencies = new LatencyHistogram[PageKind.values().length];
+	// delay of the last full window, used while the new one fills up
+	private final long[] learnedDelays = new long[PageKind.values().length];
+	private final ScraperMetrics metrics = ScraperMetrics.getInstance();
+
+	Hedger(boolean enabled, double percentile, long minDelayMillis) {
+		this.enabled = enabled;
+		this.percentile = percentile;
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+			learnedDelays[i] = -1;
+		}
+	}
+
+	static Hedger createDefault() {
+		return new Hedger(CsfdConfig.getBoolean(ENABLED, true), CsfdConfig.getDouble(PERCENTILE, 95),
+				CsfdConfig.getLong(MIN_DELAY_MILLIS, 500));
+	}
+
+	/**
+	 * @return nanos after which a request of the kind is hedged, -1 while there are not enough responses
+	 */
+	long getDelayNanos(PageKind kind) {
+		int i = kind.endpoint().ordinal();
+		LatencyHistogram histogram = latencies[i];
+		if (histogram.getCount() >= MIN_SAMPLES) {
+			long delay = Math.max(minDelayNanos, (long) (histogram.getPercentileMillis(percentile) * 1000000));
+			synchronized (learnedDelays) {
+				learnedDelays[i] = delay;
+			}
+			return delay;
+		}
+		synchronized (learnedDelays) {
+			return learnedDelays[i];
+		}
+	}
+
+	/**
+	 * Sends the request, and a hedge when it is slow and the limiter has a token to spare
+	 */
+	FetchResponse fetch(PageFetcher fetcher, RateLimiter limiter, PageKind kind, String url, Map<String, String> headers)
+			throws IOException {
+		long delay = enabled ? getDelayNanos(kind) : -1;
+		if (delay < 0) {
+			long start = System.nanoTime();
+			FetchResponse response = fetcher.fetch(url, headers);
+			record(kind, System.nanoTime() - start);
+			return response;
+		}
+
+		Race race = new Race(fetcher, kind, url, headers);
+		race.start(false);
+		FetchResponse response = race.await(delay);
+		if (response != null) {
+			return response;
+		}
+		if (!limiter.isUnderPressure() && limiter.tryAcquire()) {
+			LOGGER.debug("no response from " + url + " after " + TimeUnit.NANOSECONDS.toMillis(delay) + "ms, sending a hedge");
+			metrics.count("hedge.sent");
+			race.start(true);
+		}
+		return race.await(Long.MAX_VALUE);
+	}
+
+	private void record(PageKind kind, long nanos) {
+		LatencyHistogram histogram = latencies[kind.endpoint().ordinal()];
+		histogram.record(nanos);
+		if (histogram.getCount() >= WINDOW) {
+			getDelayNanos(kind);
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Requests for one url, the first response wins
+	 */
+	private final class Race {
+		private final PageFetcher fetcher;
+		private final PageKind kind;
+		private final String url;
+		private final Map<String, String> headers;
+		private final AtomicBoolean won = new AtomicBoolean();
+		// the caller stopped waiting, nobody takes the results any more
+		private final AtomicBoolean abandoned = new AtomicBoolean();
+		// FetchResponse of the winner or IOException of a failed request
+		private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+		private int started;
+		private int failed;
+
+		Race(PageFetcher fetcher, PageKind kind, String url, Map<String, String> headers) {
+			this.fetcher = fetcher;
+			this.kind = kind;
+			this.url = url;
+			this.headers = headers;
+		}
+
+		void start(final boolean hedge) {
+			started++;
+			EXECUTOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					long start = System.nanoTime();
+					try {
+						FetchResponse response = fetcher.fetch(url, headers);
+						record(kind, System.nanoTime() - start);
+						if (won.compareAndSet(false, true)) {
+							if (hedge) {
+								metrics.count("hedge.won");
+							}
+							results.add(response);
+							// the caller may have given up between the win and the add
+							if (abandoned.get()) {
+								closeResults();
+							}
+						} else {
+							response.close();
+						}
+					} catch (IOException e) {
+						results.add(e);
+					} catch (RuntimeException e) {
+						results.add(new IOException(e));
+					}
+				}
+			});
+		}
+
+		/**
+		 * @return the winning response, null when none came within the time
+		 * @throws IOException of the last request when all failed
+		 */
+		FetchResponse await(long timeoutNanos) throws IOException {
+			long deadline = System.nanoTime() + timeoutNanos;
+			try {
+				while (true) {
+					Object result;
+					if (timeoutNanos == Long.MAX_VALUE) {
+						result = results.take();
+					} else {
+						result = results.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+						if (result == null) {
+							return null;
+						}
+					}
+					if (result instanceof FetchResponse) {
+						return (FetchResponse) result;
+					}
+					if (++failed == started) {
+						throw (IOException) result;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				// responses which come later are closed by their requests, one which came already is closed here
+				won.set(true);
+				abandoned.set(true);
+				closeResults();
+				throw new InterruptedIOException("interrupted while waiting for " + url);
+			}
+		}
+
+		private void closeResults() {
+			Object result;
+			while ((result = results.poll()) != null) {
+				if (result instanceof FetchResponse) {
+					try {
+						((FetchResponse) result).close();
+					} catch (IOException e) {
+						LOGGER.debug("could not close abandoned response of " + url + ": " + e.getMessage());
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Plain HTTP GET, returns the response whatever the status is so the caller can react to throttling.
+ * <p>
+ * Connections are kept alive and reused by the keep-alive cache of {@link HttpURLConnection} as long as every body is
+ * closed; a body closed before its end is drained in the background by the JDK. Pages are asked for gzip and are
+ * decompressed while they are read, so the parser gets the html as it arrives.
+ */
+class HttpFetcher implements PageFetcher {
+	static final String USER_AGENT = "Mozilla/5.0 (compatible; tinyMediaManager CSFD scraper)";
+	static final String CONNECT_TIMEOUT_MILLIS = "csfd.http.connectTimeoutMillis";
+	static final String READ_TIMEOUT_MILLIS = "csfd.http.readTimeoutMillis";
+	static final String COMPRESSION = "csfd.http.compression";
+	private static final int MAX_REDIRECTS = 5;
+
+	private static final HttpFetcher SHARED = new HttpFetcher(Collections.<String, String>emptyMap(),
+			CsfdConfig.getInt(CONNECT_TIMEOUT_MILLIS, 10000), CsfdConfig.getInt(READ_TIMEOUT_MILLIS, 30000),
+			CsfdConfig.getBoolean(COMPRESSION, true));
+
+	private final Map<String, String> headers;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final boolean compression;
+
+	HttpFetcher() {
+		this(Collections.<String, String>emptyMap(), 10000, 30000, true);
+	}
+
+	/**
+	 * @param headers              sent with every request in addition to User-Agent and Accept-Language
+	 * @param connectTimeoutMillis max. time to open the connection, 0 waits forever
+	 * @param readTimeoutMillis    max. time to wait for the next bytes of the response, 0 waits forever
+	 * @param compression          ask for gzip and decompress the body while it is read
+	 */
+	HttpFetcher(Map<String, String> headers, int connectTimeoutMillis, int readTimeoutMillis, boolean compression) {
+		this.headers = headers;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.compression = compression;
+	}
+
+	/**
+	 * The transport of the page loader and the image prober, so both providers share its connections
+	 */
+	static HttpFetcher getShared() {
+		return SHARED;
+	}
+
+	@Override
+	public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+		String location = url;
+		for (int redirects = 0; ; redirects++) {
+			HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+			connection.setConnectTimeout(connectTimeoutMillis);
+			connection.setReadTimeout(readTimeoutMillis);
+			connection.setRequestProperty("User-Agent", USER_AGENT);
+			connection.setRequestProperty("Accept-Language", "cs");
+			if (compression) {
+				connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+			}
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				connection.setRequestProperty(header.getKey(), header.getValue());
+			}
+			for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+				connection.setRequestProperty(header.getKey(), header.getValue());
+			}
+			// http -> https redirects are not followed by HttpURLConnection
+			connection.setInstanceFollowRedirects(false);
+
+			int status = connection.getResponseCode();
+			if (status >= 300 && status < 400 && connection.getHeaderField("Location") != null && redirects < MAX_REDIRECTS) {
+				location = new URL(new URL(location), connection.getHeaderField("Location")).toString();
+				close(connection);
+				continue;
+			}
+
+			InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			return new FetchResponse(location, status, connection.getHeaderFields(), decode(body, connection.getContentEncoding()));
+		}
+	}
+
+	/**
+	 * @return body decompressed while it is read
+	 */
+	static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+		if (body == null || contentEncoding == null) {
+			return body;
+		}
+		switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+			case "gzip":
+			case "x-gzip":
+				return new GZIPInputStream(body, 8192);
+			case "deflate":
+				return new InflaterInputStream(body, new Inflater(), 8192);
+			default:
+				return body;
+		}
+	}
+
+	private static void close(HttpURLConnection connection) {
+		try {
+			InputStream in = connection.getInputStream();
+			if (in != null) {
+				in.close();
+			}
+		} catch (IOException e) {
+			connection.disconnect();
+		}
+	}
+}
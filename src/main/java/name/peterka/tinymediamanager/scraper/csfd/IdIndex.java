@@ -0,0 +1,290 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent map of IMDb ids and (title, year) to csfd ids, filled from every scraped detail page, so rescans find
+ * the movie by its IMDb id without a search. A (title, year) only ranks the movie first among the real search results:
+ * the key is not stored, and a later movie with the same title and year replaces it.
+ * <p>
+ * The file is an open addressing hash table mapped into memory: a 16 byte header and slots of a 64 bit key hash and
+ * a 32 bit value. Keys are not stored, a lookup hashes the key and compares the hash, so an entry takes 12 bytes and
+ * a lookup touches one or two slots. IMDb ids are stored as their number.
+ */
+final class IdIndex {
+	private static final Logger LOGGER = LoggerFactory.getLogger(IdIndex.class);
+
+	static final String ENABLED = "csfd.idIndex.enabled";
+	static final String FILE_NAME = "ids.idx";
+
+	private static final int MAGIC = 0x43534944;// CSID
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+	private static final int SLOT = 12;
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	private static final Pattern IMDB_ID = Pattern.compile("tt(\\d{7,9})");
+
+	private final RandomAccessFile file;
+	private ByteBuffer buffer;
+	private int capacity;
+	private int size;
+
+	private IdIndex(RandomAccessFile file) throws IOException {
+		this.file = file;
+		if (file != null && file.length() >= HEADER) {
+			ByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			if (header.getInt(0) == MAGIC && header.getInt(4) == VERSION) {
+				capacity = header.getInt(8);
+				buffer = map(capacity);
+				size = buffer.getInt(12);
+				return;
+			}
+			LOGGER.warn("id index has an unknown format, starting a new one");
+		}
+		capacity = INITIAL_CAPACITY;
+		buffer = map(capacity);
+		clear(buffer, capacity);
+	}
+
+	/**
+	 * @param file null for an index kept in memory only
+	 */
+	static IdIndex open(File file) throws IOException {
+		if (file == null) {
+			return new IdIndex(null);
+		}
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("could not create " + dir);
+		}
+		return new IdIndex(new RandomAccessFile(file, "rw"));
+	}
+
+	/**
+	 * Index next to the page cache, in memory when the cache is off or the file can not be used
+	 */
+	static IdIndex createDefault() {
+		if (CsfdConfig.isCacheEnabled()) {
+			File file = new File(CsfdConfig.getCacheDir(), FILE_NAME);
+			try {
+				return open(file);
+			} catch (IOException e) {
+				LOGGER.warn("could not open id index " + file + ", using memory only: " + e.getMessage());
+			}
+		}
+		try {
+			return open(null);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static boolean isEnabled() {
+		return CsfdConfig.getBoolean(ENABLED, true);
+	}
+
+	/**
+	 * @return csfd id of the movie with the IMDb id, null when not known
+	 */
+	String findByImdbId(String imdbId) {
+		int number = imdbNumber(imdbId);
+		if (number < 0) {
+			return null;
+		}
+		int csfdId = get("imdb:" + number);
+		// a key colliding with another one gets its value, the link back to the IMDb id confirms the hit
+		return csfdId >= 0 && get("csfd:" + csfdId) == number ? toId(csfdId) : null;
+	}
+
+	/**
+	 * @return csfd id of the movie with the title (czech or original) and year, null when not known
+	 */
+	String findByTitle(String title, String year) {
+		if (title == null || year == null || year.trim().isEmpty()) {
+			return null;
+		}
+		return toId(get(titleKey(title, year)));
+	}
+
+	/**
+	 * @return IMDb id of the csfd movie, null when not known
+	 */
+	String findImdbId(String csfdId) {
+		int number = get("csfd:" + csfdId);
+		return number >= 0 && get("imdb:" + number) == toValue(csfdId) ? formatImdbId(number) : null;
+	}
+
+	/**
+	 * Remembers a scraped movie
+	 */
+	void add(String csfdId, String imdbId, String title, String originalTitle, String year) {
+		int id = toValue(csfdId);
+		if (id < 0) {
+			return;
+		}
+		int imdb = imdbNumber(imdbId);
+		if (imdb >= 0) {
+			put("imdb:" + imdb, id);
+			put("csfd:" + csfdId, imdb);
+		}
+		if (year != null && !year.trim().isEmpty()) {
+			if (title != null && !title.isEmpty()) {
+				put(titleKey(title, year), id);
+			}
+			if (originalTitle != null && !originalTitle.isEmpty()) {
+				put(titleKey(originalTitle, year), id);
+			}
+		}
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	static boolean isImdbId(String id) {
+		return id != null && IMDB_ID.matcher(id.trim()).matches();
+	}
+
+	/*
+	 * Hash table
+	 */
+
+	synchronized int get(String key) {
+		long hash = hash(key);
+		for (int slot = slot(hash, capacity); ; slot = (slot + 1) & (capacity - 1)) {
+			long stored = buffer.getLong(HEADER + slot * SLOT);
+			if (stored == 0) {
+				return -1;
+			}
+			if (stored == hash) {
+				return buffer.getInt(HEADER + slot * SLOT + 8);
+			}
+		}
+	}
+
+	synchronized void put(String key, int value) {
+		if ((size + 1) * 2 > capacity) {
+			grow();
+		}
+		if (insert(buffer, capacity, hash(key), value)) {
+			size++;
+			buffer.putInt(12, size);
+		}
+	}
+
+	/**
+	 * @return true when the key was new
+	 */
+	private static boolean insert(ByteBuffer buffer, int capacity, long hash, int value) {
+		for (int slot = slot(hash, capacity); ; slot = (slot + 1) & (capacity - 1)) {
+			int offset = HEADER + slot * SLOT;
+			long stored = buffer.getLong(offset);
+			if (stored == 0 || stored == hash) {
+				buffer.putLong(offset, hash);
+				buffer.putInt(offset + 8, value);
+				return stored == 0;
+			}
+		}
+	}
+
+	private void grow() {
+		long[] hashes = new long[size];
+		int[] values = new int[size];
+		int n = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			long stored = buffer.getLong(HEADER + slot * SLOT);
+			if (stored != 0) {
+				hashes[n] = stored;
+				values[n++] = buffer.getInt(HEADER + slot * SLOT + 8);
+			}
+		}
+
+		int newCapacity = capacity * 2;
+		try {
+			ByteBuffer grown = map(newCapacity);
+			clear(grown, newCapacity);
+			for (int i = 0; i < n; i++) {
+				insert(grown, newCapacity, hashes[i], values[i]);
+			}
+			grown.putInt(12, n);
+			buffer = grown;
+			capacity = newCapacity;
+			size = n;
+		} catch (IOException e) {
+			throw new IllegalStateException("could not grow the id index: " + e.getMessage(), e);
+		}
+	}
+
+	private ByteBuffer map(int slots) throws IOException {
+		long bytes = HEADER + (long) slots * SLOT;
+		if (file == null) {
+			return ByteBuffer.allocate((int) bytes);
+		}
+		return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+	}
+
+	private static void clear(ByteBuffer buffer, int capacity) {
+		for (int slot = 0; slot < capacity; slot++) {
+			buffer.putLong(HEADER + slot * SLOT, 0);
+		}
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, capacity);
+		buffer.putInt(12, 0);
+	}
+
+	private static int slot(long hash, int capacity) {
+		return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+	}
+
+	/**
+	 * 64 bit FNV-1a, never 0 which marks an empty slot
+	 */
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	private static String titleKey(String title, String year) {
+		return "title:" + TitleUtil.normalize(title) + "|" + year.trim();
+	}
+
+	private static int imdbNumber(String imdbId) {
+		if (imdbId == null) {
+			return -1;
+		}
+		Matcher m = IMDB_ID.matcher(imdbId.trim());
+		return m.matches() ? Integer.parseInt(m.group(1)) : -1;
+	}
+
+	static String formatImdbId(int number) {
+		return String.format(Locale.ROOT, "tt%07d", number);
+	}
+
+	private static int toValue(String csfdId) {
+		try {
+			return Integer.parseInt(csfdId);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static String toId(int value) {
+		return value < 0 ? null : String.valueOf(value);
+	}
+}
@@ -0,0 +1,271 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaArtwork;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds out width and height of an image from its first bytes (JPEG, PNG, GIF), so artwork can be classified
+ * without downloading the whole image. Asks for a byte range and stops reading at the size anyway, for servers which
+ * send the whole file. Sizes are cached by url.
+ */
+final class ImageProber {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageProber.class);
+
+	static final String ENABLED = "csfd.probe.enabled";
+	static final String CONCURRENCY = "csfd.probe.concurrency";
+
+	// enough for the JPEG header behind EXIF and a thumbnail
+	static final int MAX_HEADER_BYTES = 256 * 1024;
+	private static final int CACHE_ENTRIES = 2000;
+
+	private static final ImageProber INSTANCE = new ImageProber(HttpFetcher.getShared(), CsfdConfig.getInt(CONCURRENCY, 4));
+
+	// only the header is needed, images are compressed already
+	private static final Map<String, String> HEADER_RANGE = new HashMap<>();
+
+	static {
+		HEADER_RANGE.put("Range", "bytes=0-" + (MAX_HEADER_BYTES - 1));
+		HEADER_RANGE.put("Accept-Encoding", "identity");
+	}
+
+	/**
+	 * Width and height in pixels
+	 */
+	static final class Size {
+		final int width;
+		final int height;
+
+		Size(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public String toString() {
+			return width + "x" + height;
+		}
+	}
+
+	private final PageFetcher fetcher;
+	private final ExecutorService executor;
+	private final SingleFlight<String, Size> probes = new SingleFlight<>();
+	private final Map<String, Size> cache = new LinkedHashMap<String, Size>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Size> eldest) {
+			return size() > CACHE_ENTRIES;
+		}
+	};
+
+	ImageProber(PageFetcher fetcher, int concurrency) {
+		this.fetcher = fetcher;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new DaemonThreadFactory("csfd-probe"));
+	}
+
+	static ImageProber getInstance() {
+		return INSTANCE;
+	}
+
+	static boolean isEnabled() {
+		return CsfdConfig.getBoolean(ENABLED, false);
+	}
+
+	/**
+	 * @return size of the image, null when it can not be read
+	 */
+	Size probe(final String url) {
+		synchronized (cache) {
+			Size size = cache.get(url);
+			if (size != null) {
+				return size;
+			}
+		}
+		try {
+			Size size = probes.execute(url, new Callable<Size>() {
+				@Override
+				public Size call() throws IOException {
+					return read(url);
+				}
+			});
+			synchronized (cache) {
+				cache.put(url, size);
+			}
+			return size;
+		} catch (IOException e) {
+			LOGGER.debug("could not probe " + url + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Probes the images in parallel
+	 *
+	 * @return sizes by url, without the images which could not be read
+	 */
+	Map<String, Size> probeAll(Collection<String> urls) {
+		List<Future<Size>> futures = new ArrayList<>(urls.size());
+		for (final String url : urls) {
+			futures.add(executor.submit(new Callable<Size>() {
+				@Override
+				public Size call() {
+					return probe(url);
+				}
+			}));
+		}
+
+		Map<String, Size> sizes = new LinkedHashMap<>();
+		int i = 0;
+		for (String url : urls) {
+			try {
+				Size size = futures.get(i++).get();
+				if (size != null) {
+					sizes.put(url, size);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				LOGGER.debug("could not probe " + url + ": " + e.getCause());
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * Stores the real size into the artwork and ranks it by {@link MediaArtwork.FanartSizes}
+	 */
+	static void apply(MediaArtwork artwork, String url, Size size) {
+		artwork.addImageSize(size.width, size.height, url);
+		MediaArtwork.FanartSizes fanartSize = MediaArtwork.FanartSizes.SMALL;
+		if (size.width >= 1920) {
+			fanartSize = MediaArtwork.FanartSizes.LARGE;
+		} else if (size.width >= 1280) {
+			fanartSize = MediaArtwork.FanartSizes.MEDIUM;
+		}
+		artwork.setSizeOrder(fanartSize.getOrder());
+	}
+
+	private Size read(String url) throws IOException {
+		try (FetchResponse response = fetcher.fetch(url, HEADER_RANGE)) {
+			if (response.getStatus() >= 300 || response.getBody() == null) {
+				throw new IOException("HTTP " + response.getStatus());
+			}
+			Size size = readSize(response.getBody());
+			if (size == null) {
+				throw new IOException("unknown image format");
+			}
+			LOGGER.debug("probed " + url + ": " + size);
+			return size;
+		}
+	}
+
+	/**
+	 * Reads at most {@link #MAX_HEADER_BYTES}
+	 *
+	 * @return size, null when the format is not known
+	 */
+	static Size readSize(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new LimitedStream(stream, MAX_HEADER_BYTES), 8192));
+		int b0 = in.readUnsignedByte();
+		int b1 = in.readUnsignedByte();
+		if (b0 == 0xFF && b1 == 0xD8) {
+			return readJpeg(in);
+		}
+		if (b0 == 0x89 && b1 == 'P') {
+			// rest of the signature, IHDR length and type
+			skipFully(in, 6 + 8);
+			return new Size(in.readInt(), in.readInt());
+		}
+		if (b0 == 'G' && b1 == 'I') {
+			skipFully(in, 4);
+			int width = in.readUnsignedByte() | in.readUnsignedByte() << 8;
+			int height = in.readUnsignedByte() | in.readUnsignedByte() << 8;
+			return new Size(width, height);
+		}
+		return null;
+	}
+
+	private static Size readJpeg(DataInputStream in) throws IOException {
+		while (true) {
+			int marker = in.readUnsignedByte();
+			if (marker != 0xFF) {
+				throw new IOException("invalid JPEG marker");
+			}
+			while (marker == 0xFF) {
+				marker = in.readUnsignedByte();
+			}
+			if (marker == 0xD8 || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+				continue;// no length
+			}
+			int length = in.readUnsignedShort();
+			boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+			if (startOfFrame) {
+				in.readUnsignedByte();// precision
+				int height = in.readUnsignedShort();
+				int width = in.readUnsignedShort();
+				return new Size(width, height);
+			}
+			skipFully(in, length - 2);
+		}
+	}
+
+	private static void skipFully(DataInputStream in, int n) throws IOException {
+		if (in.skipBytes(n) < n) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * Ends after the given number of bytes
+	 */
+	private static final class LimitedStream extends InputStream {
+		private final InputStream in;
+		private long remaining;
+
+		LimitedStream(InputStream in, long limit) {
+			this.in = in;
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = in.read(b, off, (int) Math.min(len, remaining));
+			if (n > 0) {
+				remaining -= n;
+			}
+			return n;
+		}
+	}
+}
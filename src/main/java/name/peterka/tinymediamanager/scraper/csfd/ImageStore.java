@@ -0,0 +1,330 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Posters and gallery images downloaded to disk. A file is named by the SHA-1 of its content, so an image shared by
+ * several urls is stored once; the index {@code images.idx} maps every url to the hash and the validators of its
+ * response. An image older than the ttl is downloaded again with a conditional request, so a refresh transfers only
+ * the images which changed.
+ * <p>
+ * Bodies are streamed to a temporary file while hashing and then moved to their place, nothing is held in memory.
+ */
+final class ImageStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageStore.class);
+
+	static final String ENABLED = "csfd.images.enabled";
+	static final String CONCURRENCY = "csfd.images.concurrency";
+	static final String TTL_HOURS = "csfd.images.ttlHours";
+	static final String DIR_NAME = "images";
+	static final String INDEX_NAME = "images.idx";
+
+	// .../65520_fdb7a4.jpg?h180
+	private static final Pattern EXTENSION = Pattern.compile("\\.(jpe?g|png|gif|webp)(\\?|$)", Pattern.CASE_INSENSITIVE);
+
+	private static volatile ImageStore instance;
+
+	/**
+	 * Stored image of one url
+	 */
+	private static final class Entry {
+		final PageVersion version;
+		final String extension;
+		final long checkedAt;
+
+		Entry(PageVersion version, String extension, long checkedAt) {
+			this.version = version;
+			this.extension = extension;
+			this.checkedAt = checkedAt;
+		}
+	}
+
+	private final File dir;
+	private final File index;
+	private final PageFetcher fetcher;
+	private final long ttlMillis;
+	private final ExecutorService executor;
+	private final SingleFlight<String, File> downloads = new SingleFlight<>();
+	private final Map<String, Entry> entries = new HashMap<>();
+	private int records;
+
+	ImageStore(File dir, PageFetcher fetcher, int concurrency, long ttlMillis) throws IOException {
+		this.dir = dir;
+		this.index = new File(dir, INDEX_NAME);
+		this.fetcher = fetcher;
+		this.ttlMillis = ttlMillis;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("could not create " + dir);
+		}
+		if (index.isFile()) {
+			load();
+			if (records > 2 * entries.size() + 100) {
+				compact();
+			}
+		}
+		this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new DaemonThreadFactory("csfd-images"));
+	}
+
+	/**
+	 * Store in the cache dir, created on the first use
+	 */
+	static ImageStore getInstance() throws IOException {
+		if (instance == null) {
+			synchronized (ImageStore.class) {
+				if (instance == null) {
+					instance = new ImageStore(new File(CsfdConfig.getCacheDir(), DIR_NAME), HttpFetcher.getShared(),
+							CsfdConfig.getInt(CONCURRENCY, 4), CsfdConfig.getLong(TTL_HOURS, 24 * 30) * 60 * 60 * 1000);
+				}
+			}
+		}
+		return instance;
+	}
+
+	static boolean isEnabled() {
+		return CsfdConfig.getBoolean(ENABLED, false);
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return file of the image, downloaded when it is not stored or too old; concurrent calls for one url share the
+	 * download
+	 */
+	File download(final String url) throws IOException {
+		final Entry known;
+		synchronized (this) {
+			known = entries.get(url);
+		}
+		if (known != null && System.currentTimeMillis() - known.checkedAt <= ttlMillis) {
+			File file = file(known);
+			if (file.isFile()) {
+				ScraperMetrics.getInstance().count("images.hits");
+				return file;
+			}
+		}
+		return downloads.execute(url, new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				return fetch(url, known != null && file(known).isFile() ? known : null);
+			}
+		});
+	}
+
+	/**
+	 * Downloads the images in parallel, at most concurrency at a time
+	 *
+	 * @return files by url, without the images which could not be downloaded
+	 */
+	Map<String, File> downloadAll(Collection<String> urls) {
+		List<Future<File>> futures = new ArrayList<>(urls.size());
+		for (final String url : urls) {
+			futures.add(executor.submit(new Callable<File>() {
+				@Override
+				public File call() throws IOException {
+					return download(url);
+				}
+			}));
+		}
+
+		Map<String, File> files = new LinkedHashMap<>();
+		int i = 0;
+		for (String url : urls) {
+			try {
+				files.put(url, futures.get(i++).get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				LOGGER.debug("could not download " + url + ": " + e.getCause());
+				ScraperMetrics.getInstance().count("images.failed");
+			}
+		}
+		return files;
+	}
+
+	private File fetch(String url, Entry known) throws IOException {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long now = System.currentTimeMillis();
+		Map<String, String> headers = known == null ? PageFetcher.NO_HEADERS : known.version.conditionalHeaders();
+		try (FetchResponse response = fetcher.fetch(url, headers)) {
+			if (response.getStatus() == 304 && known != null) {
+				metrics.count("images.notModified");
+				return store(url, new Entry(known.version, known.extension, now));
+			}
+			if (response.getStatus() >= 300 || response.getBody() == null) {
+				throw new IOException("HTTP " + response.getStatus() + " for " + url);
+			}
+
+			File temp = File.createTempFile("download", ".tmp", dir);
+			String hash;
+			try {
+				hash = copy(response.getBody(), temp);
+				Entry entry = new Entry(new PageVersion(response.getHeader("ETag"), response.getHeader("Last-Modified"), hash),
+						extension(url), now);
+				File file = file(entry);
+				if (file.isFile()) {
+					// same content as another url or as before
+					metrics.count(known != null && known.version.hash.equals(hash) ? "images.unchanged" : "images.deduplicated");
+				} else {
+					File parent = file.getParentFile();
+					if (!parent.isDirectory() && !parent.mkdirs()) {
+						throw new IOException("could not create " + parent);
+					}
+					// another url with the same content may have won the race
+					if (!temp.renameTo(file) && !file.isFile()) {
+						throw new IOException("could not store " + file);
+					}
+					metrics.count("images.downloaded");
+				}
+				return store(url, entry);
+			} finally {
+				if (temp.isFile() && !temp.delete()) {
+					LOGGER.debug("could not delete " + temp);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the stream to the file
+	 *
+	 * @return SHA-1 of the content
+	 */
+	static String copy(InputStream in, File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+		byte[] buffer = new byte[8192];
+		try (OutputStream out = new FileOutputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, n);
+				out.write(buffer, 0, n);
+			}
+		}
+		return PageVersion.hex(digest.digest());
+	}
+
+	private File file(Entry entry) {
+		String hash = entry.version.hash;
+		return new File(new File(dir, hash.substring(0, 2)), hash + "." + entry.extension);
+	}
+
+	static String extension(String url) {
+		Matcher m = EXTENSION.matcher(url);
+		return m.find() ? m.group(1).toLowerCase() : "img";
+	}
+
+	private synchronized File store(String url, Entry entry) {
+		entries.put(url, entry);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index, true)))) {
+			write(out, url, entry);
+			records++;
+		} catch (IOException e) {
+			LOGGER.warn("could not write image index " + index + ": " + e.getMessage());
+		}
+		return file(entry);
+	}
+
+	private static void write(DataOutputStream out, String url, Entry entry) throws IOException {
+		out.writeUTF(url);
+		out.writeUTF(entry.version.hash);
+		out.writeUTF(entry.extension);
+		out.writeUTF(entry.version.etag == null ? "" : entry.version.etag);
+		out.writeUTF(entry.version.lastModified == null ? "" : entry.version.lastModified);
+		out.writeLong(entry.checkedAt);
+	}
+
+	private void load() {
+		try {
+			byte[] data = new byte[(int) index.length()];
+			try (InputStream in = new FileInputStream(index)) {
+				new DataInputStream(in).readFully(data);
+			}
+			ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+			DataInputStream in = new DataInputStream(bytes);
+			int valid = 0;
+			try {
+				while (bytes.available() > 0) {
+					String url = in.readUTF();
+					String hash = in.readUTF();
+					String extension = in.readUTF();
+					String etag = in.readUTF();
+					String lastModified = in.readUTF();
+					long checkedAt = in.readLong();
+					PageVersion version = new PageVersion(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, hash);
+					entries.put(url, new Entry(version, extension, checkedAt));
+					records++;
+					valid = data.length - bytes.available();
+				}
+			} catch (EOFException e) {
+				// the next entry would be appended to the half written one and could not be read any more
+				LOGGER.warn("image index " + index + " ends with a half written entry, dropping it");
+				try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+					raf.setLength(valid);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warn("could not read image index " + index + ": " + e.getMessage());
+		}
+		LOGGER.debug("image store has " + entries.size() + " urls");
+	}
+
+	/**
+	 * Rewrites the index with the last entry of every url
+	 */
+	private void compact() {
+		File compacted = new File(dir, INDEX_NAME + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)))) {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				write(out, entry.getKey(), entry.getValue());
+			}
+		} catch (IOException e) {
+			LOGGER.warn("could not compact image index " + index + ": " + e.getMessage());
+			return;
+		}
+		try {
+			// in one step, a crash leaves either the old or the compacted index
+			Files.move(compacted.toPath(), index.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			records = entries.size();
+		} catch (IOException e) {
+			LOGGER.warn("could not replace image index " + index + ": " + e.getMessage());
+		}
+	}
+}
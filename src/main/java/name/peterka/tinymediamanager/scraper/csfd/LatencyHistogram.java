@@ -0,0 +1,102 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations. Buckets are powers of two of microseconds split into 8 linear steps, so a
+ * percentile is off by at most 1/8 of its value.
+ */
+final class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+			// retry
+		}
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : totalNanos.get() / (double) n / 1000000.0;
+	}
+
+	/**
+	 * @param percentile 0 - 100
+	 * @return upper bound of the bucket holding the percentile in millis, 0 when nothing was recorded
+	 */
+	double getPercentileMillis(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundMicros(i) / 1000.0, maxNanos.get() / 1000000.0);
+			}
+		}
+		return maxNanos.get() / 1000000.0;
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	static int index(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBoundMicros(int index) {
+		if (index < SUB_BUCKETS) {
+			return index + 1;
+		}
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+		int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1)) << (exponent - SUB_BITS);
+	}
+}
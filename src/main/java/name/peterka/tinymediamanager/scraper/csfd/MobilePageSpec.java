@@ -0,0 +1,209 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaGenres;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.util.StrgUtils;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+/**
+ * What is read from the pages of the mobile site m.csfd.cz. They carry the same data as the desktop pages without
+ * the navigation, ads and comments, so they are a fraction of the bytes; a field which is not on the mobile page is
+ * read from the desktop page afterwards.
+ */
+final class MobilePageSpec {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MobilePageSpec.class);
+
+	/**
+	 * Values of the detail page which need more than one element
+	 */
+	private static final class Detail {
+		final MediaMetadata md;
+		String rating;
+		String voteCount = "";
+		MediaCastMember.CastType castType;
+
+		Detail(MediaMetadata md) {
+			this.md = md;
+		}
+	}
+
+	/**
+	 * Rows of the search page
+	 */
+	private static final class Search {
+		final List<Element> movieLinks = new ArrayList<>();
+		final Map<Element, String> years = new IdentityHashMap<>();
+	}
+
+	private static final ExtractionSpec<Detail> DETAIL = ExtractionSpec.<Detail>builder()
+			.attribute("property", "og:title", DetailField.TITLE_YEAR, true, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					// a movie without an original title has only the czech one, the desktop page is read for it
+					Matcher m = DetailPageSpec.OG_TITLE.matcher(element.attr("content"));
+					if (!m.matches()) {
+						return false;
+					}
+					page.md.storeMetadata(MediaMetadata.TITLE, StrgUtils.removeCommonSortableName(m.group(1)));
+					page.md.storeMetadata(MediaMetadata.ORIGINAL_TITLE, StrgUtils.removeCommonSortableName(m.group(2)));
+					page.md.storeMetadata(MediaMetadata.YEAR, m.group(3));
+					return true;
+				}
+			})
+			.attribute("property", "og:image", DetailField.POSTER, true, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					String src = element.attr("content");
+					if (src.isEmpty()) {
+						return false;
+					}
+					page.md.storeMetadata(MediaMetadata.POSTER_URL, ImageUtil.fixImageUrl(src));
+					return true;
+				}
+			})
+			.className("genre", DetailField.GENRE, true, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					for (MediaGenres tmmGenre : GenresUtil.getTmmGenres(element.text())) {
+						page.md.addGenre(tmmGenre);
+					}
+					return true;
+				}
+			})
+			.attribute("itemprop", "ratingValue", DetailField.RATING, true, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					page.rating = element.text();
+					return false;
+				}
+			})
+			.attribute("itemprop", "ratingCount", DetailField.RATING, true, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					page.voteCount = element.attr("content");
+					return false;
+				}
+			})
+			.className("plot", DetailField.PLOT, true, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					Element text = element.getElementsByTag("p").first();
+					if (text == null) {
+						return false;
+					}
+					page.md.storeMetadata(MediaMetadata.PLOT, text.text());
+					return true;
+				}
+			})
+			.tag("dt", DetailField.CREATORS, false, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					page.castType = DetailPageSpec.getCastType(element.text());
+					return false;
+				}
+			})
+			.tag("dd", DetailField.CREATORS, false, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					if (page.castType == null) {
+						return false;
+					}
+					for (Element person : element.getElementsByTag("a")) {
+						MediaCastMember cm = new MediaCastMember();
+						cm.setName(person.text());
+						cm.setType(page.castType);
+						DetailPageSpec.storePersonId(cm, person.attr("href"));
+						page.md.addCastMember(cm);
+					}
+					return true;
+				}
+			})
+			.className("www-imdb", DetailField.IMDB, true, new ExtractionSpec.Handler<Detail>() {
+				@Override
+				public boolean handle(Element element, Detail page) {
+					return DetailPageSpec.storeImdbId(page.md, element.attr("href"));
+				}
+			})
+			.build();
+
+	private static final ExtractionSpec<Search> SEARCH = ExtractionSpec.<Search>builder()
+			.className("film", null, false, new ExtractionSpec.Handler<Search>() {
+				@Override
+				public boolean handle(Element element, Search page) {
+					page.movieLinks.add(element);
+					return true;
+				}
+			})
+			.className("film-year", null, false, new ExtractionSpec.Handler<Search>() {
+				@Override
+				public boolean handle(Element element, Search page) {
+					page.years.put(element.parent(), element.text().replace("(", "").replace(")", "").trim());
+					return false;
+				}
+			})
+			.build();
+
+	private MobilePageSpec() {
+	}
+
+	/**
+	 * Reads the fields from the mobile detail page into the metadata in one pass.
+	 *
+	 * @return requested fields which were not found on the page
+	 */
+	static EnumSet<DetailField> extractDetail(Node page, MediaMetadata md, EnumSet<DetailField> fields) {
+		Detail target = new Detail(md);
+		Set<Object> captured = DETAIL.extract(page, target, fields);
+
+		if (fields.contains(DetailField.RATING) && StringUtils.isNotBlank(target.rating)) {
+			try {
+				md.storeMetadata(MediaMetadata.RATING, Double.parseDouble(target.rating.replace("%", "").trim()) / 10.0);
+				md.storeMetadata(MediaMetadata.VOTE_COUNT, target.voteCount);
+				captured.add(DetailField.RATING);
+			} catch (NumberFormatException e) {
+				LOGGER.debug("could not parse rating " + target.rating);
+			}
+		}
+
+		EnumSet<DetailField> missing = EnumSet.copyOf(fields);
+		missing.removeAll(captured);
+		return missing;
+	}
+
+	/**
+	 * @return movies of the mobile search page in the order of the page, without posters
+	 */
+	static List<SearchEntry> extractSearch(Node doc) {
+		Search page = new Search();
+		SEARCH.extract(doc, page, null);
+		LOGGER.debug("found " + page.movieLinks.size() + " search results on the mobile page");
+
+		List<SearchEntry> entries = new ArrayList<>(page.movieLinks.size());
+		for (Element movieLink : page.movieLinks) {
+			Matcher m = SearchPageSpec.FILM_ID.matcher(movieLink.attr("href"));
+			String title = movieLink.text();
+			if (!m.find() || StringUtils.isBlank(title)) {
+				ScraperMetrics.getInstance().count("extract.failed.SEARCH_RESULT");
+				continue;
+			}
+			String year = page.years.get(movieLink.parent());
+			// same url as a row of the desktop page
+			entries.add(new SearchEntry(m.group(1), title, year == null ? "" : year, Constants.BASE_URL + "/" + movieLink.attr("href"),
+					null));
+		}
+		return entries;
+	}
+}
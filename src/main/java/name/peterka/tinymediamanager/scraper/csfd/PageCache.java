@@ -0,0 +1,400 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Two tier cache of downloaded csfd.cz pages: a small in-memory LRU in front of gzipped files on disk.
+ * Entries are keyed by page kind and csfd id and expire after the configured TTL. An expired page with a
+ * {@link PageVersion} is kept, so it can be revalidated instead of downloaded again.
+ */
+class PageCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PageCache.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String SUFFIX = ".html.gz";
+	private static final String VERSION_SUFFIX = ".version";
+
+	private final File dir;
+	private final long ttlMillis;
+	private final long maxDiskBytes;
+	private final Map<String, Entry> memory;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private long diskBytes = -1;
+
+	/**
+	 * @param dir            directory of the disk tier, null for memory only cache
+	 * @param memoryEntries  max. pages kept in memory
+	 * @param ttlMillis      max. age of a page
+	 * @param maxDiskBytes   max. size of the disk tier
+	 */
+	PageCache(File dir, final int memoryEntries, long ttlMillis, long maxDiskBytes) {
+		this.dir = dir;
+		this.ttlMillis = ttlMillis;
+		this.maxDiskBytes = maxDiskBytes;
+		this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > memoryEntries;
+			}
+		};
+	}
+
+	static PageCache createDefault() {
+		File dir = CsfdConfig.isCacheEnabled() ? CsfdConfig.getCacheDir() : null;
+		int memoryEntries = CsfdConfig.isCacheEnabled() ? CsfdConfig.getCacheMemoryEntries() : 0;
+		return new PageCache(dir, memoryEntries, CsfdConfig.getCacheTtlMillis(), CsfdConfig.getCacheDiskBytes());
+	}
+
+	/**
+	 * @return cached page or null when the page is not cached or expired
+	 */
+	String get(PageKind kind, String id) {
+		String key = kind.cacheKey(id);
+		long now = System.currentTimeMillis();
+
+		synchronized (memory) {
+			Entry entry = memory.get(key);
+			if (entry != null) {
+				if (now - entry.storedAt <= ttlMillis) {
+					memoryHits.incrementAndGet();
+					return entry.html;
+				}
+				if (entry.version == null) {
+					memory.remove(key);
+				}
+			}
+		}
+
+		File file = file(key);
+		if (file != null && file.isFile()) {
+			if (now - file.lastModified() <= ttlMillis) {
+				try {
+					String html = read(file);
+					synchronized (memory) {
+						memory.put(key, new Entry(html, file.lastModified(), readVersion(file)));
+					}
+					diskHits.incrementAndGet();
+					return html;
+				} catch (IOException e) {
+					LOGGER.warn("could not read cached page " + file + ": " + e.getMessage());
+				}
+			} else if (versionFile(file).isFile()) {
+				misses.incrementAndGet();
+				return null;
+			}
+			delete(file);
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Like {@link #get} without reading the page and without counting a hit or a miss
+	 *
+	 * @return true when the page is cached and did not expire, or can be revalidated
+	 */
+	boolean contains(PageKind kind, String id) {
+		String key = kind.cacheKey(id);
+		long now = System.currentTimeMillis();
+		synchronized (memory) {
+			Entry entry = memory.get(key);
+			if (entry != null && (now - entry.storedAt <= ttlMillis || entry.version != null)) {
+				return true;
+			}
+		}
+		File file = file(key);
+		return file != null && file.isFile() && (now - file.lastModified() <= ttlMillis || versionFile(file).isFile());
+	}
+
+	/**
+	 * @return the page with its version even when it expired, null when it is not cached or has no version
+	 */
+	Entry getStale(PageKind kind, String id) {
+		String key = kind.cacheKey(id);
+		synchronized (memory) {
+			Entry entry = memory.get(key);
+			if (entry != null) {
+				return entry.version != null ? entry : null;
+			}
+		}
+
+		File file = file(key);
+		if (file == null || !file.isFile() || !versionFile(file).isFile()) {
+			return null;
+		}
+		try {
+			PageVersion version = readVersion(file);
+			return version != null ? new Entry(read(file), file.lastModified(), version) : null;
+		} catch (IOException e) {
+			LOGGER.warn("could not read cached page " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	void put(PageKind kind, String id, String html) {
+		put(kind, id, html, null);
+	}
+
+	/**
+	 * @param version validators of the page, null when it can not be revalidated
+	 */
+	void put(PageKind kind, String id, String html, PageVersion version) {
+		String key = kind.cacheKey(id);
+		long now = System.currentTimeMillis();
+		synchronized (memory) {
+			memory.put(key, new Entry(html, now, version));
+		}
+
+		File file = file(key);
+		if (file == null) {
+			return;
+		}
+		try {
+			// a replaced page does not add its old bytes again
+			long replaced = size(file);
+			write(file, html);
+			writeVersion(file, version);
+			trimDisk(size(file) - replaced);
+		} catch (IOException e) {
+			LOGGER.warn("could not store page " + key + " to " + dir + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The site answered the page did not change, it is fresh for another TTL
+	 */
+	void touch(PageKind kind, String id) {
+		String key = kind.cacheKey(id);
+		long now = System.currentTimeMillis();
+		synchronized (memory) {
+			Entry entry = memory.get(key);
+			if (entry != null) {
+				memory.put(key, new Entry(entry.html, now, entry.version));
+			}
+		}
+		File file = file(key);
+		if (file != null && file.isFile() && !file.setLastModified(now)) {
+			LOGGER.debug("could not touch " + file);
+		}
+	}
+
+	void invalidate(PageKind kind, String id) {
+		String key = kind.cacheKey(id);
+		synchronized (memory) {
+			memory.remove(key);
+		}
+		File file = file(key);
+		if (file != null && file.isFile()) {
+			long removed = size(file);
+			delete(file);
+			delete(versionFile(file));
+			trimDisk(-removed);
+		}
+	}
+
+	void clear() {
+		synchronized (memory) {
+			memory.clear();
+		}
+		synchronized (this) {
+			for (File file : listFiles()) {
+				delete(file);
+				delete(versionFile(file));
+			}
+			diskBytes = -1;
+		}
+	}
+
+	long getHitCount() {
+		return memoryHits.get() + diskHits.get();
+	}
+
+	long getMemoryHitCount() {
+		return memoryHits.get();
+	}
+
+	long getDiskHitCount() {
+		return diskHits.get();
+	}
+
+	long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PageCache[memoryHits=" + memoryHits + ", diskHits=" + diskHits + ", misses=" + misses + "]";
+	}
+
+	private File file(String key) {
+		if (dir == null) {
+			return null;
+		}
+		return new File(dir, key.replaceAll("[^A-Za-z0-9_.-]", "_") + SUFFIX);
+	}
+
+	private static File versionFile(File file) {
+		return new File(file.getPath() + VERSION_SUFFIX);
+	}
+
+	/**
+	 * @return version stored next to the page, null when there is none
+	 */
+	private static PageVersion readVersion(File file) throws IOException {
+		File versionFile = versionFile(file);
+		if (!versionFile.isFile()) {
+			return null;
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(versionFile), UTF8))) {
+			String etag = reader.readLine();
+			String lastModified = reader.readLine();
+			String hash = reader.readLine();
+			if (hash == null) {
+				return null;
+			}
+			return new PageVersion(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, hash);
+		}
+	}
+
+	private static void writeVersion(File file, PageVersion version) throws IOException {
+		File versionFile = versionFile(file);
+		if (version == null) {
+			if (versionFile.exists()) {
+				delete(versionFile);
+			}
+			return;
+		}
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(versionFile), UTF8)) {
+			writer.write((version.etag == null ? "" : version.etag) + "\n" + (version.lastModified == null ? "" : version.lastModified)
+					+ "\n" + version.hash + "\n");
+		}
+	}
+
+	private String read(File file) throws IOException {
+		try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), UTF8)) {
+			StringBuilder sb = new StringBuilder((int) Math.min(file.length() * 6, 1 << 20));
+			char[] buffer = new char[8192];
+			int n;
+			while ((n = reader.read(buffer)) != -1) {
+				sb.append(buffer, 0, n);
+			}
+			return sb.toString();
+		}
+	}
+
+	private void write(File file, String html) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create " + dir);
+		}
+		File tmp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmp)), UTF8)) {
+			writer.write(html);
+		}
+		if (file.exists()) {
+			delete(file);
+		}
+		if (!tmp.renameTo(file)) {
+			delete(tmp);
+			throw new IOException("cannot rename " + tmp + " to " + file);
+		}
+	}
+
+	/**
+	 * Removes the oldest pages when the disk tier grows over its limit
+	 *
+	 * @param added bytes the last put added, negative when it replaced a larger page
+	 */
+	private synchronized void trimDisk(long added) {
+		if (diskBytes < 0) {
+			diskBytes = 0;
+			for (File file : listFiles()) {
+				diskBytes += size(file);
+			}
+		} else {
+			diskBytes += added;
+		}
+		if (diskBytes <= maxDiskBytes) {
+			return;
+		}
+
+		File[] files = listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return Long.compare(o1.lastModified(), o2.lastModified());
+			}
+		});
+		long target = maxDiskBytes * 9 / 10;
+		for (int i = 0; i < files.length && diskBytes > target; i++) {
+			diskBytes -= size(files[i]);
+			delete(files[i]);
+			delete(versionFile(files[i]));
+		}
+		LOGGER.debug("trimmed page cache to " + diskBytes + " bytes");
+	}
+
+	/**
+	 * @return the cached pages, without their versions and the other stores which share the cache dir
+	 */
+	private File[] listFiles() {
+		if (dir == null) {
+			return new File[0];
+		}
+		File[] files = dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(SUFFIX) && file.isFile();
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * @return bytes of the page and its version
+	 */
+	private static long size(File file) {
+		return file.length() + versionFile(file).length();
+	}
+
+	private static void delete(File file) {
+		if (!file.delete() && file.exists()) {
+			LOGGER.debug("could not delete " + file);
+		}
+	}
+
+	static final class Entry {
+		final String html;
+		final long storedAt;
+		final PageVersion version;
+
+		Entry(String html, long storedAt, PageVersion version) {
+			this.html = html;
+			this.storedAt = storedAt;
+			this.version = version;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Sends one GET request for a csfd.cz page. {@link HttpFetcher} goes to the site, {@link ReplayFetcher} serves
+ * captured pages.
+ */
+interface PageFetcher {
+	Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+	/**
+	 * @param headers sent in addition to the fetcher's own, e.g. If-None-Match
+	 * @return the response whatever the status is, the caller closes it
+	 */
+	FetchResponse fetch(String url, Map<String, String> headers) throws IOException;
+}
@@ -0,0 +1,64 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+/**
+ * Kinds of csfd.cz pages the scraper downloads
+ */
+enum PageKind {
+	DETAIL("/film/%s", true),
+	GALLERY("/film/%s/galerie", true),
+	// id is "csfdId_page" from pageId(), page 2 and later
+	GALLERY_PAGE("/film/%s/galerie/strana-%s/", true),
+	// id is the url encoded query, parsed results are cached by the SearchCache
+	SEARCH("/hledat/?q=%s", false),
+	// parsed persons are kept by the PersonCache
+	PERSON("/tvurce/%s", false),
+	// lighter pages of the mobile site, see MobilePageSpec
+	MOBILE_DETAIL(Constants.MOBILE_URL, "/film/%s", true),
+	MOBILE_SEARCH(Constants.MOBILE_URL, "/hledat/?q=%s", false);
+
+	private static final String PAGE_SEPARATOR = "_";
+
+	private final String host;
+	private final String path;
+	private final boolean cached;
+
+	PageKind(String path, boolean cached) {
+		this(Constants.BASE_URL, path, cached);
+	}
+
+	PageKind(String host, String path, boolean cached) {
+		this.host = host;
+		this.path = path;
+		this.cached = cached;
+	}
+
+	String url(String id) {
+		Object[] args = this == GALLERY_PAGE ? id.split(PAGE_SEPARATOR, 2) : new Object[]{id};
+		return host + String.format(path, args);
+	}
+
+	String cacheKey(String id) {
+		return name().toLowerCase() + "-" + id;
+	}
+
+	/**
+	 * @return true when the page is kept in the {@link PageCache}
+	 */
+	boolean isCached() {
+		return cached;
+	}
+
+	/**
+	 * @return kind which stands for the part of the site, pages of a gallery are the gallery
+	 */
+	PageKind endpoint() {
+		return this == GALLERY_PAGE ? GALLERY : this;
+	}
+
+	/**
+	 * @return id of one page of a paged kind
+	 */
+	static String pageId(String id, int page) {
+		return id + PAGE_SEPARATOR + page;
+	}
+}
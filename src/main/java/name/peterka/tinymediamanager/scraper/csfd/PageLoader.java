@@ -0,0 +1,456 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads csfd.cz pages through the {@link PageCache}. All requests are paced by one {@link RateLimiter}.
+ * An expired page is revalidated with a conditional request, see {@link PageVersion}. Slow requests are hedged
+ * ({@link Hedger}); a part of the site which keeps failing is not asked until its {@link CircuitBreaker} closes,
+ * meanwhile cached pages are served even when they expired.
+ * One instance is shared by all providers.
+ */
+class PageLoader {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PageLoader.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAX_THROTTLED_RETRIES = 3;
+	// prefetched pages wait here for the request they were fetched for, also when the cache is disabled
+	private static final int PREFETCHED_ENTRIES = 50;
+	private static final long PREFETCHED_TTL = TimeUnit.MINUTES.toMillis(5);
+	// pages streamed to the end, for the parse of fields the streaming extractor missed
+	private static final int STREAMED_ENTRIES = 10;
+	private static final long STREAMED_TTL = TimeUnit.MINUTES.toMillis(1);
+
+	private static volatile PageLoader instance = new PageLoader(PageCache.createDefault(), RateLimiter.createDefault(), createFetcher());
+
+	private final PageCache cache;
+	private final RateLimiter limiter;
+	private final PageFetcher fetcher;
+	private final Hedger hedger;
+	private final CircuitBreaker[] breakers = new CircuitBreaker[PageKind.values().length];
+	private final PageCache prefetched = new PageCache(null, PREFETCHED_ENTRIES, PREFETCHED_TTL, 0);
+	private final PageCache streamed = new PageCache(null, STREAMED_ENTRIES, STREAMED_TTL, 0);
+	private final SingleFlight<String, String> downloads = new SingleFlight<>();
+	private final ScraperMetrics metrics = ScraperMetrics.getInstance();
+
+	PageLoader(PageCache cache, RateLimiter limiter, PageFetcher fetcher) {
+		this(cache, limiter, fetcher, Hedger.createDefault(), CsfdConfig.getInt(CircuitBreaker.FAILURES, 5),
+				CsfdConfig.getLong(CircuitBreaker.OPEN_SECONDS, 30) * 1000);
+	}
+
+	/**
+	 * @param breakerFailures   failures in a row which stop the requests to a part of the site
+	 * @param breakerOpenMillis how long the requests are stopped
+	 */
+	PageLoader(PageCache cache, RateLimiter limiter, PageFetcher fetcher, Hedger hedger, int breakerFailures, long breakerOpenMillis) {
+		this.cache = cache;
+		this.limiter = limiter;
+		this.fetcher = fetcher;
+		this.hedger = hedger;
+		for (PageKind kind : PageKind.values()) {
+			breakers[kind.ordinal()] = new CircuitBreaker(kind.endpoint().name().toLowerCase(), breakerFailures, breakerOpenMillis);
+		}
+	}
+
+	static PageLoader getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Replaces the shared loader, tests use it to serve a corpus
+	 */
+	static void setInstance(PageLoader loader) {
+		instance = loader;
+	}
+
+	/**
+	 * A loader which serves the corpus without any pacing or caching
+	 */
+	static PageLoader replaying(PageFetcher fetcher) {
+		return new PageLoader(new PageCache(null, 0, 0, 0), new RateLimiter(1000000, 1000000, Integer.MAX_VALUE), fetcher);
+	}
+
+	private static PageFetcher createFetcher() {
+		File replayDir = CsfdConfig.getReplayDir();
+		if (replayDir != null) {
+			try {
+				return ReplayFetcher.fromDirectory(replayDir);
+			} catch (IOException e) {
+				LOGGER.error("could not open the corpus " + replayDir + ", using csfd.cz: " + e.getMessage());
+			}
+		}
+		File recordDir = CsfdConfig.getRecordDir();
+		if (recordDir != null) {
+			return new RecordingFetcher(HttpFetcher.getShared(), recordDir);
+		}
+		return HttpFetcher.getShared();
+	}
+
+	PageCache getCache() {
+		return cache;
+	}
+
+	RateLimiter getRateLimiter() {
+		return limiter;
+	}
+
+	SingleFlight<String, String> getDownloads() {
+		return downloads;
+	}
+
+	/**
+	 * @return breaker of the part of the site the kind belongs to
+	 */
+	CircuitBreaker getBreaker(PageKind kind) {
+		return breakers[kind.endpoint().ordinal()];
+	}
+
+	/**
+	 * @return html of the page, from the cache when possible. Concurrent calls for the same page share one download.
+	 */
+	String load(final PageKind kind, final String id) throws IOException {
+		String html = kind.isCached() ? cache.get(kind, id) : null;
+		if (html != null) {
+			LOGGER.debug("cache hit " + kind + " id=" + id);
+			metrics.count("cache.hits");
+			return html;
+		}
+		if (kind.isCached()) {
+			metrics.count("cache.misses");
+		}
+		html = prefetched.get(kind, id);
+		if (html != null) {
+			metrics.count("prefetch.used");
+			return html;
+		}
+		html = streamed.get(kind, id);
+		if (html != null) {
+			metrics.count("stream.reused");
+			return html;
+		}
+
+		final String url = kind.url(id);
+		return downloads.execute(url, new Callable<String>() {
+			@Override
+			public String call() throws IOException {
+				// another caller may have finished the download meanwhile
+				String cached = kind.isCached() ? cache.get(kind, id) : null;
+				if (cached != null) {
+					return cached;
+				}
+				PageCache.Entry stale = kind.isCached() ? cache.getStale(kind, id) : null;
+				if (stale != null && getBreaker(kind).isOpen()) {
+					return serveStale(stale, url);
+				}
+				if (stale == null || stale.version == null || !CsfdConfig.isRevalidation()) {
+					LOGGER.debug("downloading " + url);
+					try {
+						return download(kind, id, url, PageFetcher.NO_HEADERS);
+					} catch (CircuitBreaker.OpenException e) {
+						if (stale == null) {
+							throw e;
+						}
+						return serveStale(stale, url);
+					}
+				}
+
+				LOGGER.debug("revalidating " + url + " " + stale.version);
+				String html;
+				try {
+					html = download(kind, id, url, stale.version.conditionalHeaders());
+				} catch (CircuitBreaker.OpenException e) {
+					return serveStale(stale, url);
+				}
+				if (html == null) {
+					metrics.count("pages.notModified");
+					cache.touch(kind, id);
+					return stale.html;
+				}
+				PageVersion version = getVersion(kind, id);
+				if (version != null && stale.version.hash.equals(version.hash)) {
+					LOGGER.debug("content of " + url + " did not change");
+					metrics.count("pages.unchanged");
+				}
+				return html;
+			}
+		});
+	}
+
+	private String serveStale(PageCache.Entry stale, String url) {
+		LOGGER.debug("csfd.cz is failing, serving expired " + url);
+		metrics.count("breaker.servedStale");
+		return stale.html;
+	}
+
+	/**
+	 * Loads the page ahead of the request for it, see {@link Prefetcher}
+	 */
+	void prefetch(PageKind kind, String id) throws IOException {
+		prefetched.put(kind, id, load(kind, id));
+	}
+
+	/**
+	 * @return version of the cached page, null when it is not cached (e.g. it was only streamed)
+	 */
+	PageVersion getVersion(PageKind kind, String id) {
+		PageCache.Entry entry = cache.getStale(kind, id);
+		return entry != null ? entry.version : null;
+	}
+
+	/**
+	 * Opens the page for streaming. A page which is not cached yet is read straight from the network, so the caller
+	 * may stop reading at any point; a page read to the end is cached like a downloaded one.
+	 */
+	Reader openReader(PageKind kind, String id) throws IOException {
+		String html = kind.isCached() ? cache.get(kind, id) : null;
+		if (html != null) {
+			LOGGER.debug("cache hit " + kind + " id=" + id);
+			metrics.count("cache.hits");
+			return new StringReader(html);
+		}
+		if (kind.isCached()) {
+			metrics.count("cache.misses");
+		}
+		html = prefetched.get(kind, id);
+		if (html != null) {
+			metrics.count("prefetch.used");
+			return new StringReader(html);
+		}
+
+		String url = kind.url(id);
+		html = downloads.join(url);
+		if (html != null) {
+			LOGGER.debug("joined running download of " + url);
+			return new StringReader(html);
+		}
+		LOGGER.debug("streaming " + url);
+		try {
+			FetchResponse response = open(kind, url, PageFetcher.NO_HEADERS);
+			return new CachingReader(new InputStreamReader(body(kind, response), UTF8), kind, id, response);
+		} catch (CircuitBreaker.OpenException e) {
+			PageCache.Entry stale = kind.isCached() ? cache.getStale(kind, id) : null;
+			if (stale == null) {
+				throw e;
+			}
+			return new StringReader(serveStale(stale, url));
+		}
+	}
+
+	/**
+	 * Parses the page; the parse time is also added up per kind, see {@link #body}
+	 */
+	Document loadDocument(PageKind kind, String id) throws IOException {
+		return parse(kind, load(kind, id));
+	}
+
+	/**
+	 * Parses a page which was already loaded, see {@link #loadDocument}
+	 */
+	Document parse(PageKind kind, String html) {
+		long start = metrics.start();
+		Document doc = Jsoup.parse(html, "");
+		metrics.stop(ScraperMetrics.Stage.PARSE, start);
+		if (start != 0) {
+			metrics.add("parse.micros." + kind, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			metrics.count("pages.parsed." + kind);
+		}
+		return doc;
+	}
+
+	/**
+	 * Sends the request when the rate limiter and the circuit breaker allow it; retries throttled requests after the
+	 * limiter's pause
+	 *
+	 * @return response with a body, or HTTP 304 to a conditional request
+	 */
+	private FetchResponse open(PageKind kind, String url, Map<String, String> headers) throws IOException {
+		CircuitBreaker breaker = getBreaker(kind);
+		if (!breaker.allowRequest()) {
+			metrics.count("breaker.rejected");
+			throw new CircuitBreaker.OpenException("csfd.cz is failing, not loading " + url);
+		}
+		for (int attempt = 0; ; attempt++) {
+			try {
+				limiter.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for " + url);
+			}
+
+			long start = System.nanoTime();
+			FetchResponse response;
+			try {
+				response = hedger.fetch(fetcher, limiter, kind, url, headers);
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				breaker.onFailure();
+				throw e;
+			}
+			int status = response.getStatus();
+			if (status == 429 || status == 503) {
+				response.close();
+				limiter.onThrottled(RateLimiter.parseRetryAfter(response.getHeader("Retry-After")));
+				if (attempt < MAX_THROTTLED_RETRIES) {
+					continue;
+				}
+				breaker.onFailure();
+				throw new IOException("csfd.cz keeps throttling, giving up on " + url + " (HTTP " + status + ")");
+			}
+			limiter.onResponse(System.nanoTime() - start);
+			// a missing page is an answer, server errors mean the site is in trouble
+			if (status >= 500) {
+				breaker.onFailure();
+			} else {
+				breaker.onSuccess();
+			}
+
+			if (status == 304 && !headers.isEmpty()) {
+				response.close();
+				return response;
+			}
+			if (status >= 400 || response.getBody() == null) {
+				response.close();
+				metrics.count("pages.failed");
+				throw new IOException("could not load " + url + " (HTTP " + status + ")");
+			}
+			metrics.count("pages.fetched");
+			return response;
+		}
+	}
+
+	/**
+	 * Body which counts its bytes into "bytes.read" and "bytes.read.KIND", so the desktop and mobile pages can be
+	 * compared with "parse.micros.KIND" and "pages.parsed.KIND"
+	 */
+	private InputStream body(PageKind kind, FetchResponse response) {
+		return metrics.isEnabled() ? new CountingStream(response.getBody(), metrics, kind) : response.getBody();
+	}
+
+	/**
+	 * Downloads the page and caches it with its version
+	 *
+	 * @return html, null when the site answered 304 Not Modified
+	 */
+	private String download(PageKind kind, String id, String url, Map<String, String> headers) throws IOException {
+		long start = metrics.start();
+		try {
+			FetchResponse response = open(kind, url, headers);
+			if (response.getStatus() == 304) {
+				return null;
+			}
+			String html;
+			try (Reader reader = new InputStreamReader(body(kind, response), UTF8)) {
+				StringBuilder sb = new StringBuilder(64 * 1024);
+				char[] buffer = new char[8192];
+				int n;
+				while ((n = reader.read(buffer)) != -1) {
+					sb.append(buffer, 0, n);
+				}
+				html = sb.toString();
+			}
+			if (kind.isCached()) {
+				cache.put(kind, id, html, CsfdConfig.isRevalidation() ? PageVersion.of(response, html) : null);
+			}
+			return html;
+		} finally {
+			metrics.stop(ScraperMetrics.Stage.FETCH, start);
+		}
+	}
+
+	/**
+	 * Keeps the chars of a streamed page and caches the page when it is read to the end
+	 */
+	private final class CachingReader extends Reader {
+		private final Reader in;
+		private final PageKind kind;
+		private final String id;
+		private final FetchResponse response;
+		private final StringBuilder html = new StringBuilder(64 * 1024);
+		private boolean complete;
+
+		CachingReader(Reader in, PageKind kind, String id, FetchResponse response) {
+			this.in = in;
+			this.kind = kind;
+			this.id = id;
+			this.response = response;
+		}
+
+		@Override
+		public int read(char[] buffer, int off, int len) throws IOException {
+			int n = in.read(buffer, off, len);
+			if (n > 0) {
+				html.append(buffer, off, n);
+			} else if (n < 0 && !complete) {
+				complete = true;
+				String page = html.toString();
+				if (kind.isCached()) {
+					cache.put(kind, id, page, CsfdConfig.isRevalidation() ? PageVersion.of(response, page) : null);
+				}
+				streamed.put(kind, id, page);
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Adds the bytes read from the body to the "bytes.read" counters when the body is closed
+	 */
+	private static final class CountingStream extends FilterInputStream {
+		private final ScraperMetrics metrics;
+		private final PageKind kind;
+		private long bytes;
+
+		CountingStream(InputStream in, ScraperMetrics metrics, PageKind kind) {
+			super(in);
+			this.metrics = metrics;
+			this.kind = kind;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				bytes++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				bytes += n;
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			metrics.add("bytes.read", bytes);
+			metrics.add("bytes.read." + kind, bytes);
+			bytes = 0;
+			super.close();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Validators of a cached page: ETag and Last-Modified for a conditional request, and a hash of the content which
+ * tells whether a page downloaded again really changed. Comments, scripts and the site header and footer change on
+ * every visit, they are left out of the hash.
+ */
+final class PageVersion {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// elements which do not hold anything the scraper reads
+	private static final String[] NOISE = {"<script", "</script>", "<!--", "-->", "<div id=\"comments\"", null,
+			"<div id=\"header\"", null, "<div id=\"footer\"", null};
+
+	final String etag;
+	final String lastModified;
+	final String hash;
+
+	PageVersion(String etag, String lastModified, String hash) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.hash = hash;
+	}
+
+	static PageVersion of(FetchResponse response, String html) {
+		return new PageVersion(response.getHeader("ETag"), response.getHeader("Last-Modified"), contentHash(html));
+	}
+
+	/**
+	 * @return If-None-Match and If-Modified-Since, empty when the site sent no validators
+	 */
+	Map<String, String> conditionalHeaders() {
+		Map<String, String> headers = new HashMap<>(2);
+		if (etag != null) {
+			headers.put("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			headers.put("If-Modified-Since", lastModified);
+		}
+		return headers;
+	}
+
+	/**
+	 * SHA-1 of the page without the noise elements and with whitespace collapsed
+	 */
+	static String contentHash(String html) {
+		StringBuilder content = new StringBuilder(html.length());
+		int pos = 0;
+		while (pos < html.length()) {
+			int start = -1;
+			int noise = -1;
+			for (int i = 0; i < NOISE.length; i += 2) {
+				int found = html.indexOf(NOISE[i], pos);
+				if (found >= 0 && (start < 0 || found < start)) {
+					start = found;
+					noise = i;
+				}
+			}
+			if (start < 0) {
+				appendCollapsed(content, html, pos, html.length());
+				break;
+			}
+			appendCollapsed(content, html, pos, start);
+			pos = NOISE[noise + 1] != null ? endOf(html, start, NOISE[noise + 1]) : endOfDiv(html, start);
+		}
+
+		try {
+			return hex(MessageDigest.getInstance("SHA-1").digest(content.toString().getBytes(UTF8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	static String hex(byte[] digest) {
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static int endOf(String html, int start, String end) {
+		int found = html.indexOf(end, start);
+		return found < 0 ? html.length() : found + end.length();
+	}
+
+	/**
+	 * @return position after the closing tag of the div starting at start, nested divs included
+	 */
+	private static int endOfDiv(String html, int start) {
+		int depth = 0;
+		int pos = start;
+		while (true) {
+			int open = html.indexOf("<div", pos);
+			int close = html.indexOf("</div>", pos);
+			if (close < 0) {
+				return html.length();
+			}
+			if (open >= 0 && open < close) {
+				depth++;
+				pos = open + 4;
+			} else {
+				depth--;
+				pos = close + 6;
+				if (depth == 0) {
+					return pos;
+				}
+			}
+		}
+	}
+
+	private static void appendCollapsed(StringBuilder sb, String html, int from, int to) {
+		boolean space = sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ';
+		for (int i = from; i < to; i++) {
+			char c = html.charAt(i);
+			if (Character.isWhitespace(c)) {
+				if (!space) {
+					sb.append(' ');
+					space = true;
+				}
+			} else {
+				sb.append(c);
+				space = false;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PageVersion[etag=" + etag + ", lastModified=" + lastModified + ", hash=" + hash + "]";
+	}
+}
@@ -0,0 +1,248 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaCastMember;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Persons (actors, directors, ...) read from their csfd.cz pages, shared by all movies. The same persons are in the
+ * cast of many movies, so every person page is downloaded once and kept in {@code persons.db} in the cache dir; the
+ * cast of a scraped movie gets the photos of known persons without a request. Unknown persons are read in the
+ * background, one after another, so a scrape never waits for them.
+ * <p>
+ * The file is a log of records (id, name, photo url), a person without a photo is stored with an empty url so the
+ * page is not downloaded again.
+ */
+final class PersonCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PersonCache.class);
+
+	static final String ENABLED = "csfd.persons.enabled";
+	static final String PER_MOVIE = "csfd.persons.perMovie";
+	static final String FILE_NAME = "persons.db";
+
+	// photos of persons are in /files/images/creator/photos/, anything else is a placeholder
+	private static final String PHOTO_PATH = "/files/images/creator/";
+
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new DaemonThreadFactory("csfd-persons"));
+
+	/**
+	 * Person read from its page
+	 */
+	static final class Person {
+		final String id;
+		final String name;
+		// empty when the person has no photo
+		final String photoUrl;
+
+		Person(String id, String name, String photoUrl) {
+			this.id = id;
+			this.name = name;
+			this.photoUrl = photoUrl;
+		}
+	}
+
+	private final File file;
+	private final ConcurrentMap<String, Person> persons = new ConcurrentHashMap<>();
+	private final SingleFlight<String, Person> downloads = new SingleFlight<>();
+
+	/**
+	 * @param file null to keep the persons in memory only
+	 */
+	PersonCache(File file) {
+		this.file = file;
+		if (file != null && file.isFile()) {
+			load();
+		}
+	}
+
+	static PersonCache createDefault() {
+		return new PersonCache(CsfdConfig.isCacheEnabled() ? new File(CsfdConfig.getCacheDir(), FILE_NAME) : null);
+	}
+
+	/**
+	 * @return true when missing persons are downloaded in the background after a movie is scraped
+	 */
+	static boolean isEnabled() {
+		return CsfdConfig.getBoolean(ENABLED, false);
+	}
+
+	/**
+	 * @return how many unknown persons of the cast of one movie are downloaded at most, the first ones of the page
+	 */
+	static int getPerMovie() {
+		return CsfdConfig.getInt(PER_MOVIE, 10);
+	}
+
+	int size() {
+		return persons.size();
+	}
+
+	/**
+	 * @return the person when it was read already, null otherwise
+	 */
+	Person get(String id) {
+		return persons.get(id);
+	}
+
+	/**
+	 * @return the known person or the one read from its page; concurrent calls for one person share the download
+	 */
+	Person resolve(final String id) throws IOException {
+		Person person = persons.get(id);
+		if (person != null) {
+			ScraperMetrics.getInstance().count("persons.hits");
+			return person;
+		}
+		return downloads.execute(id, new Callable<Person>() {
+			@Override
+			public Person call() throws IOException {
+				Person known = persons.get(id);
+				if (known != null) {
+					return known;
+				}
+				Person read = parse(id, PageLoader.getInstance().loadDocument(PageKind.PERSON, id));
+				ScraperMetrics.getInstance().count("persons.fetched");
+				if (persons.putIfAbsent(id, read) == null) {
+					append(read);
+				}
+				return read;
+			}
+		});
+	}
+
+	/**
+	 * Sets the photos of the cast members who are known already, nothing is downloaded
+	 *
+	 * @return csfd ids of the cast members who are not known yet, in the order of the cast
+	 */
+	List<String> enrich(List<MediaCastMember> cast) {
+		List<String> unknown = new ArrayList<>();
+		for (MediaCastMember cm : cast) {
+			if (cm.getId() == null) {
+				continue;
+			}
+			Person person = persons.get(cm.getId());
+			if (person == null) {
+				unknown.add(cm.getId());
+			} else if (!person.photoUrl.isEmpty()) {
+				cm.setImageUrl(person.photoUrl);
+			}
+		}
+		return unknown;
+	}
+
+	/**
+	 * Reads the first {@code limit} of the persons in the background, the next movies with them get their photos; a
+	 * person which can not be read is skipped
+	 *
+	 * @return number of persons read, when the downloads are done
+	 */
+	Future<Integer> resolveLater(List<String> ids, int limit) {
+		final List<String> todo = new ArrayList<>(ids.subList(0, Math.min(limit, ids.size())));
+		return EXECUTOR.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				int read = 0;
+				for (String id : todo) {
+					try {
+						resolve(id);
+						read++;
+					} catch (IOException e) {
+						LOGGER.debug("could not read person " + id + ": " + e.getMessage());
+						ScraperMetrics.getInstance().count("persons.failed");
+					}
+				}
+				return read;
+			}
+		});
+	}
+
+	/**
+	 * Reads name and photo from the page of the person
+	 */
+	static Person parse(String id, Document page) {
+		Element profile = page.getElementById("profile");
+		Element scope = profile != null ? profile : page;
+
+		Element h1 = scope.getElementsByTag("h1").first();
+		String name = h1 == null ? "" : h1.text().trim();
+		String photo = "";
+		for (Element img : scope.getElementsByTag("img")) {
+			if (img.attr("src").contains(PHOTO_PATH)) {
+				photo = ImageUtil.fixImageUrl(img.attr("src"));
+				break;
+			}
+		}
+		return new Person(id, name, photo);
+	}
+
+	private void load() {
+		try {
+			byte[] data = new byte[(int) file.length()];
+			try (InputStream in = new FileInputStream(file)) {
+				new DataInputStream(in).readFully(data);
+			}
+			ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+			DataInputStream in = new DataInputStream(bytes);
+			int valid = 0;
+			try {
+				while (bytes.available() > 0) {
+					String id = in.readUTF();
+					String name = in.readUTF();
+					String photo = in.readUTF();
+					persons.put(id, new Person(id, name, photo));
+					valid = data.length - bytes.available();
+				}
+			} catch (EOFException e) {
+				// the next person would be appended to the half written one and could not be read any more
+				LOGGER.warn("person cache " + file + " ends with a half written person, dropping it");
+				try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+					raf.setLength(valid);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warn("could not read person cache " + file + ": " + e.getMessage());
+		}
+		LOGGER.debug("person cache has " + persons.size() + " persons");
+	}
+
+	private synchronized void append(Person person) {
+		if (file == null) {
+			return;
+		}
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			LOGGER.warn("could not create " + dir);
+			return;
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+			out.writeUTF(person.id);
+			out.writeUTF(person.name);
+			out.writeUTF(person.photoUrl);
+		} catch (IOException e) {
+			LOGGER.warn("could not write person cache " + file + ": " + e.getMessage());
+		}
+	}
+}
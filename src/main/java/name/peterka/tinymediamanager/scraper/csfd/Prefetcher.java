@@ -0,0 +1,171 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaSearchResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetches the page TMM most likely asks for next in the background: the detail of the best search results after a
+ * search, the gallery after a detail. At most maxPending pages are fetched at once, and nothing is fetched while the
+ * {@link RateLimiter} is under pressure, real requests come first.
+ */
+final class Prefetcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(Prefetcher.class);
+
+	static final String ENABLED = "csfd.prefetch.enabled";
+	static final String RESULTS = "csfd.prefetch.results";
+	static final String MAX_PENDING = "csfd.prefetch.maxPending";
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("csfd-prefetch"));
+	private static final Prefetcher INSTANCE = new Prefetcher(CsfdConfig.getBoolean(ENABLED, false),
+			CsfdConfig.getInt(RESULTS, 1), CsfdConfig.getInt(MAX_PENDING, 2));
+
+	private final boolean enabled;
+	private final int results;
+	private final int maxPending;
+	private final Map<String, Task> pending = new HashMap<>();
+	private final ScraperMetrics metrics = ScraperMetrics.getInstance();
+
+	/**
+	 * @param results    detail pages fetched after a search, best scored first
+	 * @param maxPending pages fetched at the same time
+	 */
+	Prefetcher(boolean enabled, int results, int maxPending) {
+		this.enabled = enabled;
+		this.results = results;
+		this.maxPending = maxPending;
+	}
+
+	static Prefetcher getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Fetches the details of the best scored results
+	 */
+	void afterSearch(List<MediaSearchResult> found) {
+		if (!enabled || found.isEmpty()) {
+			return;
+		}
+		List<MediaSearchResult> best = new ArrayList<>(found);
+		Collections.sort(best, new Comparator<MediaSearchResult>() {
+			@Override
+			public int compare(MediaSearchResult a, MediaSearchResult b) {
+				return Float.compare(b.getScore(), a.getScore());
+			}
+		});
+		for (int i = 0; i < results && i < best.size(); i++) {
+			prefetch(PageKind.DETAIL, best.get(i).getId());
+		}
+	}
+
+	/**
+	 * Fetches the first page of the gallery, getArtwork usually follows
+	 */
+	void afterDetail(String csfdId) {
+		if (enabled) {
+			prefetch(PageKind.GALLERY, csfdId);
+		}
+	}
+
+	void prefetch(final PageKind kind, final String id) {
+		final PageLoader loader = PageLoader.getInstance();
+		if (loader.getRateLimiter().isUnderPressure()) {
+			cancelPending();
+			metrics.count("prefetch.skipped");
+			return;
+		}
+
+		final String key = kind.cacheKey(id);
+		synchronized (pending) {
+			if (pending.containsKey(key)) {
+				return;
+			}
+			if (pending.size() >= maxPending) {
+				metrics.count("prefetch.skipped");
+				return;
+			}
+			Task task = new Task(loader, kind, id, key);
+			pending.put(key, task);
+			EXECUTOR.execute(task);
+		}
+		LOGGER.debug("prefetching " + key);
+	}
+
+	/**
+	 * Drops the prefetches which did not start yet, a running download is not interrupted as a real request may share it
+	 */
+	void cancelPending() {
+		synchronized (pending) {
+			for (Iterator<Task> it = pending.values().iterator(); it.hasNext(); ) {
+				if (!it.next().started) {
+					it.remove();
+					metrics.count("prefetch.cancelled");
+				}
+			}
+		}
+	}
+
+	int getPendingCount() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * One prefetch, it does nothing when it was dropped from pending before it started
+	 */
+	private final class Task implements Runnable {
+		private final PageLoader loader;
+		private final PageKind kind;
+		private final String id;
+		private final String key;
+		// guarded by pending
+		private boolean started;
+
+		Task(PageLoader loader, PageKind kind, String id, String key) {
+			this.loader = loader;
+			this.kind = kind;
+			this.id = id;
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			synchronized (pending) {
+				if (pending.get(key) != this) {
+					return;
+				}
+				started = true;
+			}
+			try {
+				// the limiter may have come under pressure while the task waited
+				if (loader.getRateLimiter().isUnderPressure()) {
+					metrics.count("prefetch.cancelled");
+					return;
+				}
+				loader.prefetch(kind, id);
+				metrics.count("prefetch.fetched");
+			} catch (Exception e) {
+				LOGGER.debug("prefetch of " + key + " failed: " + e.getMessage());
+			} finally {
+				synchronized (pending) {
+					// a new prefetch of the key may have replaced a dropped one
+					if (pending.get(key) == this) {
+						pending.remove(key);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket for all requests to csfd.cz. The rate adapts to how the site answers: it is halved on HTTP 429/503
+ * and lowered on slow responses, and slowly grows back to the configured maximum while the site answers fine.
+ * A Retry-After header pauses all requests until the given time.
+ */
+class RateLimiter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class);
+
+	static final String RATE = "csfd.rate.perSecond";
+	static final String BURST = "csfd.rate.burst";
+	static final String SLOW_MILLIS = "csfd.rate.slowMillis";
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final long MAX_BACKOFF = TimeUnit.SECONDS.toNanos(60);
+
+	private final double maxRate;
+	private final double minRate;
+	private final double burst;
+	private final long slowNanos;
+
+	private double rate;
+	private double tokens;
+	private long lastRefill;
+	private long pausedUntil;
+	private long lastDecrease;
+	private int throttledInRow;
+
+	/**
+	 * @param maxRate    requests per second when the site answers fine
+	 * @param burst      requests which may go out at once after a quiet period
+	 * @param slowMillis responses slower than this lower the rate
+	 */
+	RateLimiter(double maxRate, int burst, long slowMillis) {
+		this.maxRate = maxRate;
+		this.minRate = Math.min(maxRate, 0.1);
+		this.burst = Math.max(1, burst);
+		this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+		this.rate = maxRate;
+		this.tokens = this.burst;
+		this.lastRefill = System.nanoTime();
+		this.lastDecrease = lastRefill - SECOND;
+	}
+
+	static RateLimiter createDefault() {
+		return new RateLimiter(CsfdConfig.getDouble(RATE, 2.0), CsfdConfig.getInt(BURST, 4), CsfdConfig.getLong(SLOW_MILLIS, 5000));
+	}
+
+	/**
+	 * Blocks until the next request may go out
+	 */
+	void acquire() throws InterruptedException {
+		long wait = reserve(System.nanoTime());
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * Takes one token only when the request may go out right away, for optional requests like a hedge
+	 *
+	 * @return false when the caller would have to wait
+	 */
+	synchronized boolean tryAcquire() {
+		long now = System.nanoTime();
+		refill(now);
+		if (tokens < 1 || now < pausedUntil) {
+			return false;
+		}
+		tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * Takes one token, going into debt when there is none
+	 *
+	 * @return nanos the caller has to wait
+	 */
+	synchronized long reserve(long now) {
+		refill(now);
+		tokens -= 1;
+		long wait = tokens >= 0 ? 0 : (long) (-tokens / rate * SECOND);
+		return Math.max(wait, pausedUntil - now);
+	}
+
+	/**
+	 * The site answered, took latencyNanos until the response headers
+	 */
+	synchronized void onResponse(long latencyNanos) {
+		long now = System.nanoTime();
+		throttledInRow = 0;
+		if (latencyNanos > slowNanos) {
+			decrease(now, 0.8, "slow response " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + "ms");
+		} else if (rate < maxRate) {
+			refill(now);
+			rate = Math.min(maxRate, rate + maxRate * 0.05);
+		}
+	}
+
+	/**
+	 * The site answered 429 or 503
+	 *
+	 * @param retryAfterMillis value of Retry-After, -1 when there was none
+	 */
+	synchronized void onThrottled(long retryAfterMillis) {
+		long now = System.nanoTime();
+		throttledInRow++;
+		decrease(now, 0.5, "throttled");
+
+		long pause = retryAfterMillis >= 0 ? TimeUnit.MILLISECONDS.toNanos(retryAfterMillis)
+				: Math.min(MAX_BACKOFF, SECOND << Math.min(throttledInRow - 1, 6));
+		pausedUntil = Math.max(pausedUntil, now + pause);
+		LOGGER.info("csfd.cz is throttling, pausing requests for " + TimeUnit.NANOSECONDS.toMillis(pause) + "ms, rate "
+				+ String.format(Locale.ROOT, "%.2f", rate) + "/s");
+	}
+
+	synchronized double getRate() {
+		return rate;
+	}
+
+	/**
+	 * @return true while the limiter runs below its maximum rate or requests are paused
+	 */
+	synchronized boolean isUnderPressure() {
+		return rate < maxRate * 0.75 || System.nanoTime() < pausedUntil || tokens < 0;
+	}
+
+	private void decrease(long now, double factor, String reason) {
+		// one decrease per second, parallel requests report the same problem
+		if (now - lastDecrease < SECOND) {
+			return;
+		}
+		refill(now);
+		lastDecrease = now;
+		rate = Math.max(minRate, rate * factor);
+		LOGGER.debug("rate lowered to " + rate + "/s: " + reason);
+	}
+
+	private void refill(long now) {
+		if (now > lastRefill) {
+			tokens = Math.min(burst, tokens + (now - lastRefill) * rate / SECOND);
+			lastRefill = now;
+		}
+	}
+
+	/**
+	 * Parses Retry-After, either seconds or a HTTP date
+	 *
+	 * @return millis to wait, -1 when the header is missing or invalid
+	 */
+	static long parseRetryAfter(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return -1;
+		}
+		String trimmed = value.trim();
+		try {
+			return Math.max(0, Long.parseLong(trimmed) * 1000);
+		} catch (NumberFormatException e) {
+			// not seconds, try a date
+		}
+		try {
+			SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			return Math.max(0, format.parse(trimmed).getTime() - System.currentTimeMillis());
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+}
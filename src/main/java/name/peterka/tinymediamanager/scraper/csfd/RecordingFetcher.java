@@ -0,0 +1,74 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Saves every page fetched from csfd.cz into a corpus directory which {@link ReplayFetcher} can serve later
+ */
+final class RecordingFetcher implements PageFetcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RecordingFetcher.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final PageFetcher delegate;
+	private final File dir;
+
+	RecordingFetcher(PageFetcher delegate, File dir) {
+		this.delegate = delegate;
+		this.dir = dir;
+	}
+
+	@Override
+	public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+		FetchResponse response = delegate.fetch(url, headers);
+		if (response.getStatus() != 200 || response.getBody() == null) {
+			return response;
+		}
+
+		byte[] page;
+		try {
+			page = ReplayFetcher.readFully(response.getBody());
+		} finally {
+			response.close();
+		}
+		record(url, page);
+		// the validators are needed for the revalidation of the page
+		return new FetchResponse(response.getUrl(), response.getStatus(), response.getHeaders(), new ByteArrayInputStream(page));
+	}
+
+	private synchronized void record(String url, byte[] page) {
+		String file = fileName(url);
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("could not create " + dir);
+			}
+			try (OutputStream out = new FileOutputStream(new File(dir, file))) {
+				out.write(page);
+			}
+			try (Writer index = new OutputStreamWriter(new FileOutputStream(new File(dir, ReplayFetcher.INDEX), true), UTF8)) {
+				index.write(file + " " + url + "\n");
+			}
+			LOGGER.debug("recorded " + url + " as " + file);
+		} catch (IOException e) {
+			LOGGER.warn("could not record " + url + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * "http://www.csfd.cz/film/19977/galerie" -> "film-19977-galerie.html"
+	 */
+	static String fileName(String url) {
+		String name = ReplayFetcher.key(url).replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+		return (name.isEmpty() ? "index" : name) + ".html";
+	}
+}
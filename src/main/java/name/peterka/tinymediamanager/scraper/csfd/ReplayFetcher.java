@@ -0,0 +1,167 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves captured pages instead of csfd.cz, so tests and benchmarks run offline and see the same pages every time.
+ * <p>
+ * A corpus is a directory (or a classpath folder) with the pages and an index.txt, one "file url" pair per line.
+ * Urls are matched by {@link #key}, pages which are not in the index get HTTP 404.
+ */
+final class ReplayFetcher implements PageFetcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplayFetcher.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final String INDEX = "index.txt";
+
+	private static final Set<String> DESKTOP_HOSTS = new HashSet<>(Arrays.asList("www.csfd.cz", "csfd.cz"));
+
+	private final File dir;
+	private final String resourcePath;
+	private final Map<String, String> files;
+	private final ConcurrentMap<String, byte[]> pages = new ConcurrentHashMap<>();
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private ReplayFetcher(File dir, String resourcePath) throws IOException {
+		this.dir = dir;
+		this.resourcePath = resourcePath;
+		try (InputStream in = open(INDEX)) {
+			this.files = readIndex(in);
+		}
+		LOGGER.debug("replaying " + files.size() + " pages from " + (dir != null ? dir : resourcePath));
+	}
+
+	/**
+	 * Corpus written by {@link RecordingFetcher} or checked out next to the project
+	 */
+	static ReplayFetcher fromDirectory(File dir) throws IOException {
+		return new ReplayFetcher(dir, null);
+	}
+
+	/**
+	 * @param resourcePath folder on the classpath, e.g. "/csfd-corpus/v1"
+	 */
+	static ReplayFetcher fromClasspath(String resourcePath) throws IOException {
+		return new ReplayFetcher(null, resourcePath.endsWith("/") ? resourcePath : resourcePath + "/");
+	}
+
+	/**
+	 * @param requestHeaders ignored, the corpus always answers with the whole page
+	 */
+	@Override
+	public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+		requests.incrementAndGet();
+		String file = files.get(key(url));
+		if (file == null) {
+			LOGGER.debug("not in corpus: " + url);
+			return new FetchResponse(url, 404, null, null);
+		}
+
+		byte[] page = pages.get(file);
+		if (page == null) {
+			try (InputStream in = open(file)) {
+				page = readFully(in);
+			}
+			pages.putIfAbsent(file, page);
+		}
+		Map<String, List<String>> headers = Collections.singletonMap("Content-Type",
+				Collections.singletonList("text/html; charset=utf-8"));
+		return new FetchResponse(url, 200, headers, new ByteArrayInputStream(page));
+	}
+
+	/**
+	 * @return how many requests were answered, including 404s
+	 */
+	int getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Path and query of the url, decoded and without case and diacritics: "http://www.csfd.cz/hledat/?q=Krtek+a+auti%C4%8Dko"
+	 * -> "/hledat/?q=krtek a auticko". Other hosts than the desktop site stay in the key: "http://m.csfd.cz/film/19977"
+	 * -> "//m.csfd.cz/film/19977".
+	 */
+	static String key(String url) {
+		String path = url;
+		int scheme = path.indexOf("://");
+		if (scheme >= 0) {
+			int slash = path.indexOf('/', scheme + 3);
+			String host = (slash >= 0 ? path.substring(scheme + 3, slash) : path.substring(scheme + 3)).toLowerCase();
+			path = slash >= 0 ? path.substring(slash) : "/";
+			if (!DESKTOP_HOSTS.contains(host)) {
+				path = "//" + host + path;
+			}
+		}
+		try {
+			path = URLDecoder.decode(path, "UTF-8");
+		} catch (IllegalArgumentException | IOException e) {
+			// keep it encoded
+		}
+		path = TitleUtil.normalize(path);
+		if (path.length() > 1 && path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		return path;
+	}
+
+	static Map<String, String> readIndex(InputStream in) throws IOException {
+		Map<String, String> files = new HashMap<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int space = line.indexOf(' ');
+			if (space < 0) {
+				throw new IOException("invalid corpus index line: " + line);
+			}
+			files.put(key(line.substring(space + 1).trim()), line.substring(0, space));
+		}
+		return files;
+	}
+
+	private InputStream open(String file) throws IOException {
+		if (dir != null) {
+			return new FileInputStream(new File(dir, file));
+		}
+		InputStream in = ReplayFetcher.class.getResourceAsStream(resourcePath + file);
+		if (in == null) {
+			throw new IOException("no " + file + " in " + resourcePath);
+		}
+		return in;
+	}
+
+	static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,262 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings of the fetch, parse and extract stages and counters of pages, bytes, cache hits and fields which could not
+ * be read. One registry is shared by all providers; TMM can read it directly or through JMX.
+ * <p>
+ * The memory allocated by every provider call is taken from the allocation counter of the thread
+ * ({@code com.sun.management.ThreadMXBean}); work handed to other threads for the call, like the next gallery pages,
+ * is added with {@link #addAllocation}. On a JVM without the counter the allocations stay 0.
+ * <p>
+ * When disabled, {@link #start} returns 0 without reading the clock and all other calls return right away.
+ */
+public final class ScraperMetrics implements ScraperMetricsMXBean {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ScraperMetrics.class);
+	static final String OBJECT_NAME = "name.peterka.tinymediamanager.scraper.csfd:type=Metrics";
+
+	public enum Stage {
+		/**
+		 * request until the whole body is read
+		 */
+		FETCH,
+		/**
+		 * html to DOM
+		 */
+		PARSE,
+		/**
+		 * fields from DOM or from the streamed page
+		 */
+		EXTRACT
+	}
+
+	/**
+	 * Provider calls whose allocations are tracked
+	 */
+	public enum Call {
+		METADATA,
+		SEARCH,
+		ARTWORK
+	}
+
+	private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+	private static final ScraperMetrics INSTANCE = create();
+
+	private volatile boolean enabled;
+	private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+	private final AtomicLongArray calls = new AtomicLongArray(Call.values().length);
+	private final AtomicLongArray allocated = new AtomicLongArray(Call.values().length);
+
+	ScraperMetrics(boolean enabled) {
+		this.enabled = enabled;
+		for (int i = 0; i < stages.length; i++) {
+			stages[i] = new LatencyHistogram();
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+				if (threads.isThreadAllocatedMemorySupported()) {
+					if (!threads.isThreadAllocatedMemoryEnabled()) {
+						threads.setThreadAllocatedMemoryEnabled(true);
+					}
+					return threads;
+				}
+			}
+		} catch (RuntimeException | LinkageError e) {
+			LOGGER.debug("allocations are not measured: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far, -1 when the JVM does not count them
+	 */
+	static long allocatedBytes() {
+		return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	private static ScraperMetrics create() {
+		ScraperMetrics metrics = new ScraperMetrics(CsfdConfig.isMetricsEnabled());
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			}
+		} catch (Exception | LinkageError e) {
+			LOGGER.debug("metrics not registered in JMX: " + e.getMessage());
+		}
+		return metrics;
+	}
+
+	public static ScraperMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return start time for {@link #stop}, 0 when disabled
+	 */
+	long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	void stop(Stage stage, long start) {
+		if (enabled && start != 0) {
+			stages[stage.ordinal()].record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return allocation counter of the current thread for {@link #stopAllocation}, -1 when disabled
+	 */
+	long startAllocation() {
+		return enabled ? allocatedBytes() : -1;
+	}
+
+	/**
+	 * Counts one call and the bytes the current thread allocated since the start
+	 */
+	void stopAllocation(Call call, long start) {
+		if (enabled && start >= 0) {
+			allocated.addAndGet(call.ordinal(), allocatedBytes() - start);
+			calls.incrementAndGet(call.ordinal());
+		}
+	}
+
+	/**
+	 * Adds the bytes the current thread allocated since the start for a call counted by another thread
+	 */
+	void addAllocation(Call call, long start) {
+		if (enabled && start >= 0) {
+			allocated.addAndGet(call.ordinal(), allocatedBytes() - start);
+		}
+	}
+
+	public long getCalls(Call call) {
+		return calls.get(call.ordinal());
+	}
+
+	public long getAllocatedBytes(Call call) {
+		return allocated.get(call.ordinal());
+	}
+
+	void count(String name) {
+		add(name, 1);
+	}
+
+	void add(String name, long delta) {
+		if (!enabled) {
+			return;
+		}
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.addAndGet(delta);
+	}
+
+	public long getCounter(String name) {
+		AtomicLong counter = counters.get(name);
+		return counter == null ? 0 : counter.get();
+	}
+
+	public long getCount(Stage stage) {
+		return stages[stage.ordinal()].getCount();
+	}
+
+	public double getMeanMillis(Stage stage) {
+		return stages[stage.ordinal()].getMeanMillis();
+	}
+
+	/**
+	 * @param percentile 0 - 100
+	 */
+	public double getPercentileMillis(Stage stage, double percentile) {
+		return stages[stage.ordinal()].getPercentileMillis(percentile);
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+			result.put(counter.getKey(), counter.getValue().get());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Double> getTimings() {
+		Map<String, Double> result = new TreeMap<>();
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = stages[stage.ordinal()];
+			String prefix = stage.name().toLowerCase() + ".";
+			result.put(prefix + "count", (double) histogram.getCount());
+			result.put(prefix + "meanMillis", histogram.getMeanMillis());
+			result.put(prefix + "p50Millis", histogram.getPercentileMillis(50));
+			result.put(prefix + "p95Millis", histogram.getPercentileMillis(95));
+			result.put(prefix + "p99Millis", histogram.getPercentileMillis(99));
+			result.put(prefix + "maxMillis", histogram.getMaxNanos() / 1000000.0);
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getAllocations() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Call call : Call.values()) {
+			String prefix = call.name().toLowerCase() + ".";
+			long n = getCalls(call);
+			result.put(prefix + "calls", n);
+			result.put(prefix + "bytes", getAllocatedBytes(call));
+			result.put(prefix + "bytesPerCall", n == 0 ? 0 : getAllocatedBytes(call) / n);
+		}
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		for (LatencyHistogram histogram : stages) {
+			histogram.reset();
+		}
+		counters.clear();
+		for (int i = 0; i < calls.length(); i++) {
+			calls.set(i, 0);
+			allocated.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ScraperMetrics" + getTimings() + getCounters() + getAllocations();
+	}
+}
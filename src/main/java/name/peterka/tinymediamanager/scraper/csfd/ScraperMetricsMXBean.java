@@ -0,0 +1,31 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ScraperMetrics}, registered as "name.peterka.tinymediamanager.scraper.csfd:type=Metrics"
+ */
+public interface ScraperMetricsMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return e.g. "pages.fetched", "bytes.read", "cache.hits", "extract.missing.POSTER"
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * @return count, mean, p50, p95, p99 and max in millis of every stage, e.g. "fetch.p95Millis"
+	 */
+	Map<String, Double> getTimings();
+
+	/**
+	 * @return calls, allocated bytes and bytes per call of getMetadata, search and getArtwork, e.g.
+	 * "metadata.bytesPerCall"
+	 */
+	Map<String, Long> getAllocations();
+
+	void reset();
+}
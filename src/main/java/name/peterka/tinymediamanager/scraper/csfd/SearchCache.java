@@ -0,0 +1,91 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, time limited cache of parsed search pages. The key is the search query with case and diacritics folded,
+ * so "Krtek a autíčko" and "krtek a autičko" share one entry.
+ */
+class SearchCache {
+	static final String ENTRIES = "csfd.searchCache.entries";
+	static final String TTL_MINUTES = "csfd.searchCache.ttlMinutes";
+
+	private final long ttlMillis;
+	private final Map<String, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	SearchCache(final int maxEntries, long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	static SearchCache createDefault() {
+		int maxEntries = CsfdConfig.isCacheEnabled() ? CsfdConfig.getInt(ENTRIES, 500) : 0;
+		return new SearchCache(maxEntries, CsfdConfig.getLong(TTL_MINUTES, 60) * 60 * 1000);
+	}
+
+	static String key(String query) {
+		return TitleUtil.normalize(query);
+	}
+
+	/**
+	 * @return cached search rows or null
+	 */
+	List<SearchEntry> get(String query) {
+		String key = key(query);
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (System.currentTimeMillis() - entry.storedAt <= ttlMillis) {
+					hits.incrementAndGet();
+					return entry.results;
+				}
+				entries.remove(key);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	void put(String query, List<SearchEntry> results) {
+		Entry entry = new Entry(Collections.unmodifiableList(results), System.currentTimeMillis());
+		synchronized (entries) {
+			entries.put(key(query), entry);
+		}
+	}
+
+	void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	long getHitCount() {
+		return hits.get();
+	}
+
+	long getMissCount() {
+		return misses.get();
+	}
+
+	private static final class Entry {
+		final List<SearchEntry> results;
+		final long storedAt;
+
+		Entry(List<SearchEntry> results, long storedAt) {
+			this.results = results;
+			this.storedAt = storedAt;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.MediaType;
+
+/**
+ * One parsed row of the csfd.cz search page, without the query dependent score
+ */
+final class SearchEntry {
+	final String id;
+	final String title;
+	final String year;
+	final String url;
+	final String posterUrl;
+
+	SearchEntry(String id, String title, String year, String url, String posterUrl) {
+		this.id = id;
+		this.title = title;
+		this.year = year;
+		this.url = url;
+		this.posterUrl = posterUrl;
+	}
+
+	MediaSearchResult toSearchResult(String providerId) {
+		MediaSearchResult sr = new MediaSearchResult(providerId);
+		sr.setId(id);
+		sr.setIMDBId(id);
+		sr.setTitle(title);
+		sr.setYear(year);
+		sr.setMediaType(MediaType.MOVIE);
+		sr.setUrl(url);
+		sr.setPosterUrl(posterUrl);
+		return sr;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchEntry[" + id + ", " + title + " (" + year + ")]";
+	}
+}
@@ -0,0 +1,145 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What is read from the search page. Every movie link is matched by class "film"; its year and poster live in
+ * neighbouring elements, which are indexed by their ancestors during the same pass and joined in {@link #extract}.
+ */
+final class SearchPageSpec {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SearchPageSpec.class);
+
+	static final Pattern FILM_ID = Pattern.compile("film/(\\d+)");
+	private static final Pattern PARENTHESES = Pattern.compile("\\(|\\)");
+
+	// "film-year" is only looked for close to the link
+	private static final int YEAR_LEVELS = 3;
+
+	private static final class Page {
+		final List<Element> movieLinks = new ArrayList<>();
+		final Map<Element, Element> firstDescription = new IdentityHashMap<>();
+		final Map<Element, StringBuilder> filmYears = new IdentityHashMap<>();
+		final Map<Element, Element> firstPoster = new IdentityHashMap<>();
+	}
+
+	private static final ExtractionSpec<Page> SPEC = ExtractionSpec.<Page>builder()
+			.className("film", null, false, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					page.movieLinks.add(element);
+					return true;
+				}
+			})
+			.tag("p", null, false, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					for (Element ancestor = element.parent(); ancestor != null; ancestor = ancestor.parent()) {
+						if (page.firstDescription.containsKey(ancestor)) {
+							break;// the rest of the chain is set already
+						}
+						page.firstDescription.put(ancestor, element);
+					}
+					return false;
+				}
+			})
+			.className("film-year", null, false, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					String text = element.text();
+					Element ancestor = element.parent();
+					for (int i = 0; i < YEAR_LEVELS && ancestor != null; i++, ancestor = ancestor.parent()) {
+						StringBuilder years = page.filmYears.get(ancestor);
+						if (years == null) {
+							page.filmYears.put(ancestor, new StringBuilder(text));
+						} else if (!text.isEmpty()) {
+							years.append(' ').append(text);
+						}
+					}
+					return false;
+				}
+			})
+			.className("film-poster-small", null, false, new ExtractionSpec.Handler<Page>() {
+				@Override
+				public boolean handle(Element element, Page page) {
+					for (Element ancestor = element.parent(); ancestor != null; ancestor = ancestor.parent()) {
+						if (page.firstPoster.containsKey(ancestor)) {
+							break;// the rest of the chain is set already
+						}
+						page.firstPoster.put(ancestor, element);
+					}
+					return false;
+				}
+			})
+			.build();
+
+	private SearchPageSpec() {
+	}
+
+	/**
+	 * @return movies in the order of the page
+	 */
+	static List<SearchEntry> extract(Node doc) {
+		Page page = new Page();
+		SPEC.extract(doc, page, null);
+		LOGGER.debug("found " + page.movieLinks.size() + " search results");
+
+		List<SearchEntry> entries = new ArrayList<>(page.movieLinks.size());
+		for (Element movieLink : page.movieLinks) {
+			try {
+				String csfdId = extractCsfdId(movieLink);
+				String title = movieLink.text();
+				String movieYear;
+
+				Element description = page.firstDescription.get(movieLink.parent().parent());
+				if (description != null) {
+					String text = description.text();
+					int yearIndex = text.lastIndexOf(",");
+					movieYear = text.substring(yearIndex + 2).trim();// skrip comma
+				} else {
+					// z Dalsi nalezene zaznamy
+					StringBuilder years = page.filmYears.get(movieLink.parent());
+					movieYear = years == null ? "" : PARENTHESES.matcher(years).replaceAll("");
+				}
+				String movieUrl = Constants.BASE_URL + "/" + movieLink.attr("href");
+				Element poster = page.firstPoster.get(movieLink.parent().parent().parent());
+				if (poster == null) {
+					throw new IllegalStateException("no poster for " + movieUrl);
+				}
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(String.format("found movie '%s', id=%s", title, csfdId));
+				}
+
+				// check if it has at least a title and url
+				if (StringUtils.isBlank(title) || StringUtils.isBlank(movieUrl)) {
+					continue;
+				}
+
+				entries.add(new SearchEntry(csfdId, title, movieYear, movieUrl, ImageUtil.fixImageUrl(poster.attr("src"))));
+			} catch (Exception e) {
+				LOGGER.warn("error parsing movie result: " + e.getMessage(), e);
+				ScraperMetrics.getInstance().count("extract.failed.SEARCH_RESULT");
+			}
+		}
+		return entries;
+	}
+
+	private static String extractCsfdId(Element movieLink) {
+		Matcher m = FILM_ID.matcher(movieLink.attr("href"));
+		if (m.find()) {
+			return m.group(1);
+		}
+		m = FILM_ID.matcher(movieLink.outerHtml());
+		return m.find() ? m.group(1) : "";
+	}
+}
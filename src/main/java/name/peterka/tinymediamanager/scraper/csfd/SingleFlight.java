@@ -0,0 +1,85 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one call per key at a time; concurrent callers with the same key wait for that call and share its result
+ * (or its exception) instead of doing the same work again.
+ */
+class SingleFlight<K, V> {
+	private final ConcurrentMap<K, FutureTask<V>> calls = new ConcurrentHashMap<>();
+	private final AtomicLong shared = new AtomicLong();
+
+	V execute(K key, Callable<V> call) throws IOException {
+		FutureTask<V> task = new FutureTask<>(call);
+		FutureTask<V> running = calls.putIfAbsent(key, task);
+		if (running != null) {
+			shared.incrementAndGet();
+			return await(running);
+		}
+
+		try {
+			task.run();
+			return await(task);
+		} finally {
+			calls.remove(key, task);
+		}
+	}
+
+	/**
+	 * Waits for a call which is already running
+	 *
+	 * @return its result, null when there is no call with the key
+	 */
+	V join(K key) throws IOException {
+		FutureTask<V> running = calls.get(key);
+		if (running == null) {
+			return null;
+		}
+		shared.incrementAndGet();
+		return await(running);
+	}
+
+	/**
+	 * @return how many callers got a result of another caller's call
+	 */
+	long getSharedCount() {
+		return shared.get();
+	}
+
+	private static <V> V await(FutureTask<V> task) throws IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					// the result is needed anyway, the leader finishes the call
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,544 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaGenres;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.util.StrgUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the detail page as a stream of tags and text without building a DOM. Reading stops as soon as all
+ * requested fields are captured, so comments, reviews and the rest of the page are never downloaded.
+ * <p>
+ * Not thread safe, use one instance per page.
+ */
+class StreamingDetailExtractor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(StreamingDetailExtractor.class);
+
+	private static final Pattern OG_TITLE = Pattern.compile("(.*) / (.*) \\(([0-9]{4})\\)");
+	private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList("area", "base", "br", "col", "embed", "hr",
+			"img", "input", "link", "meta", "param", "source", "track", "wbr"));
+	private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList("address", "article", "aside", "blockquote",
+			"br", "dd", "div", "dl", "dt", "fieldset", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6",
+			"header", "hr", "li", "nav", "ol", "p", "pre", "section", "table", "td", "th", "tr", "ul"));
+
+	private enum Role {
+		NONE, GENRE, AVERAGE, PLOTS, PLOT_CONTENT, PLOT, POSTER, CREATORS, CREATOR_TYPE, CREATOR_GROUP, PERSON
+	}
+
+	private static final class Frame {
+		final String tag;
+		Role role = Role.NONE;
+		StringBuilder text;
+		MediaCastMember.CastType castType;
+		String href;
+
+		Frame(String tag) {
+			this.tag = tag;
+		}
+	}
+
+	private final EnumSet<DetailField> requested;
+	private final EnumSet<DetailField> found = EnumSet.noneOf(DetailField.class);
+	private final List<Frame> stack = new ArrayList<>();
+	private int capturing;
+
+	private Reader reader;
+	private final char[] buffer = new char[8192];
+	private int pos;
+	private int limit;
+	private long charsRead;
+
+	// captured values
+	private Matcher ogTitle;
+	private final List<String> genres = new ArrayList<>();
+	private String average;
+	private String voteCount;
+	private String plot;
+	private String poster;
+	private String imdbLink;
+	private final List<MediaCastMember> creators = new ArrayList<>();
+
+	// state of the regions we are in
+	private boolean plotsSeen;
+	private boolean plotContentSeen;
+	private boolean plotStarted;
+	private boolean posterSeen;
+	private boolean creatorsSeen;
+
+	StreamingDetailExtractor(EnumSet<DetailField> requested) {
+		this.requested = EnumSet.copyOf(requested);
+	}
+
+	/**
+	 * Reads the page until all requested fields are found and stores them into the metadata.
+	 *
+	 * @return requested fields which were not found and have to be read some other way
+	 */
+	EnumSet<DetailField> extract(Reader reader, MediaMetadata md) throws IOException {
+		this.reader = reader;
+		while (!isComplete() && readToken()) {
+			// tokens are handled while reading
+		}
+		LOGGER.debug("streamed " + charsRead + " chars, found " + found);
+
+		apply(md);
+		EnumSet<DetailField> missing = EnumSet.copyOf(requested);
+		missing.removeAll(found);
+		return missing;
+	}
+
+	long getCharsRead() {
+		return charsRead;
+	}
+
+	private boolean isComplete() {
+		return found.containsAll(requested);
+	}
+
+	private void apply(MediaMetadata md) {
+		if (found.contains(DetailField.TITLE_YEAR)) {
+			md.storeMetadata(MediaMetadata.TITLE, StrgUtils.removeCommonSortableName(ogTitle.group(1)));
+			md.storeMetadata(MediaMetadata.ORIGINAL_TITLE, StrgUtils.removeCommonSortableName(ogTitle.group(2)));
+			md.storeMetadata(MediaMetadata.YEAR, ogTitle.group(3));
+		}
+		if (found.contains(DetailField.GENRE)) {
+			for (String genre : genres) {
+				for (MediaGenres tmmGenre : GenresUtil.getTmmGenres(genre)) {
+					md.addGenre(tmmGenre);
+				}
+			}
+		}
+		if (found.contains(DetailField.RATING) && !average.isEmpty()) {
+			try {
+				double rating = Double.parseDouble(average.replaceAll("%", "")) / 10.0;
+				md.storeMetadata(MediaMetadata.RATING, rating);
+				md.storeMetadata(MediaMetadata.VOTE_COUNT, voteCount == null ? "" : voteCount);
+			} catch (Exception e) {
+				LOGGER.debug("could not parse rating" + e.getMessage(), e);
+			}
+		}
+		if (found.contains(DetailField.PLOT)) {
+			md.storeMetadata(MediaMetadata.PLOT, plot);
+		}
+		if (found.contains(DetailField.POSTER)) {
+			md.storeMetadata(MediaMetadata.POSTER_URL, ImageUtil.fixImageUrl(poster));
+		}
+		if (found.contains(DetailField.CREATORS)) {
+			for (MediaCastMember cm : creators) {
+				md.addCastMember(cm);
+			}
+		}
+		if (found.contains(DetailField.IMDB)) {
+			DetailPageSpec.storeImdbId(md, imdbLink);
+		}
+	}
+
+	/**
+	 * @return number of chars the extraction used; the reader may have been read further into its buffer
+	 */
+	long consumed() {
+		return charsRead - (limit - pos);
+	}
+
+	/*
+	 * Tokenizer
+	 */
+
+	private int read() throws IOException {
+		if (pos == limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+			charsRead += limit;
+		}
+		return buffer[pos++];
+	}
+
+	/**
+	 * @return false at the end of the stream
+	 */
+	private boolean readToken() throws IOException {
+		int c = read();
+		if (c == -1) {
+			return false;
+		}
+		if (c != '<') {
+			StringBuilder text = new StringBuilder();
+			text.append((char) c);
+			while ((c = read()) != -1 && c != '<') {
+				text.append((char) c);
+			}
+			onText(text);
+			if (c == -1) {
+				return false;
+			}
+		}
+
+		c = read();
+		if (c == '!' || c == '?') {
+			skipDeclaration(c);
+		} else if (c == '/') {
+			String tag = readUntilTagEnd().trim();
+			int space = indexOfWhitespace(tag);
+			onEndTag((space < 0 ? tag : tag.substring(0, space)).toLowerCase(Locale.ROOT));
+		} else if (Character.isLetter(c)) {
+			StringBuilder tag = new StringBuilder();
+			tag.append((char) c);
+			tag.append(readUntilTagEnd());
+			onStartTag(tag);
+		} else if (c != -1) {
+			onText(new StringBuilder("<").append((char) c));
+		}
+		return c != -1;
+	}
+
+	private String readUntilTagEnd() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char quote = 0;
+		int c;
+		while ((c = read()) != -1) {
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = (char) c;
+			} else if (c == '>') {
+				break;
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	private void skipDeclaration(int first) throws IOException {
+		if (first == '!') {
+			int c1 = read();
+			if (c1 == '-') {
+				int c2 = read();
+				if (c2 == '-') {
+					skipUntil("-->");
+					return;
+				}
+			}
+			if (c1 == '>') {
+				return;
+			}
+		}
+		skipUntil(">");
+	}
+
+	private void skipUntil(String end) throws IOException {
+		int matched = 0;
+		int c;
+		while (matched < end.length() && (c = read()) != -1) {
+			char lower = Character.toLowerCase((char) c);
+			if (lower == end.charAt(matched)) {
+				matched++;
+			} else {
+				// longest prefix of end which is still a suffix of what was read, e.g. "--" of "--->"
+				String read = end.substring(0, matched) + lower;
+				matched = 0;
+				for (int k = read.length() - 1; k > 0; k--) {
+					if (read.endsWith(end.substring(0, k))) {
+						matched = k;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private static int indexOfWhitespace(CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.isWhitespace(s.charAt(i)) || s.charAt(i) == '/') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Handlers
+	 */
+
+	private void onText(CharSequence text) {
+		if (capturing == 0) {
+			return;
+		}
+		String decoded = text.toString();
+		if (decoded.indexOf('&') >= 0) {
+			decoded = Parser.unescapeEntities(decoded, false);
+		}
+		for (Frame frame : stack) {
+			if (frame.text != null) {
+				frame.text.append(decoded);
+			}
+		}
+	}
+
+	private void onStartTag(StringBuilder raw) throws IOException {
+		boolean selfClosing = raw.length() > 0 && raw.charAt(raw.length() - 1) == '/';
+		int space = indexOfWhitespace(raw);
+		String tag = (space < 0 ? raw.toString() : raw.substring(0, space)).toLowerCase(Locale.ROOT);
+		if (selfClosing && space < 0) {
+			tag = tag.substring(0, tag.length() - 1);
+		}
+		String attributes = space < 0 ? "" : raw.substring(space);
+
+		if ("script".equals(tag) || "style".equals(tag)) {
+			if (!selfClosing) {
+				skipUntil("</" + tag);
+				skipUntil(">");
+			}
+			return;
+		}
+
+		if (BLOCK_TAGS.contains(tag)) {
+			onText(" ");
+		}
+
+		if ("meta".equals(tag) && "og:title".equals(attr(attributes, "property"))) {
+			Matcher m = OG_TITLE.matcher(Parser.unescapeEntities(attr(attributes, "content"), true));
+			if (m.matches()) {
+				ogTitle = m;
+				found.add(DetailField.TITLE_YEAR);
+			}
+		}
+		if (voteCount == null && "ratingCount".equalsIgnoreCase(attr(attributes, "itemprop"))) {
+			voteCount = Parser.unescapeEntities(attr(attributes, "content"), true);
+			if (average != null) {
+				found.add(DetailField.RATING);
+			}
+		}
+		if ("a".equals(tag) && imdbLink == null && hasClass(attr(attributes, "class"), "www-imdb")) {
+			imdbLink = Parser.unescapeEntities(attr(attributes, "href"), true);
+			if (DetailPageSpec.IMDB_LINK.matcher(imdbLink).find()) {
+				found.add(DetailField.IMDB);
+			}
+		}
+		if ("img".equals(tag) && poster == null && inRole(Role.POSTER)) {
+			poster = attr(attributes, "src");
+			found.add(DetailField.POSTER);
+		}
+
+		if (VOID_TAGS.contains(tag) || selfClosing) {
+			return;
+		}
+
+		Frame frame = new Frame(tag);
+		String id = attr(attributes, "id");
+		String classes = attr(attributes, "class");
+
+		if (hasClass(classes, "genre")) {
+			frame.role = Role.GENRE;
+		} else if (hasClass(classes, "average")) {
+			frame.role = Role.AVERAGE;
+		} else if (!plotsSeen && "plots".equals(id)) {
+			plotsSeen = true;
+			frame.role = Role.PLOTS;
+		} else if (!posterSeen && "poster".equals(id)) {
+			posterSeen = true;
+			frame.role = Role.POSTER;
+		} else if (!creatorsSeen && hasClass(classes, "creators")) {
+			creatorsSeen = true;
+			frame.role = Role.CREATORS;
+		} else if ("h4".equals(tag) && inRole(Role.CREATORS)) {
+			frame.role = Role.CREATOR_TYPE;
+		} else if ("a".equals(tag) && inRole(Role.CREATOR_GROUP)) {
+			frame.role = Role.PERSON;
+			frame.href = attr(attributes, "href");
+		}
+
+		if (!plotContentSeen && inRole(Role.PLOTS) && hasClass(classes, "content")) {
+			// the content element itself counts when it is a div
+			plotContentSeen = true;
+			frame.role = "div".equals(tag) ? Role.PLOT : Role.PLOT_CONTENT;
+		} else if (!plotStarted && "div".equals(tag) && inRole(Role.PLOT_CONTENT)) {
+			frame.role = Role.PLOT;
+		}
+		if (frame.role == Role.PLOT) {
+			plotStarted = true;
+		}
+
+		if (frame.role == Role.GENRE || frame.role == Role.AVERAGE || frame.role == Role.PLOT
+				|| frame.role == Role.CREATOR_TYPE || frame.role == Role.PERSON) {
+			frame.text = new StringBuilder();
+		}
+		if (frame.text != null) {
+			capturing++;
+		}
+		stack.add(frame);
+	}
+
+	private void onEndTag(String tag) {
+		for (int i = stack.size() - 1; i >= 0; i--) {
+			if (stack.get(i).tag.equals(tag)) {
+				while (stack.size() > i) {
+					close(stack.remove(stack.size() - 1));
+				}
+				break;
+			}
+		}
+		if (BLOCK_TAGS.contains(tag)) {
+			onText(" ");
+		}
+	}
+
+	private void close(Frame frame) {
+		if (frame.role == Role.NONE) {
+			return;
+		}
+		String text = null;
+		if (frame.text != null) {
+			capturing--;
+			text = normalizeText(frame.text);
+		}
+
+		switch (frame.role) {
+			case GENRE:
+				genres.add(text);
+				found.add(DetailField.GENRE);
+				break;
+			case AVERAGE:
+				average = average == null ? text : (average + " " + text).trim();
+				if (voteCount != null) {
+					found.add(DetailField.RATING);
+				}
+				break;
+			case PLOT:
+				plot = text;
+				found.add(DetailField.PLOT);
+				break;
+			case CREATOR_TYPE:
+				// persons are the links next to the h4 header
+				if (!stack.isEmpty()) {
+					Frame group = stack.get(stack.size() - 1);
+					group.role = Role.CREATOR_GROUP;
+					group.castType = DetailPageSpec.getCastType(text);
+				}
+				break;
+			case PERSON:
+				MediaCastMember cm = new MediaCastMember();
+				cm.setName(text);
+				cm.setType(nearest(Role.CREATOR_GROUP).castType);
+				DetailPageSpec.storePersonId(cm, frame.href);
+				creators.add(cm);
+				break;
+			case CREATORS:
+				found.add(DetailField.CREATORS);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private boolean inRole(Role role) {
+		return nearest(role) != null;
+	}
+
+	private Frame nearest(Role role) {
+		for (int i = stack.size() - 1; i >= 0; i--) {
+			if (stack.get(i).role == role) {
+				return stack.get(i);
+			}
+		}
+		return null;
+	}
+
+	private static boolean hasClass(String classes, String name) {
+		if (classes.isEmpty()) {
+			return false;
+		}
+		for (String c : classes.split("\\s+")) {
+			if (c.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Value of an attribute in the raw attribute part of a start tag, "" when there is no such attribute
+	 */
+	static String attr(String attributes, String name) {
+		int length = attributes.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && (Character.isWhitespace(attributes.charAt(i)) || attributes.charAt(i) == '/')) {
+				i++;
+			}
+			int nameStart = i;
+			while (i < length && attributes.charAt(i) != '=' && !Character.isWhitespace(attributes.charAt(i))) {
+				i++;
+			}
+			String attrName = attributes.substring(nameStart, i);
+			while (i < length && Character.isWhitespace(attributes.charAt(i))) {
+				i++;
+			}
+			String value = "";
+			if (i < length && attributes.charAt(i) == '=') {
+				i++;
+				while (i < length && Character.isWhitespace(attributes.charAt(i))) {
+					i++;
+				}
+				if (i < length && (attributes.charAt(i) == '"' || attributes.charAt(i) == '\'')) {
+					char quote = attributes.charAt(i++);
+					int end = attributes.indexOf(quote, i);
+					end = end < 0 ? length : end;
+					value = attributes.substring(i, end);
+					i = end + 1;
+				} else {
+					int valueStart = i;
+					while (i < length && !Character.isWhitespace(attributes.charAt(i))) {
+						i++;
+					}
+					value = attributes.substring(valueStart, i);
+				}
+			}
+			if (attrName.equalsIgnoreCase(name)) {
+				return value;
+			}
+			if (attrName.isEmpty()) {
+				i++;
+			}
+		}
+		return "";
+	}
+
+	private static String normalizeText(CharSequence text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		boolean space = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c) || c == '\u00a0') {
+				space = sb.length() > 0;
+			} else {
+				if (space) {
+					sb.append(' ');
+					space = false;
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
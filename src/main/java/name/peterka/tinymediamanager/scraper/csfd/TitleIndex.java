@@ -0,0 +1,257 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Titles of movies seen in search results and on detail pages (czech and original), searchable by trigrams of the
+ * title without case and diacritics. Lets a search be answered without csfd.cz when a known title matches well.
+ * <p>
+ * The titles are appended to a file in the cache dir; the trigram postings are built in memory when it is opened.
+ */
+final class TitleIndex {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TitleIndex.class);
+
+	static final String ENABLED = "csfd.titleIndex.enabled";
+	static final String MIN_SCORE = "csfd.titleIndex.minScore";
+	static final String FILE_NAME = "titles.db";
+
+	// share of the query trigrams a candidate needs
+	private static final double MIN_OVERLAP = 0.3;
+
+	private final File file;
+	private final double minScore;
+	private final List<SearchEntry> entries = new ArrayList<>();
+	private final Set<String> known = new HashSet<>();
+	private final Map<Long, Postings> postings = new HashMap<>();
+
+	/**
+	 * Entry numbers with one trigram
+	 */
+	private static final class Postings {
+		int[] entries = new int[4];
+		int size;
+
+		void add(int entry) {
+			if (size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+			}
+			entries[size++] = entry;
+		}
+	}
+
+	/**
+	 * @param file     null to keep the titles in memory only
+	 * @param minScore local results with a lower best score are not trusted
+	 */
+	TitleIndex(File file, double minScore) {
+		this.file = file;
+		this.minScore = minScore;
+		if (file != null && file.isFile()) {
+			load();
+		}
+	}
+
+	static TitleIndex createDefault() {
+		File file = CsfdConfig.isCacheEnabled() ? new File(CsfdConfig.getCacheDir(), FILE_NAME) : null;
+		return new TitleIndex(file, CsfdConfig.getDouble(MIN_SCORE, 0.9));
+	}
+
+	static boolean isEnabled() {
+		return CsfdConfig.getBoolean(ENABLED, true);
+	}
+
+	double getMinScore() {
+		return minScore;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	void addAll(Collection<SearchEntry> seen) {
+		List<SearchEntry> added = new ArrayList<>();
+		synchronized (this) {
+			for (SearchEntry entry : seen) {
+				if (index(entry)) {
+					added.add(entry);
+				}
+			}
+		}
+		append(added);
+	}
+
+	void add(SearchEntry seen) {
+		addAll(Collections.singletonList(seen));
+	}
+
+	/**
+	 * @return entries sharing most trigrams with the query, best first
+	 */
+	List<SearchEntry> find(String query, int limit) {
+		long[] grams = trigrams(TitleUtil.normalize(query));
+		if (grams.length == 0) {
+			return Collections.emptyList();
+		}
+
+		Map<Integer, int[]> hits = new HashMap<>();
+		List<Integer> order = new ArrayList<>();
+		synchronized (this) {
+			for (long gram : grams) {
+				Postings list = postings.get(gram);
+				if (list == null) {
+					continue;
+				}
+				for (int i = 0; i < list.size; i++) {
+					int[] count = hits.get(list.entries[i]);
+					if (count == null) {
+						count = new int[1];
+						hits.put(list.entries[i], count);
+						order.add(list.entries[i]);
+					}
+					count[0]++;
+				}
+			}
+
+			int needed = (int) Math.ceil(grams.length * MIN_OVERLAP);
+			List<int[]> candidates = new ArrayList<>();
+			for (Integer entry : order) {
+				int count = hits.get(entry)[0];
+				if (count >= needed) {
+					candidates.add(new int[]{entry, count});
+				}
+			}
+			Collections.sort(candidates, new Comparator<int[]>() {
+				@Override
+				public int compare(int[] a, int[] b) {
+					return b[1] != a[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]);
+				}
+			});
+
+			List<SearchEntry> result = new ArrayList<>(Math.min(limit, candidates.size()));
+			for (int i = 0; i < candidates.size() && i < limit; i++) {
+				result.add(entries.get(candidates.get(i)[0]));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * @return false when the title of the movie is known already
+	 */
+	private boolean index(SearchEntry entry) {
+		String title = TitleUtil.normalize(entry.title);
+		if (title.isEmpty() || !known.add(entry.id + "|" + title + "|" + entry.year)) {
+			return false;
+		}
+		int number = entries.size();
+		entries.add(entry);
+		for (long gram : trigrams(title)) {
+			Postings list = postings.get(gram);
+			if (list == null) {
+				list = new Postings();
+				postings.put(gram, list);
+			}
+			list.add(number);
+		}
+		return true;
+	}
+
+	/**
+	 * Distinct trigrams of " title ", three chars packed into a long
+	 */
+	static long[] trigrams(String normalized) {
+		if (normalized.isEmpty()) {
+			return new long[0];
+		}
+		String padded = " " + normalized + " ";
+		Set<Long> grams = new HashSet<>();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			grams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+		}
+		long[] result = new long[grams.size()];
+		int i = 0;
+		for (Long gram : grams) {
+			result[i++] = gram;
+		}
+		return result;
+	}
+
+	private void load() {
+		int count = 0;
+		try {
+			byte[] data = new byte[(int) file.length()];
+			try (InputStream in = new FileInputStream(file)) {
+				new DataInputStream(in).readFully(data);
+			}
+			ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+			DataInputStream in = new DataInputStream(bytes);
+			int valid = 0;
+			try {
+				while (bytes.available() > 0) {
+					String id = in.readUTF();
+					String title = in.readUTF();
+					String year = in.readUTF();
+					String poster = in.readUTF();
+					synchronized (this) {
+						index(new SearchEntry(id, title, year, PageKind.DETAIL.url(id), poster.isEmpty() ? null : poster));
+					}
+					count++;
+					valid = data.length - bytes.available();
+				}
+			} catch (EOFException e) {
+				// the next title would be appended to the half written one and could not be read any more
+				LOGGER.warn("title index " + file + " ends with a half written title, dropping it");
+				try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+					raf.setLength(valid);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warn("could not read title index " + file + ": " + e.getMessage());
+		}
+		LOGGER.debug("title index has " + count + " titles");
+	}
+
+	private synchronized void append(List<SearchEntry> added) {
+		if (file == null || added.isEmpty()) {
+			return;
+		}
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			LOGGER.warn("could not create " + dir);
+			return;
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+			for (SearchEntry entry : added) {
+				out.writeUTF(entry.id);
+				out.writeUTF(entry.title);
+				out.writeUTF(entry.year == null ? "" : entry.year);
+				out.writeUTF(entry.posterUrl == null ? "" : entry.posterUrl);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("could not write title index " + file + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Title helper
+ */
+public class TitleUtil {
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	/*
+	 * Folds case and diacritics, "Malá Čarodějnice " -> "mala carodejnice"
+	 */
+	static String normalize(String title) {
+		if (title == null) {
+			return "";
+		}
+		String result = Normalizer.normalize(title, Normalizer.Form.NFD);
+		result = DIACRITICS.matcher(result).replaceAll("");
+		result = WHITESPACE.matcher(result).replaceAll(" ");
+		return result.trim().toLowerCase(Locale.ROOT);
+	}
+}
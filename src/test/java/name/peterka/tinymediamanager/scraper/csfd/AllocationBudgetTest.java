@@ -0,0 +1,129 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchOptions;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Memory allocated per call on the corpus. The budgets are about twice what the pages need today, a change which
+ * makes the scraper produce much more garbage fails here.
+ */
+public class AllocationBudgetTest {
+	private static final long MB = 1024 * 1024;
+
+	// detail-19977.html is 200 kB with a long cast, detail-147525.html 70 kB
+	private static final long DETAIL_LARGE_BUDGET = 7 * MB;
+	private static final long DETAIL_SMALL_BUDGET = 3 * MB;
+	private static final long SEARCH_PAGE_BUDGET = 1 * MB;
+	// three gallery pages
+	private static final long GALLERY_BUDGET = 3 * MB;
+
+	private static final int WARM_UP = 3;
+	private static final int CALLS = 5;
+
+	private final ScraperMetrics metrics = ScraperMetrics.getInstance();
+	private PageLoader live;
+
+	@Before
+	public void setUp() throws Exception {
+		assumeTrue(ScraperMetrics.allocatedBytes() >= 0 && metrics.isEnabled());
+		live = Corpus.replay();
+	}
+
+	@After
+	public void tearDown() {
+		if (live != null) {
+			PageLoader.setInstance(live);
+		}
+	}
+
+	@Test
+	public void testMetadata() throws Exception {
+		assertThat(perCall(ScraperMetrics.Call.METADATA, metadata("19977"))).isLessThan(DETAIL_LARGE_BUDGET);
+		assertThat(perCall(ScraperMetrics.Call.METADATA, metadata("147525"))).isLessThan(DETAIL_SMALL_BUDGET);
+	}
+
+	@Test
+	public void testSearchPage() throws Exception {
+		for (final String query : new String[]{"Planeta+opic", "Krtek+a+auti%C4%8Dko"}) {
+			// the provider answers a repeated search from its cache, this is the work of a search which is not cached
+			Callable<Object> search = new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return SearchPageSpec.extract(PageLoader.getInstance().loadDocument(PageKind.SEARCH, query));
+				}
+			};
+			for (int i = 0; i < WARM_UP; i++) {
+				search.call();
+			}
+			long start = ScraperMetrics.allocatedBytes();
+			for (int i = 0; i < CALLS; i++) {
+				search.call();
+			}
+			assertThat((ScraperMetrics.allocatedBytes() - start) / CALLS).isLessThan(SEARCH_PAGE_BUDGET);
+		}
+	}
+
+	@Test
+	public void testSearchIsCounted() throws Exception {
+		long calls = metrics.getCalls(ScraperMetrics.Call.SEARCH);
+		long bytes = metrics.getAllocatedBytes(ScraperMetrics.Call.SEARCH);
+		new CsfdMetadataProvider().search(new MediaSearchOptions(MediaType.MOVIE, MediaSearchOptions.SearchParam.QUERY, "Planeta opic"));
+
+		assertEquals(calls + 1, metrics.getCalls(ScraperMetrics.Call.SEARCH));
+		assertThat(metrics.getAllocatedBytes(ScraperMetrics.Call.SEARCH)).isGreaterThan(bytes);
+		assertThat(metrics.getAllocations().get("search.calls")).isEqualTo(calls + 1);
+	}
+
+	@Test
+	public void testArtwork() throws Exception {
+		final CsfdMovieArtworkProvider provider = new CsfdMovieArtworkProvider();
+		final MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(provider.getProviderInfo().getId(), "147525");
+		long perCall = perCall(ScraperMetrics.Call.ARTWORK, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return provider.getArtwork(options);
+			}
+		});
+
+		assertThat(perCall).isLessThan(GALLERY_BUDGET);
+	}
+
+	private Callable<Object> metadata(String id) {
+		final CsfdMetadataProvider provider = new CsfdMetadataProvider();
+		final MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(provider.getProviderInfo().getId(), id);
+		return new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return provider.getMetadata(options);
+			}
+		};
+	}
+
+	/**
+	 * @return bytes per call by the allocation stats of the metrics, after the classes and caches are warm
+	 */
+	private long perCall(ScraperMetrics.Call call, Callable<Object> work) throws Exception {
+		for (int i = 0; i < WARM_UP; i++) {
+			work.call();
+		}
+		long calls = metrics.getCalls(call);
+		long bytes = metrics.getAllocatedBytes(call);
+		for (int i = 0; i < CALLS; i++) {
+			work.call();
+		}
+		assertEquals(calls + CALLS, metrics.getCalls(call));
+		return (metrics.getAllocatedBytes(call) - bytes) / CALLS;
+	}
+}
@@ -0,0 +1,142 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchScraperTest {
+
+	/**
+	 * Provider without network access, id "0" fails, id "error" throws an Error
+	 */
+	static class FakeProvider extends CsfdMetadataProvider {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		@Override
+		public MediaMetadata getMetadata(MediaScrapeOptions options) throws Exception {
+			int now = running.incrementAndGet();
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), now));
+			}
+			try {
+				Thread.sleep(10);
+				String id = options.getId(Constants.PROVIDER_ID);
+				if ("0".equals(id)) {
+					throw new Exception("not found " + id);
+				}
+				if ("error".equals(id)) {
+					throw new LinkageError("broken " + id);
+				}
+				MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+				md.storeMetadata(MediaMetadata.TITLE, "Film " + id);
+				return md;
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void testIterator() throws Exception {
+		FakeProvider provider = new FakeProvider();
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			ids.add(String.valueOf(i));
+		}
+
+		List<BatchResult> results = new ArrayList<>();
+		try (BatchScraper batch = new BatchScraper(provider, 4)) {
+			Iterator<BatchResult> it = batch.scrape(BatchScraper.optionsForIds(ids));
+			while (it.hasNext()) {
+				results.add(it.next());
+			}
+		}
+
+		assertEquals(40, results.size());
+		assertTrue("max running " + provider.maxRunning, provider.maxRunning.get() <= 4);
+		int failed = 0;
+		for (BatchResult result : results) {
+			if (result.isSuccess()) {
+				assertEquals("Film " + result.getIndex(), result.getMetadata().getStringValue(MediaMetadata.TITLE));
+			} else {
+				failed++;
+				assertEquals(0, result.getIndex());
+				assertNotNull(result.getError());
+			}
+		}
+		assertEquals(1, failed);
+	}
+
+	@Test
+	public void testCallback() throws Exception {
+		final List<BatchResult> results = Collections.synchronizedList(new ArrayList<BatchResult>());
+		try (BatchScraper batch = BatchScraper.withVirtualThreads(new FakeProvider(), 2)) {
+			batch.scrape(BatchScraper.optionsForIds(Arrays.asList("1", "0", "2")), new BatchScraper.Callback() {
+				@Override
+				public void onResult(BatchResult result) {
+					results.add(result);
+				}
+			});
+		}
+
+		assertEquals(3, results.size());
+		for (BatchResult result : results) {
+			assertEquals(result.getIndex() != 1, result.isSuccess());
+		}
+	}
+
+	@Test
+	public void testErrorGivesAResult() throws Exception {
+		List<BatchResult> results = new ArrayList<>();
+		try (BatchScraper batch = new BatchScraper(new FakeProvider(), 2)) {
+			Iterator<BatchResult> it = batch.scrape(BatchScraper.optionsForIds(Arrays.asList("1", "error", "2")));
+			while (it.hasNext()) {
+				results.add(it.next());
+			}
+		}
+
+		assertEquals(3, results.size());
+		for (BatchResult result : results) {
+			assertEquals(result.getIndex() != 1, result.isSuccess());
+		}
+	}
+
+	@Test
+	public void testCloseCancelsWaitingItems() throws Exception {
+		List<String> ids = new ArrayList<>();
+		for (int i = 1; i <= 10; i++) {
+			ids.add(String.valueOf(i));
+		}
+
+		List<BatchResult> results = new ArrayList<>();
+		BatchScraper batch = new BatchScraper(new FakeProvider(), 1);
+		Iterator<BatchResult> it = batch.scrape(BatchScraper.optionsForIds(ids));
+		results.add(it.next());
+		batch.close();
+		while (it.hasNext()) {
+			results.add(it.next());
+		}
+
+		assertEquals(10, results.size());
+		int cancelled = 0;
+		for (BatchResult result : results) {
+			if (result.getError() instanceof CancellationException) {
+				cancelled++;
+			}
+		}
+		assertTrue("cancelled " + cancelled, cancelled > 0);
+	}
+}
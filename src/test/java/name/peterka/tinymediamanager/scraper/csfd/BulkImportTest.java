@@ -0,0 +1,174 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaArtwork;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkImportTest {
+
+	/**
+	 * Finds "Film n" as id n, ids in failing throw, the search for "Offline" can not be read
+	 */
+	static class FakeProvider extends BatchScraperTest.FakeProvider {
+		final List<String> failing = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		List<MediaSearchResult> search(MediaSearchOptions options, boolean failOnError) throws IOException {
+			String query = options.get(MediaSearchOptions.SearchParam.QUERY);
+			if (query.equals("Offline") && failOnError) {
+				throw new IOException("connection reset");
+			}
+			if (!query.startsWith("Film ")) {
+				return Collections.emptyList();
+			}
+			MediaSearchResult result = new MediaSearchResult(Constants.PROVIDER_ID);
+			result.setId(query.substring(5));
+			result.setScore(1);
+			return Collections.singletonList(result);
+		}
+
+		@Override
+		public MediaMetadata getMetadata(MediaScrapeOptions options) throws Exception {
+			if (failing.contains(options.getId(Constants.PROVIDER_ID))) {
+				throw new IOException("csfd.cz keeps throttling");
+			}
+			return super.getMetadata(options);
+		}
+	}
+
+	/**
+	 * The galleries of the ids in failing can not be read
+	 */
+	static class FakeArtworkProvider extends CsfdMovieArtworkProvider {
+		final List<String> failing = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public List<MediaArtwork> getArtwork(MediaScrapeOptions options) throws IOException {
+			if (failing.contains(options.getId(Constants.PROVIDER_ID))) {
+				throw new IOException("gallery page 2 can not be read");
+			}
+			return Collections.singletonList(new MediaArtwork());
+		}
+	}
+
+	static class Results implements BulkImport.Sink {
+		final List<BulkResult> all = new ArrayList<>();
+
+		@Override
+		public void onResult(BulkResult result) {
+			all.add(result);
+		}
+
+		int successes() {
+			int n = 0;
+			for (BulkResult result : all) {
+				n += result.isSuccess() ? 1 : 0;
+			}
+			return n;
+		}
+	}
+
+	private static List<BulkImport.Item> items(int count) {
+		List<BulkImport.Item> items = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			items.add(i % 2 == 0 ? BulkImport.Item.byId(String.valueOf(i)) : BulkImport.Item.byTitle("Film " + i, "2000"));
+		}
+		return items;
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		File checkpoint = new File(Files.createTempDirectory("csfd-import").toFile(), "import.txt");
+		List<BulkImport.Item> items = items(20);
+		items.add(BulkImport.Item.byTitle("Neznámý film", null));
+
+		Results results = new Results();
+		try (BulkImport bulk = new BulkImport(new FakeProvider(), new FakeArtworkProvider(), checkpoint, 2, 3, 2)) {
+			assertEquals(21, bulk.run(items, results));
+		}
+
+		assertEquals(21, results.all.size());
+		assertEquals(20, results.successes());
+		for (BulkResult result : results.all) {
+			if (result.isSuccess()) {
+				assertEquals("Film " + result.getCsfdId(), result.getMetadata().getStringValue(MediaMetadata.TITLE));
+				assertEquals(1, result.getArtwork().size());
+			} else {
+				assertNull(result.getCsfdId());
+			}
+		}
+		assertEquals(20, Files.readAllLines(checkpoint.toPath(), StandardCharsets.UTF_8).size());
+	}
+
+	@Test
+	public void testResumesAfterThrottling() throws Exception {
+		File checkpoint = new File(Files.createTempDirectory("csfd-import").toFile(), "import.txt");
+		List<BulkImport.Item> items = items(100);
+
+		FakeProvider throttled = new FakeProvider();
+		for (int i = 31; i <= 100; i++) {
+			throttled.failing.add(String.valueOf(i));
+		}
+		Results first = new Results();
+		try (BulkImport bulk = new BulkImport(throttled, null, checkpoint, 1, 1, 1)) {
+			bulk.run(items, first);
+			assertTrue(bulk.isStopped());
+		}
+		assertEquals(30, first.successes());
+		int cancelled = 0;
+		for (BulkResult result : first.all) {
+			cancelled += result.getError() instanceof CancellationException ? 1 : 0;
+		}
+		assertEquals(100 - 30 - BulkImport.MAX_FAILURES_IN_ROW, cancelled);
+
+		Results second = new Results();
+		try (BulkImport bulk = new BulkImport(new FakeProvider(), null, checkpoint, 2, 2, 2)) {
+			assertEquals(70, bulk.run(items, second));
+			assertFalse(bulk.isStopped());
+		}
+		assertEquals(70, second.successes());
+	}
+
+	@Test
+	public void testFailedReadsAreNotCheckpointed() throws Exception {
+		File checkpoint = new File(Files.createTempDirectory("csfd-import").toFile(), "import.txt");
+		List<BulkImport.Item> items = items(3);
+		items.add(BulkImport.Item.byTitle("Offline", "2000"));
+
+		FakeArtworkProvider artworkProvider = new FakeArtworkProvider();
+		artworkProvider.failing.add("2");
+		Results results = new Results();
+		try (BulkImport bulk = new BulkImport(new FakeProvider(), artworkProvider, checkpoint, 1, 1, 1)) {
+			assertEquals(4, bulk.run(items, results));
+		}
+
+		assertEquals(4, results.all.size());
+		assertEquals(2, results.successes());
+		for (BulkResult result : results.all) {
+			if (!result.isSuccess()) {
+				assertTrue(result.toString(), result.getError() instanceof IOException);
+			}
+		}
+		List<String> done = Files.readAllLines(checkpoint.toPath(), StandardCharsets.UTF_8);
+		assertEquals(2, done.size());
+		assertFalse(done.contains(items.get(1).getKey()));
+		assertFalse(done.contains(items.get(3).getKey()));
+	}
+}
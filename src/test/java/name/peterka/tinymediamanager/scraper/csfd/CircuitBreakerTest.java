@@ -0,0 +1,106 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void testOpensAndRecovers() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("detail", 3, 50);
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertTrue(breaker.allowRequest());
+		breaker.onFailure();
+		assertTrue(breaker.isOpen());
+		assertFalse(breaker.allowRequest());
+
+		// one trial after the open time, its failure opens the breaker again
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+		assertFalse(breaker.allowRequest());
+		breaker.onFailure();
+		assertFalse(breaker.allowRequest());
+
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+		breaker.onSuccess();
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void testFailingSiteIsNotAskedAndServesCache() throws Exception {
+		final AtomicBoolean down = new AtomicBoolean();
+		final AtomicInteger requests = new AtomicInteger();
+		PageFetcher site = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				requests.incrementAndGet();
+				if (down.get()) {
+					throw new IOException("connect timed out");
+				}
+				if (url.contains("404")) {
+					return new FetchResponse(url, 404, null, null);
+				}
+				return new FetchResponse(url, 200, null, new ByteArrayInputStream("<html>Planeta opic</html>".getBytes("UTF-8")));
+			}
+		};
+		PageLoader loader = new PageLoader(new PageCache(null, 10, 1, 0), new RateLimiter(1000, 1000, 60000), site,
+				new Hedger(false, 95, 0), 2, 60000);
+
+		loader.load(PageKind.DETAIL, "19977");
+		// missing pages do not count
+		for (int i = 0; i < 3; i++) {
+			try {
+				loader.load(PageKind.DETAIL, "404");
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		assertFalse(loader.getBreaker(PageKind.DETAIL).isOpen());
+
+		down.set(true);
+		Thread.sleep(5);
+		for (String id : new String[]{"1", "2"}) {
+			try {
+				loader.load(PageKind.DETAIL, id);
+				fail();
+			} catch (IOException e) {
+				assertFalse(e instanceof CircuitBreaker.OpenException);
+			}
+		}
+		assertTrue(loader.getBreaker(PageKind.DETAIL).isOpen());
+		int sent = requests.get();
+
+		// expired page from the cache, nothing is sent
+		assertEquals("<html>Planeta opic</html>", loader.load(PageKind.DETAIL, "19977"));
+		try {
+			loader.load(PageKind.DETAIL, "3");
+			fail();
+		} catch (CircuitBreaker.OpenException e) {
+			// expected
+		}
+		assertEquals(sent, requests.get());
+
+		// the other parts of the site are asked
+		assertFalse(loader.getBreaker(PageKind.GALLERY_PAGE).isOpen());
+		down.set(false);
+		loader.load(PageKind.SEARCH, "planeta");
+		assertEquals(sent + 1, requests.get());
+	}
+}
@@ -0,0 +1,80 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Shared providers called from many threads, as TMM does
+ */
+public class ConcurrencyStressTest {
+
+	private PageLoader live;
+
+	@Before
+	public void setUp() {
+		live = PageLoader.getInstance();
+	}
+
+	@After
+	public void tearDown() {
+		PageLoader.setInstance(live);
+	}
+
+	@Test
+	public void testMixedLoadGivesTheResultsOfSingleCalls() throws Exception {
+		LoadHarness.Report report = new LoadHarness(16, 1, 5).run(20, TimeUnit.MINUTES.toMillis(1));
+
+		assertEquals(report.toString(), 16 * 20, report.getCalls());
+		assertEquals(report.toString(), 0, report.getErrors());
+	}
+
+	@Test
+	public void testBurstOnOneMovie() throws Exception {
+		PageLoader.setInstance(PageLoader.replaying(new LoadHarness.LatentFetcher(ReplayFetcher.fromClasspath("/csfd-corpus/"
+				+ Corpus.VERSION), 20, 20)));
+		final CsfdMetadataProvider provider = new CsfdMetadataProvider();
+		final CountDownLatch start = new CountDownLatch(1);
+		int threads = 12;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<MediaMetadata>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<MediaMetadata>() {
+					@Override
+					public MediaMetadata call() throws Exception {
+						MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+						options.setId(Constants.PROVIDER_ID, "19977");
+						start.await();
+						return provider.getMetadata(options);
+					}
+				}));
+			}
+			start.countDown();
+
+			MediaMetadata first = results.get(0).get(30, TimeUnit.SECONDS);
+			for (Future<MediaMetadata> result : results) {
+				MediaMetadata md = result.get(30, TimeUnit.SECONDS);
+				assertEquals("Planeta opic", md.getStringValue(MediaMetadata.TITLE));
+				assertEquals(first.getGenres(), md.getGenres());
+				assertEquals(first.getCastMembers().size(), md.getCastMembers().size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Captured csfd.cz pages in src/test/resources/csfd-corpus
+ */
+class Corpus {
+	static final String VERSION = "v1";
+
+	static String html(String name) throws IOException {
+		try (Reader reader = reader(name)) {
+			StringBuilder sb = new StringBuilder();
+			char[] buffer = new char[8192];
+			int n;
+			while ((n = reader.read(buffer)) != -1) {
+				sb.append(buffer, 0, n);
+			}
+			return sb.toString();
+		}
+	}
+
+	static Reader reader(String name) throws IOException {
+		InputStream in = Corpus.class.getResourceAsStream("/csfd-corpus/" + VERSION + "/" + name);
+		if (in == null) {
+			throw new IOException("no corpus page " + name);
+		}
+		return new InputStreamReader(in, Charset.forName("UTF-8"));
+	}
+
+	static Document document(String name) throws IOException {
+		return Jsoup.parse(html(name), "");
+	}
+
+	/**
+	 * @return page of the corpus index which is served for the url
+	 */
+	static String page(String url) throws IOException {
+		try (FetchResponse response = ReplayFetcher.fromClasspath("/csfd-corpus/" + VERSION).fetch(url, PageFetcher.NO_HEADERS)) {
+			if (response.getBody() == null) {
+				throw new IOException("no corpus page for " + url);
+			}
+			return new String(ReplayFetcher.readFully(response.getBody()), Charset.forName("UTF-8"));
+		}
+	}
+
+	/**
+	 * Serves the corpus instead of csfd.cz to all providers
+	 *
+	 * @return the loader which was replaced, to be restored after the test
+	 */
+	static PageLoader replay() throws IOException {
+		PageLoader previous = PageLoader.getInstance();
+		PageLoader.setInstance(PageLoader.replaying(ReplayFetcher.fromClasspath("/csfd-corpus/" + VERSION)));
+		return previous;
+	}
+}
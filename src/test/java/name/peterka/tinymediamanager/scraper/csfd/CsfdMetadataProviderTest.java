@@ -16,6 +16,7 @@
 
 package name.peterka.tinymediamanager.scraper.csfd;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.tinymediamanager.scraper.MediaCastMember;
@@ -36,9 +37,19 @@ public class CsfdMetadataProviderTest {
 
 	CsfdMetadataProvider mp;
 
+	private PageLoader live;
+
 	@Before
-	public void setUp() {
+	public void setUp() throws Exception {
+		live = Corpus.replay();
 		mp = new CsfdMetadataProvider();
+		// films stored by other tests would be reused
+		CsfdMetadataProvider.setFilmStore(FilmStore.open(null));
+	}
+
+	@After
+	public void tearDown() {
+		PageLoader.setInstance(live);
 	}
 
 	@Test
@@ -108,4 +119,148 @@ public class CsfdMetadataProviderTest {
 		assertThat(md.getStringValue(MediaMetadata.YEAR)).isEqualTo("1984");
 	}
 
+	@Test
+	public void testRescanSkipsSearch() throws Exception {
+		ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		PageLoader.setInstance(PageLoader.replaying(corpus));
+		MediaScrapeOptions scrape = new MediaScrapeOptions(MediaType.MOVIE);
+		scrape.setId(mp.getProviderInfo().getId(), "19977");
+		assertThat(mp.getMetadata(scrape).getStringValue(MediaMetadata.IMDB)).isEqualTo("tt0063442");
+		int requests = corpus.getRequestCount();
+
+		// the IMDb id is exact, the result has the real title and poster
+		MediaSearchOptions searchByImdbId = new MediaSearchOptions(MediaType.MOVIE, MediaSearchOptions.SearchParam.QUERY, "Planet of the Apes");
+		searchByImdbId.set(MediaSearchOptions.SearchParam.IMDBID, "tt0063442");
+		List<MediaSearchResult> results = mp.search(searchByImdbId);
+		assertEquals(1, results.size());
+		assertEquals("19977", results.get(0).getId());
+		assertEquals("1968", results.get(0).getYear());
+		assertNotNull(results.get(0).getPosterUrl());
+
+		// a title and year ranks the scraped movie first among the real results
+		MediaSearchOptions byTitle = new MediaSearchOptions(MediaType.MOVIE, MediaSearchOptions.SearchParam.QUERY, "Planeta opic");
+		byTitle.set(MediaSearchOptions.SearchParam.YEAR, "1968");
+		results = mp.search(byTitle);
+		assertEquals("19977", results.get(0).getId());
+		assertEquals("Planeta opic", results.get(0).getTitle());
+		assertEquals(1, results.get(0).getScore(), 0.0001);
+		assertEquals(requests, corpus.getRequestCount());
+
+		MediaScrapeOptions byImdbId = new MediaScrapeOptions(MediaType.MOVIE);
+		byImdbId.setImdbId("tt0063442");
+		assertThat(mp.getMetadata(byImdbId).getStringValue(MediaMetadata.TITLE)).isEqualTo("Planeta opic");
+	}
+
+	@Test
+	public void testUnchangedPageIsNotParsedAgain() throws Exception {
+		ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		// pages expire at once and are revalidated, the corpus always sends the same page
+		PageLoader.setInstance(new PageLoader(new PageCache(null, 10, 0, 0), new RateLimiter(1000, 1000, 60000), corpus));
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long reused = metrics.getCounter("metadata.reused");
+
+		MediaScrapeOptions scrape = new MediaScrapeOptions(MediaType.MOVIE);
+		scrape.setId(mp.getProviderInfo().getId(), "147525");
+		MediaMetadata first = mp.getMetadata(scrape);
+		Thread.sleep(5);
+		MediaMetadata second = mp.getMetadata(scrape);
+
+		assertEquals(reused + 1, metrics.getCounter("metadata.reused"));
+		assertEquals(2, corpus.getRequestCount());
+		assertThat(second.getStringValue(MediaMetadata.TITLE)).isEqualTo(first.getStringValue(MediaMetadata.TITLE));
+		assertThat(second.getCastMembers(MediaCastMember.CastType.ACTOR).size()).isEqualTo(3);
+		assertEquals(first.getGenres(), second.getGenres());
+	}
+
+	@Test
+	public void testUnchangedPageIsReusedWithoutRevalidation() throws Exception {
+		ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		MediaScrapeOptions scrape = new MediaScrapeOptions(MediaType.MOVIE);
+		scrape.setId(mp.getProviderInfo().getId(), "19977");
+		long reused;
+		System.setProperty(CsfdConfig.REVALIDATE, "false");
+		try {
+			// pages expire at once and are downloaded again
+			PageLoader.setInstance(new PageLoader(new PageCache(null, 10, 0, 0), new RateLimiter(1000, 1000, 60000), corpus));
+			mp.getMetadata(scrape);
+			reused = metrics.getCounter("metadata.reused");
+			Thread.sleep(5);
+			mp.getMetadata(scrape);
+		} finally {
+			System.clearProperty(CsfdConfig.REVALIDATE);
+		}
+
+		assertEquals(reused + 1, metrics.getCounter("metadata.reused"));
+		assertEquals(2, corpus.getRequestCount());
+	}
+
+	@Test
+	public void testStreamedPageIsStored() throws Exception {
+		ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long stored = metrics.getCounter("metadata.stored");
+		MediaScrapeOptions scrape = new MediaScrapeOptions(MediaType.MOVIE);
+		scrape.setId(mp.getProviderInfo().getId(), "147525");
+		long again;
+		System.setProperty(CsfdConfig.STREAMING_EXTRACTION, "true");
+		try {
+			// a streamed page is not cached, it is streamed again
+			PageLoader.setInstance(new PageLoader(new PageCache(null, 0, 0, 0), new RateLimiter(1000, 1000, 60000), corpus));
+			mp.getMetadata(scrape);
+			assertEquals(stored + 1, metrics.getCounter("metadata.stored"));
+			// the IMDb id is known to the id index now, less of the page may be read
+			mp.getMetadata(scrape);
+			again = metrics.getCounter("metadata.stored");
+			mp.getMetadata(scrape);
+		} finally {
+			System.clearProperty(CsfdConfig.STREAMING_EXTRACTION);
+		}
+
+		// the same part of the page was read again, its film is not appended twice
+		assertEquals(again, metrics.getCounter("metadata.stored"));
+		assertEquals(3, corpus.getRequestCount());
+	}
+
+	@Test
+	public void testLightPages() throws Exception {
+		ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		PageLoader.setInstance(PageLoader.replaying(corpus));
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long mobileBytes = metrics.getCounter("bytes.read.MOBILE_DETAIL");
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(mp.getProviderInfo().getId(), "19977");
+		System.setProperty(CsfdConfig.LIGHT_PAGES, "true");
+		MediaMetadata md;
+		try {
+			md = mp.getMetadata(options);
+		} finally {
+			System.clearProperty(CsfdConfig.LIGHT_PAGES);
+		}
+
+		assertThat(md.getStringValue(MediaMetadata.TITLE)).isEqualTo("Planeta opic");
+		assertThat(md.getCastMembers(MediaCastMember.CastType.ACTOR).size()).isEqualTo(16);
+		// the IMDb id is only on the desktop page, it is not read for it
+		assertEquals(1, corpus.getRequestCount());
+		long read = metrics.getCounter("bytes.read.MOBILE_DETAIL") - mobileBytes;
+		assertThat(read).isGreaterThan(0L);
+		assertThat(read).isLessThan((long) Corpus.page(PageKind.DETAIL.url("19977")).getBytes("UTF-8").length);
+	}
+
+	@Test
+	public void testLightPagesWithImdbId() throws Exception {
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(mp.getProviderInfo().getId(), "19977");
+		System.setProperty(CsfdConfig.LIGHT_PAGES, "true");
+		System.setProperty(CsfdConfig.LIGHT_PAGES_IMDB, "true");
+		MediaMetadata md;
+		try {
+			md = mp.getMetadata(options);
+		} finally {
+			System.clearProperty(CsfdConfig.LIGHT_PAGES);
+			System.clearProperty(CsfdConfig.LIGHT_PAGES_IMDB);
+		}
+
+		assertThat(md.getStringValue(MediaMetadata.IMDB)).isEqualTo("tt0063442");
+	}
 }
@@ -1,5 +1,6 @@
 package name.peterka.tinymediamanager.scraper.csfd;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.tinymediamanager.scraper.MediaArtwork;
@@ -7,9 +8,14 @@ import org.tinymediamanager.scraper.MediaLanguages;
 import org.tinymediamanager.scraper.MediaScrapeOptions;
 import org.tinymediamanager.scraper.MediaType;
 
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
 /**
  *
@@ -18,11 +24,19 @@ public class CsfdMovieArtworkProviderTest {
 
 	CsfdMovieArtworkProvider ma;
 
+	private PageLoader live;
+
 	@Before
-	public void setUp() {
+	public void setUp() throws Exception {
+		live = Corpus.replay();
 		ma = new CsfdMovieArtworkProvider();
 	}
 
+	@After
+	public void tearDown() {
+		PageLoader.setInstance(live);
+	}
+
 
 	@Test
 	public void testMediaMalaCarodejnice() throws Exception {
@@ -37,6 +51,76 @@ public class CsfdMovieArtworkProviderTest {
 		artworks = ma.getArtwork(options);
 
 		assertNotNull(artworks);
+		assertEquals(37, artworks.size());
+		assertEquals("http://img.csfd.cz/files/images/film/photos/", artworks.get(0).getDefaultUrl().substring(0, 44));
+
+	}
+
+	@Test
+	public void testLimitStopsFetching() throws Exception {
+		ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		PageLoader.setInstance(PageLoader.replaying(corpus));
+
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(ma.getProviderInfo().getId(), "147525");
+
+		Iterator<MediaArtwork> preview = ma.getArtwork(options, 10);
+		int count = 0;
+		while (preview.hasNext()) {
+			preview.next();
+			count++;
+		}
+		assertEquals(10, count);
+		assertEquals(1, corpus.getRequestCount());
+
+		Iterator<MediaArtwork> twoPages = ma.getArtwork(options, 20);
+		count = 0;
+		while (twoPages.hasNext()) {
+			twoPages.next();
+			count++;
+		}
+		assertEquals(20, count);
+		assertEquals(3, corpus.getRequestCount());
+	}
+
+	@Test
+	public void testUnknownImdbIdHasNoArtwork() throws Exception {
+		ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		PageLoader.setInstance(PageLoader.replaying(corpus));
+
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setImdbId("tt0133093");
+		assertEquals(0, ma.getArtwork(options).size());
+		assertEquals(0, corpus.getRequestCount());
+	}
+
+	@Test
+	public void testPageCount() throws Exception {
+		assertEquals(3, GalleryIterator.readPageCount(Corpus.document("gallery-147525.html")));
+		assertEquals(1, GalleryIterator.readPageCount(Corpus.document("detail-147525.html")));
+		assertEquals("http://www.csfd.cz/film/147525/galerie/strana-2/", PageKind.GALLERY_PAGE.url(PageKind.pageId("147525", 2)));
+	}
+
+	@Test
+	public void testFailingPageIsNotAnEmptyGallery() throws Exception {
+		final ReplayFetcher corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+		PageLoader.setInstance(PageLoader.replaying(new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+				if (url.contains("strana-2")) {
+					throw new IOException("connection reset");
+				}
+				return corpus.fetch(url, headers);
+			}
+		}));
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(ma.getProviderInfo().getId(), "147525");
 
+		try {
+			ma.getArtwork(options);
+			fail("the gallery is incomplete");
+		} catch (IOException e) {
+			assertEquals("connection reset", e.getMessage());
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaGenres;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DetailPageSpecTest {
+
+	@Test
+	public void testAllFields() throws Exception {
+		MediaMetadata md = new MediaMetadata("csfd");
+		EnumSet<DetailField> missing = DetailPageSpec.extract(Corpus.document("detail-19977.html"), md, EnumSet.allOf(DetailField.class));
+
+		assertThat(missing).isEmpty();
+		assertThat(md.getStringValue(MediaMetadata.TITLE)).isEqualTo("Planeta opic");
+		assertThat(md.getStringValue(MediaMetadata.ORIGINAL_TITLE)).isEqualTo("Planet of the Apes");
+		assertThat(md.getStringValue(MediaMetadata.YEAR)).isEqualTo("1968");
+		assertThat(md.getStringValue(MediaMetadata.PLOT)).startsWith("Někde ve vesmíru přece musí být něco");
+		assertThat(md.getDoubleValue(MediaMetadata.RATING)).isEqualTo(8.5);
+		assertThat(md.getStringValue(MediaMetadata.VOTE_COUNT)).isEqualTo("23412");
+		assertThat(md.getGenres()).containsExactly(MediaGenres.SCIENCE_FICTION, MediaGenres.ADVENTURE);
+		assertThat(md.getCastMembers(MediaCastMember.CastType.ACTOR).size()).isEqualTo(16);
+		assertThat(md.getCastMembers(MediaCastMember.CastType.DIRECTOR).get(0).getName()).isEqualTo("Franklin J. Schaffner");
+		assertThat(md.getStringValue(MediaMetadata.IMDB)).isEqualTo("tt0063442");
+	}
+
+	@Test
+	public void testTitleFromHeader() throws Exception {
+		MediaMetadata md = new MediaMetadata("csfd");
+		EnumSet<DetailField> missing = DetailPageSpec.extract(Corpus.document("detail-147525.html"), md, EnumSet.of(DetailField.TITLE_YEAR));
+
+		assertThat(missing).isEmpty();
+		assertThat(md.getStringValue(MediaMetadata.TITLE)).isEqualTo("Malá čarodějnice");
+		assertThat(md.getStringValue(MediaMetadata.YEAR)).isEqualTo("1984");
+		assertThat(md.getStringValue(MediaMetadata.PLOT)).isEmpty();
+	}
+
+	@Test
+	public void testMissingField() throws Exception {
+		Document doc = Corpus.document("detail-19977.html");
+		doc.getElementById("poster").remove();
+
+		MediaMetadata md = new MediaMetadata("csfd");
+		EnumSet<DetailField> missing = DetailPageSpec.extract(doc, md, EnumSet.of(DetailField.POSTER, DetailField.GENRE));
+
+		assertThat(missing).containsExactly(DetailField.POSTER);
+		assertThat(md.getGenres()).hasSize(2);
+	}
+}
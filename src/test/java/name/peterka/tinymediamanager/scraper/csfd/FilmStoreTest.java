@@ -0,0 +1,135 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaGenres;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilmStoreTest {
+
+	private static MediaMetadata scrape(String page) throws Exception {
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		DetailPageSpec.extract(Corpus.document(page), md, EnumSet.allOf(DetailField.class));
+		return md;
+	}
+
+	private static File newFile() throws Exception {
+		return new File(Files.createTempDirectory("csfd-films").toFile(), FilmStore.FILE_NAME);
+	}
+
+	@Test
+	public void testRebuildsMetadata() throws Exception {
+		File file = newFile();
+		MediaMetadata scraped = scrape("detail-19977.html");
+		FilmStore.open(file).put("19977", "hash1", scraped);
+
+		FilmStore store = FilmStore.open(file);
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		assertFalse(store.copyTo("19977", "hash2", md));
+		assertTrue(store.copyTo("19977", "hash1", md));
+
+		for (String key : new String[]{MediaMetadata.TITLE, MediaMetadata.ORIGINAL_TITLE, MediaMetadata.YEAR,
+				MediaMetadata.PLOT, MediaMetadata.POSTER_URL, MediaMetadata.VOTE_COUNT, MediaMetadata.IMDB}) {
+			assertEquals(key, scraped.getStringValue(key), md.getStringValue(key));
+		}
+		assertEquals(8.5, md.getDoubleValue(MediaMetadata.RATING), 0.0001);
+		assertEquals("tt0063442", md.getId("imdb"));
+		assertThat(md.getGenres()).containsExactly(MediaGenres.SCIENCE_FICTION, MediaGenres.ADVENTURE);
+		assertEquals(scraped.getCastMembers().size(), md.getCastMembers().size());
+		assertEquals("Charlton Heston", md.getCastMembers(MediaCastMember.CastType.ACTOR).get(0).getName());
+		assertEquals("5952", md.getCastMembers(MediaCastMember.CastType.ACTOR).get(0).getId());
+		assertEquals(1, md.getCastMembers(MediaCastMember.CastType.DIRECTOR).size());
+	}
+
+	@Test
+	public void testLoads20000Films() throws Exception {
+		File file = newFile();
+		FilmStore store = FilmStore.open(file);
+		MediaMetadata scraped = scrape("detail-19977.html");
+		for (int i = 0; i < 20000; i++) {
+			scraped.storeMetadata(MediaMetadata.TITLE, "Film " + i);
+			store.put(String.valueOf(i), "hash" + i, scraped);
+		}
+
+		// the load time is measured by FilmStoreBenchmark
+		FilmStore loaded = FilmStore.open(file);
+		assertEquals(20000, loaded.size());
+
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		assertTrue(loaded.copyTo("12345", "hash12345", md));
+		assertEquals("Film 12345", md.getStringValue(MediaMetadata.TITLE));
+		// plot and cast names are stored once for all films, person ids are in every record
+		assertThat(file.length()).isLessThan(20000L * 192);
+	}
+
+	@Test
+	public void testHalfWrittenRecordIsDropped() throws Exception {
+		File file = newFile();
+		FilmStore store = FilmStore.open(file);
+		store.put("19977", "hash1", scrape("detail-19977.html"));
+		long length = file.length();
+		store.put("147525", "hash2", scrape("detail-147525.html"));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(file.length() - 3);
+		}
+
+		store = FilmStore.open(file);
+		assertEquals(1, store.size());
+		assertEquals(length, file.length());
+		store.put("147525", "hash2", scrape("detail-147525.html"));
+		assertEquals(2, FilmStore.open(file).size());
+	}
+
+	@Test
+	public void testBadRecordIsDropped() throws Exception {
+		File file = newFile();
+		FilmStore store = FilmStore.open(file);
+		store.put("19977", "hash1", scrape("detail-19977.html"));
+		long length = file.length();
+		// a whole record of a film whose id is not in the string table
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(new byte[]{0, 100});
+			out.write(new byte[8 + 8 + 2]);
+		}
+
+		store = FilmStore.open(file);
+		assertEquals(1, store.size());
+		assertEquals(length, file.length());
+		store.put("147525", "hash2", scrape("detail-147525.html"));
+		store = FilmStore.open(file);
+		assertEquals(2, store.size());
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		assertTrue(store.copyTo("147525", "hash2", md));
+		assertEquals(scrape("detail-147525.html").getStringValue(MediaMetadata.TITLE), md.getStringValue(MediaMetadata.TITLE));
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		File file = newFile();
+		FilmStore store = FilmStore.open(file);
+		MediaMetadata scraped = scrape("detail-147525.html");
+		for (int i = 0; i < 300; i++) {
+			scraped.storeMetadata(MediaMetadata.PLOT, "plot " + i);
+			store.put("147525", "hash" + i, scraped);
+		}
+		long length = file.length();
+
+		store = FilmStore.open(file);
+		assertEquals(1, store.size());
+		assertThat(file.length()).isLessThan(length / 50);
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		assertTrue(store.copyTo("147525", "hash299", md));
+		assertEquals("plot 299", md.getStringValue(MediaMetadata.PLOT));
+	}
+}
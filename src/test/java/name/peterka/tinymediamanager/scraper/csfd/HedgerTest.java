@@ -0,0 +1,101 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HedgerTest {
+
+	/**
+	 * Answers after 10ms, only the request number slowRequest takes two seconds
+	 */
+	private static final class Site implements PageFetcher {
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicBoolean slowClosed = new AtomicBoolean();
+		final int slowRequest;
+
+		Site(int slowRequest) {
+			this.slowRequest = slowRequest;
+		}
+
+		@Override
+		public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+			final boolean slow = requests.incrementAndGet() == slowRequest;
+			sleep(slow ? 2000 : 10);
+			InputStream body = new ByteArrayInputStream((slow ? "slow" : "fast").getBytes("UTF-8")) {
+				@Override
+				public void close() {
+					if (slow) {
+						slowClosed.set(true);
+					}
+				}
+			};
+			return new FetchResponse(url, 200, null, body);
+		}
+	}
+
+	private static void sleep(long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static String read(FetchResponse response) throws IOException {
+		try (InputStream body = response.getBody()) {
+			return new String(ReplayFetcher.readFully(body), "UTF-8");
+		}
+	}
+
+	@Test
+	public void testSlowRequestIsHedged() throws Exception {
+		Site site = new Site(Hedger.MIN_SAMPLES + 1);
+		Hedger hedger = new Hedger(true, 95, 50);
+		RateLimiter limiter = new RateLimiter(1000, 1000, 60000);
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long won = metrics.getCounter("hedge.won");
+
+		for (int i = 0; i < Hedger.MIN_SAMPLES; i++) {
+			read(hedger.fetch(site, limiter, PageKind.DETAIL, "/film/" + i, PageFetcher.NO_HEADERS));
+		}
+		// p95 of 10ms responses is below the minimal delay
+		assertEquals(50, hedger.getDelayNanos(PageKind.DETAIL) / 1000000);
+
+		long start = System.nanoTime();
+		assertEquals("fast", read(hedger.fetch(site, limiter, PageKind.DETAIL, "/film/19977", PageFetcher.NO_HEADERS)));
+		assertThat((System.nanoTime() - start) / 1000000).isLessThan(1000L);
+		assertEquals(won + 1, metrics.getCounter("hedge.won"));
+		assertEquals(Hedger.MIN_SAMPLES + 2, site.requests.get());
+
+		// the loser is closed when it comes
+		Thread.sleep(2500);
+		assertTrue(site.slowClosed.get());
+	}
+
+	@Test
+	public void testNoHedgeWithoutSpareToken() throws Exception {
+		Site site = new Site(Hedger.MIN_SAMPLES + 1);
+		Hedger hedger = new Hedger(true, 95, 50);
+		RateLimiter limiter = new RateLimiter(1000, 1000, 60000);
+		for (int i = 0; i < Hedger.MIN_SAMPLES; i++) {
+			read(hedger.fetch(site, limiter, PageKind.SEARCH, "/hledat/?q=" + i, PageFetcher.NO_HEADERS));
+		}
+		// the other kinds learn on their own
+		assertEquals(-1, hedger.getDelayNanos(PageKind.DETAIL));
+
+		// csfd.cz throttles, every token is needed
+		limiter.onThrottled(60000);
+		assertEquals("slow", read(hedger.fetch(site, limiter, PageKind.SEARCH, "/hledat/?q=slow", PageFetcher.NO_HEADERS)));
+		assertEquals(Hedger.MIN_SAMPLES + 1, site.requests.get());
+	}
+}
@@ -0,0 +1,104 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class HttpFetcherTest {
+
+	private HttpServer server;
+	private String base;
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/film/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				byte[] page = ("<html>" + exchange.getRequestURI().getPath() + "</html>").getBytes("UTF-8");
+				if ("gzip, deflate".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+					ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+					try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+						out.write(page);
+					}
+					page = gzipped.toByteArray();
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				}
+				exchange.sendResponseHeaders(200, page.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(page);
+				}
+			}
+		});
+		server.createContext("/slow/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testGzipAndKeepAlive() throws Exception {
+		HttpFetcher fetcher = new HttpFetcher(Collections.<String, String>emptyMap(), 1000, 1000, true);
+		for (int i = 1; i <= 3; i++) {
+			try (FetchResponse response = fetcher.fetch(base + "/film/" + i, PageFetcher.NO_HEADERS)) {
+				assertEquals("gzip", response.getHeader("Content-Encoding"));
+				assertEquals("<html>/film/" + i + "</html>", new String(ReplayFetcher.readFully(response.getBody()), "UTF-8"));
+			}
+		}
+		// one connection for all requests
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test
+	public void testWithoutCompression() throws Exception {
+		HttpFetcher fetcher = new HttpFetcher(Collections.<String, String>emptyMap(), 1000, 1000, false);
+		try (FetchResponse response = fetcher.fetch(base + "/film/19977", PageFetcher.NO_HEADERS)) {
+			assertEquals(null, response.getHeader("Content-Encoding"));
+			assertEquals("<html>/film/19977</html>", new String(ReplayFetcher.readFully(response.getBody()), "UTF-8"));
+		}
+	}
+
+	@Test
+	public void testReadTimeout() throws Exception {
+		HttpFetcher fetcher = new HttpFetcher(Collections.<String, String>emptyMap(), 1000, 100, true);
+		try {
+			fetcher.fetch(base + "/slow/", PageFetcher.NO_HEADERS).close();
+			fail("no timeout");
+		} catch (SocketTimeoutException e) {
+			// expected
+		}
+	}
+}
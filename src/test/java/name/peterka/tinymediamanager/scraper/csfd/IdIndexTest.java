@@ -0,0 +1,68 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IdIndexTest {
+
+	@Test
+	public void testLookups() throws Exception {
+		IdIndex index = IdIndex.open(null);
+		index.add("19977", "tt0063442", "Planeta opic", "Planet of the Apes", "1968");
+
+		assertEquals("19977", index.findByImdbId("tt0063442"));
+		assertEquals("tt0063442", index.findImdbId("19977"));
+		assertEquals("19977", index.findByTitle("planeta  OPIC", "1968"));
+		assertEquals("19977", index.findByTitle("Planet of the Apes", "1968"));
+		assertNull(index.findByTitle("Planeta opic", "2001"));
+		assertNull(index.findByImdbId("tt0133093"));
+		assertNull(index.findImdbId("147525"));
+
+		// no IMDb link on the page
+		index.add("147525", null, "Malá čarodějnice", "", "1984");
+		assertEquals("147525", index.findByTitle("Mala carodejnice", "1984"));
+		assertNull(index.findImdbId("147525"));
+	}
+
+	@Test
+	public void testCollidingKeyIsNotTrusted() throws Exception {
+		IdIndex index = IdIndex.open(null);
+		index.add("19977", "tt0063442", "Planeta opic", "Planet of the Apes", "1968");
+		// a key with the same hash replaces the value of the IMDb id
+		index.put("imdb:" + 63442, 147525);
+
+		assertNull(index.findByImdbId("tt0063442"));
+		assertNull(index.findImdbId("19977"));
+	}
+
+	@Test
+	public void testGrowsAndPersists() throws Exception {
+		File file = new File(Files.createTempDirectory("csfd-ids").toFile(), IdIndex.FILE_NAME);
+		IdIndex index = IdIndex.open(file);
+		for (int i = 1; i <= 10000; i++) {
+			index.add(String.valueOf(i), IdIndex.formatImdbId(1000000 + i), "Film " + i, null, "2000");
+		}
+		assertEquals(20000 + 10000, index.size());
+
+		IdIndex reopened = IdIndex.open(file);
+		assertEquals(index.size(), reopened.size());
+		assertEquals("1234", reopened.findByImdbId("tt1001234"));
+		assertEquals("tt1009999", reopened.findImdbId("9999"));
+		assertEquals("42", reopened.findByTitle("film 42", "2000"));
+	}
+
+	@Test
+	public void testImdbId() {
+		assertTrue(IdIndex.isImdbId("tt0063442"));
+		assertFalse(IdIndex.isImdbId("19977"));
+		assertFalse(IdIndex.isImdbId(null));
+		assertEquals("tt0063442", IdIndex.formatImdbId(63442));
+	}
+}
@@ -0,0 +1,106 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaArtwork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ImageProberTest {
+
+	@Test
+	public void testJpeg() throws Exception {
+		ImageProber.Size size = ImageProber.readSize(new ByteArrayInputStream(jpeg(1920, 1080)));
+		assertEquals(1920, size.width);
+		assertEquals(1080, size.height);
+	}
+
+	@Test
+	public void testPngAndGif() throws Exception {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(png);
+		out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+		out.writeInt(13);
+		out.writeBytes("IHDR");
+		out.writeInt(700);
+		out.writeInt(400);
+		ImageProber.Size size = ImageProber.readSize(new ByteArrayInputStream(png.toByteArray()));
+		assertEquals(700, size.width);
+		assertEquals(400, size.height);
+
+		byte[] gif = {'G', 'I', 'F', '8', '9', 'a', (byte) 0x2C, 0x01, (byte) 0xC8, 0x00};
+		size = ImageProber.readSize(new ByteArrayInputStream(gif));
+		assertEquals(300, size.width);
+		assertEquals(200, size.height);
+
+		assertNull(ImageProber.readSize(new ByteArrayInputStream("<html>".getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void testReadsOnlyTheHeaderAndCaches() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicInteger bytesRead = new AtomicInteger();
+		PageFetcher images = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) {
+				requests.incrementAndGet();
+				byte[] image = Arrays.copyOf(jpeg(700, 400), 5 * 1024 * 1024);
+				InputStream body = new ByteArrayInputStream(image) {
+					@Override
+					public synchronized int read(byte[] b, int off, int len) {
+						int n = super.read(b, off, len);
+						bytesRead.addAndGet(Math.max(0, n));
+						return n;
+					}
+				};
+				return new FetchResponse(url, 200, null, body);
+			}
+		};
+		ImageProber prober = new ImageProber(images, 2);
+
+		Map<String, ImageProber.Size> sizes = prober.probeAll(Arrays.asList("http://img/1.jpg", "http://img/2.jpg", "http://img/1.jpg"));
+		assertEquals(2, sizes.size());
+		assertEquals(700, sizes.get("http://img/2.jpg").width);
+		assertEquals(400, prober.probe("http://img/1.jpg").height);
+		assertThat(requests.get()).isLessThanOrEqualTo(3);
+		assertThat(bytesRead.get()).isLessThan(3 * 16 * 1024);
+
+		MediaArtwork artwork = new MediaArtwork();
+		ImageProber.apply(artwork, "http://img/1.jpg", sizes.get("http://img/1.jpg"));
+		assertEquals(MediaArtwork.FanartSizes.SMALL.getOrder(), artwork.getSizeOrder());
+		assertEquals(700, artwork.getImageSizes().get(0).getWidth());
+	}
+
+	/**
+	 * SOI, an APP1 segment and the frame header
+	 */
+	private static byte[] jpeg(int width, int height) {
+		try {
+			ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(jpeg);
+			out.writeShort(0xFFD8);
+			out.writeShort(0xFFE1);
+			out.writeShort(2 + 1000);
+			out.write(new byte[1000]);
+			out.writeShort(0xFFC0);
+			out.writeShort(17);
+			out.writeByte(8);
+			out.writeShort(height);
+			out.writeShort(width);
+			out.write(new byte[10]);
+			return jpeg.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
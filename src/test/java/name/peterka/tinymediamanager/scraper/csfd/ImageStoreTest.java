@@ -0,0 +1,165 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImageStoreTest {
+	private static final String POSTER = "http://img.csfd.cz/files/images/film/posters/000/065/65520_fdb7a4.jpg?h180";
+	private static final String POSTER_COPY = "http://img.csfd.cz/files/images/film/posters/000/065/65520_fdb7a4.jpg?w700";
+
+	/**
+	 * Serves the bytes set for a url with an ETag of their length, 304 when the client has it already
+	 */
+	private static final class Images implements PageFetcher {
+		final Map<String, byte[]> images = new ConcurrentHashMap<>();
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicInteger notModified = new AtomicInteger();
+
+		@Override
+		public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+			requests.incrementAndGet();
+			byte[] image = images.get(url);
+			if (image == null) {
+				return new FetchResponse(url, 404, null, null);
+			}
+			String etag = "\"" + image.length + "\"";
+			if (etag.equals(requestHeaders.get("If-None-Match"))) {
+				notModified.incrementAndGet();
+				return new FetchResponse(url, 304, null, null);
+			}
+			Map<String, List<String>> headers = Collections.singletonMap("ETag", Collections.singletonList(etag));
+			return new FetchResponse(url, 200, headers, new ByteArrayInputStream(image));
+		}
+	}
+
+	private static File newDir() throws IOException {
+		return Files.createTempDirectory("csfd-images").toFile();
+	}
+
+	@Test
+	public void testSameContentIsStoredOnce() throws Exception {
+		Images site = new Images();
+		site.images.put(POSTER, new byte[]{1, 2, 3});
+		site.images.put(POSTER_COPY, new byte[]{1, 2, 3});
+		File dir = newDir();
+		ImageStore store = new ImageStore(dir, site, 2, 60000);
+
+		Map<String, File> files = store.downloadAll(Arrays.asList(POSTER, POSTER_COPY, "http://img.csfd.cz/missing.jpg"));
+		assertEquals(2, files.size());
+		assertEquals(files.get(POSTER), files.get(POSTER_COPY));
+		assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(files.get(POSTER).toPath()));
+		assertEquals("jpg", ImageStore.extension(POSTER));
+
+		// fresh images are not requested again, also after a restart
+		store.download(POSTER);
+		assertEquals(files.get(POSTER), new ImageStore(dir, site, 1, 60000).download(POSTER));
+		assertEquals(3, site.requests.get());
+	}
+
+	@Test
+	public void testHalfWrittenEntryIsDropped() throws Exception {
+		Images site = new Images();
+		site.images.put(POSTER, new byte[]{1, 2, 3});
+		site.images.put(POSTER_COPY, new byte[]{4, 5, 6});
+		File dir = newDir();
+		File index = new File(dir, ImageStore.INDEX_NAME);
+		ImageStore store = new ImageStore(dir, site, 1, 60000);
+		store.download(POSTER);
+		long length = index.length();
+		store.download(POSTER_COPY);
+		try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+			raf.setLength(index.length() - 3);
+		}
+
+		store = new ImageStore(dir, site, 1, 60000);
+		assertEquals(length, index.length());
+		store.download(POSTER);
+		assertEquals(2, site.requests.get());
+		store.download(POSTER_COPY);
+		assertEquals(3, site.requests.get());
+
+		// both are readable after the next restart
+		store = new ImageStore(dir, site, 1, 60000);
+		store.download(POSTER);
+		store.download(POSTER_COPY);
+		assertEquals(3, site.requests.get());
+	}
+
+	@Test
+	public void testIndexIsCompactedInPlace() throws Exception {
+		Images site = new Images();
+		site.images.put(POSTER, new byte[]{1, 2, 3});
+		File dir = newDir();
+		File index = new File(dir, ImageStore.INDEX_NAME);
+		// every download is a refresh, which appends the entry again
+		ImageStore store = new ImageStore(dir, site, 1, -1);
+		for (int i = 0; i < 200; i++) {
+			store.download(POSTER);
+		}
+		long length = index.length();
+
+		store = new ImageStore(dir, site, 1, 60000);
+		assertTrue(index.length() < length);
+		assertFalse(new File(dir, ImageStore.INDEX_NAME + ".tmp").exists());
+		store.download(POSTER);
+		assertEquals(200, site.requests.get());
+	}
+
+	@Test
+	public void testRefreshTransfersOnlyChangedImages() throws Exception {
+		Images site = new Images();
+		site.images.put(POSTER, new byte[]{1, 2, 3});
+		site.images.put(POSTER_COPY, new byte[]{4, 5, 6});
+		ImageStore store = new ImageStore(newDir(), site, 2, 0);
+		Map<String, File> first = store.downloadAll(Arrays.asList(POSTER, POSTER_COPY));
+
+		Thread.sleep(5);
+		site.images.put(POSTER_COPY, new byte[]{7, 8, 9, 10});
+		Map<String, File> second = store.downloadAll(Arrays.asList(POSTER, POSTER_COPY));
+
+		assertEquals(4, site.requests.get());
+		assertEquals(1, site.notModified.get());
+		assertEquals(first.get(POSTER), second.get(POSTER));
+		assertFalse(first.get(POSTER_COPY).equals(second.get(POSTER_COPY)));
+		assertArrayEquals(new byte[]{7, 8, 9, 10}, Files.readAllBytes(second.get(POSTER_COPY).toPath()));
+	}
+
+	@Test
+	public void testConcurrentDownloadsOfOneUrlAreShared() throws Exception {
+		final Images site = new Images();
+		site.images.put(POSTER, new byte[64 * 1024]);
+		PageFetcher slow = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				return site.fetch(url, requestHeaders);
+			}
+		};
+		ImageStore store = new ImageStore(newDir(), slow, 4, 60000);
+
+		Map<String, File> files = store.downloadAll(Arrays.asList(POSTER, POSTER, POSTER, POSTER));
+		assertEquals(1, files.size());
+		assertEquals(1, site.requests.get());
+		assertEquals(64 * 1024, files.get(POSTER).length());
+	}
+}
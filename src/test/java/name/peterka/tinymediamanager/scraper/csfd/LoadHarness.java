@@ -0,0 +1,285 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.tinymediamanager.scraper.MediaArtwork;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives one metadata and one artwork provider from many threads against the corpus, served with a latency like
+ * the one of csfd.cz. Every call is checked against the result of the same call made alone before the run, so a
+ * race shows up as an error. Reports throughput, p50/p99 latency and errors per operation.
+ * <p>
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=name.peterka.tinymediamanager.scraper.csfd.LoadHarness -Dexec.args="threads seconds latencyMillis"
+ * </pre>
+ */
+class LoadHarness {
+
+	/**
+	 * One call of a provider, returns what is compared between the runs
+	 */
+	private enum Operation {
+		SEARCH_PLANETA {
+			@Override
+			String call(LoadHarness harness) throws Exception {
+				return harness.search("Planeta opic");
+			}
+		},
+		SEARCH_KRTEK {
+			@Override
+			String call(LoadHarness harness) throws Exception {
+				return harness.search("Krtek a autíčko");
+			}
+		},
+		METADATA_19977 {
+			@Override
+			String call(LoadHarness harness) throws Exception {
+				return harness.metadata("19977");
+			}
+		},
+		METADATA_147525 {
+			@Override
+			String call(LoadHarness harness) throws Exception {
+				return harness.metadata("147525");
+			}
+		},
+		ARTWORK_147525 {
+			@Override
+			String call(LoadHarness harness) throws Exception {
+				return harness.artwork("147525");
+			}
+		};
+
+		abstract String call(LoadHarness harness) throws Exception;
+	}
+
+	/**
+	 * Serves the pages after a random latency between min and max
+	 */
+	static final class LatentFetcher implements PageFetcher {
+		private final PageFetcher fetcher;
+		private final long minMillis;
+		private final long maxMillis;
+
+		LatentFetcher(PageFetcher fetcher, long minMillis, long maxMillis) {
+			this.fetcher = fetcher;
+			this.minMillis = minMillis;
+			this.maxMillis = Math.max(minMillis, maxMillis);
+		}
+
+		@Override
+		public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+			try {
+				Thread.sleep(minMillis + ThreadLocalRandom.current().nextLong(maxMillis - minMillis + 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for " + url);
+			}
+			return fetcher.fetch(url, headers);
+		}
+	}
+
+	/**
+	 * Outcome of a run
+	 */
+	static final class Report {
+		final Map<Operation, LatencyHistogram> latencies = new LinkedHashMap<>();
+		final Map<Operation, AtomicLong> errors = new LinkedHashMap<>();
+		final AtomicReference<String> firstError = new AtomicReference<>();
+		long elapsedNanos;
+
+		Report() {
+			for (Operation operation : Operation.values()) {
+				latencies.put(operation, new LatencyHistogram());
+				errors.put(operation, new AtomicLong());
+			}
+		}
+
+		long getCalls() {
+			long calls = 0;
+			for (LatencyHistogram histogram : latencies.values()) {
+				calls += histogram.getCount();
+			}
+			return calls;
+		}
+
+		long getErrors() {
+			long sum = 0;
+			for (AtomicLong count : errors.values()) {
+				sum += count.get();
+			}
+			return sum;
+		}
+
+		double getThroughput() {
+			return elapsedNanos == 0 ? 0 : getCalls() / (elapsedNanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(String.format("%d calls in %.1fs, %.1f calls/s, %d errors%n", getCalls(),
+					elapsedNanos / 1e9, getThroughput(), getErrors()));
+			for (Operation operation : Operation.values()) {
+				LatencyHistogram histogram = latencies.get(operation);
+				long calls = histogram.getCount();
+				sb.append(String.format("%-16s %6d calls  p50 %8.1fms  p99 %8.1fms  errors %.2f%%%n", operation, calls,
+						histogram.getPercentileMillis(50), histogram.getPercentileMillis(99),
+						calls == 0 ? 0 : 100.0 * errors.get(operation).get() / calls));
+			}
+			if (firstError.get() != null) {
+				sb.append("first error: ").append(firstError.get()).append(String.format("%n"));
+			}
+			return sb.toString();
+		}
+	}
+
+	private final CsfdMetadataProvider metadataProvider = new CsfdMetadataProvider();
+	private final CsfdMovieArtworkProvider artworkProvider = new CsfdMovieArtworkProvider();
+	private final int threads;
+	private final long minLatencyMillis;
+	private final long maxLatencyMillis;
+
+	LoadHarness(int threads, long minLatencyMillis, long maxLatencyMillis) {
+		this.threads = threads;
+		this.minLatencyMillis = minLatencyMillis;
+		this.maxLatencyMillis = maxLatencyMillis;
+	}
+
+	/**
+	 * Every thread calls the operations in turn, starting at a different one
+	 *
+	 * @param calls    calls per thread
+	 * @param duration the threads stop after this many millis even when they did not make all calls
+	 */
+	Report run(final int calls, long duration) throws Exception {
+		PageLoader previous = PageLoader.getInstance();
+		try {
+			PageLoader.setInstance(PageLoader.replaying(ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION)));
+			final Map<Operation, String> expected = new LinkedHashMap<>();
+			for (Operation operation : Operation.values()) {
+				expected.put(operation, operation.call(this));
+			}
+
+			PageLoader.setInstance(PageLoader.replaying(new LatentFetcher(ReplayFetcher.fromClasspath("/csfd-corpus/"
+					+ Corpus.VERSION), minLatencyMillis, maxLatencyMillis)));
+			final Report report = new Report();
+			final CountDownLatch start = new CountDownLatch(1);
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+			List<Thread> workers = new ArrayList<>(threads);
+			for (int t = 0; t < threads; t++) {
+				final int first = t;
+				Thread worker = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						Operation[] operations = Operation.values();
+						for (int i = 0; i < calls && System.nanoTime() < deadline; i++) {
+							Operation operation = operations[(first + i) % operations.length];
+							long begin = System.nanoTime();
+							String error;
+							try {
+								String result = operation.call(LoadHarness.this);
+								error = expected.get(operation).equals(result) ? null
+										: "unexpected result " + result + ", alone it was " + expected.get(operation);
+							} catch (Exception e) {
+								error = e.toString();
+							}
+							report.latencies.get(operation).record(System.nanoTime() - begin);
+							if (error != null) {
+								report.errors.get(operation).incrementAndGet();
+								report.firstError.compareAndSet(null, operation + ": " + error);
+							}
+						}
+					}
+				}, "load-" + t);
+				workers.add(worker);
+				worker.start();
+			}
+
+			long begin = System.nanoTime();
+			start.countDown();
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			report.elapsedNanos = System.nanoTime() - begin;
+			return report;
+		} finally {
+			PageLoader.setInstance(previous);
+		}
+	}
+
+	private String search(String query) throws Exception {
+		MediaSearchOptions options = new MediaSearchOptions(MediaType.MOVIE, MediaSearchOptions.SearchParam.QUERY, query);
+		List<MediaSearchResult> results = metadataProvider.search(options);
+		return results.size() + " " + (results.isEmpty() ? "" : results.get(0).getId() + " " + results.get(0).getTitle());
+	}
+
+	private String metadata(String id) throws Exception {
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(Constants.PROVIDER_ID, id);
+		MediaMetadata md = metadataProvider.getMetadata(options);
+		List<String> cast = new ArrayList<>();
+		for (MediaCastMember cm : md.getCastMembers()) {
+			cast.add(cm.getType() + ":" + cm.getName());
+		}
+		return md.getStringValue(MediaMetadata.TITLE) + " / " + md.getStringValue(MediaMetadata.ORIGINAL_TITLE) + " ("
+				+ md.getStringValue(MediaMetadata.YEAR) + ") " + md.getDoubleValue(MediaMetadata.RATING) + " " + md.getGenres()
+				+ " " + cast;
+	}
+
+	private String artwork(String id) throws Exception {
+		MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+		options.setId(Constants.PROVIDER_ID, id);
+		List<String> urls = new ArrayList<>();
+		for (MediaArtwork artwork : artworkProvider.getArtwork(options)) {
+			urls.add(artwork.getDefaultUrl());
+		}
+		return urls.size() + " " + urls.hashCode();
+	}
+
+	/**
+	 * threads (default 8), seconds (default 30), latencyMillis (default 200, served with up to 50% more)
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+		long latency = args.length > 2 ? Long.parseLong(args[2]) : 200;
+		// every call goes to the (replayed) site, nothing is answered from the caches of the providers
+		setDefault(CsfdConfig.CACHE_ENABLED, "false");
+		setDefault(IdIndex.ENABLED, "false");
+		setDefault(TitleIndex.ENABLED, "false");
+		setDefault(FilmStore.ENABLED, "false");
+
+		System.out.println(threads + " threads, " + seconds + "s, latency " + latency + "-" + latency * 3 / 2 + "ms");
+		Report report = new LoadHarness(threads, latency, latency * 3 / 2).run(Integer.MAX_VALUE, TimeUnit.SECONDS.toMillis(seconds));
+		System.out.print(report);
+		System.out.println(ScraperMetrics.getInstance());
+	}
+
+	private static void setDefault(String key, String value) {
+		if (System.getProperty(key) == null) {
+			System.setProperty(key, value);
+		}
+	}
+}
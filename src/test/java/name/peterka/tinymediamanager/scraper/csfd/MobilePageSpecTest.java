@@ -0,0 +1,64 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class MobilePageSpecTest {
+
+	@Test
+	public void testDetailMatchesDesktopPage() throws Exception {
+		MediaMetadata mobile = new MediaMetadata(Constants.PROVIDER_ID);
+		EnumSet<DetailField> missing = MobilePageSpec.extractDetail(Corpus.document("detail-19977-mobile.html"), mobile,
+				EnumSet.allOf(DetailField.class));
+		MediaMetadata desktop = new MediaMetadata(Constants.PROVIDER_ID);
+		DetailPageSpec.extract(Corpus.document("detail-19977.html"), desktop, EnumSet.allOf(DetailField.class));
+
+		// the mobile page has no IMDb link
+		assertEquals(EnumSet.of(DetailField.IMDB), missing);
+		for (String key : new String[]{MediaMetadata.TITLE, MediaMetadata.ORIGINAL_TITLE, MediaMetadata.YEAR, MediaMetadata.PLOT,
+				MediaMetadata.POSTER_URL}) {
+			assertEquals(key, desktop.getStringValue(key), mobile.getStringValue(key));
+		}
+		assertThat(mobile.getDoubleValue(MediaMetadata.RATING)).isBetween(8.2, 8.9);
+		assertEquals(desktop.getGenres(), mobile.getGenres());
+		List<MediaCastMember> actors = mobile.getCastMembers(MediaCastMember.CastType.ACTOR);
+		assertThat(actors).hasSize(16);
+		assertEquals("Charlton Heston", actors.get(0).getName());
+		assertEquals("5952", actors.get(0).getId());
+		assertThat(mobile.getCastMembers(MediaCastMember.CastType.DIRECTOR)).hasSize(1);
+		assertThat(mobile.getCastMembers(MediaCastMember.CastType.WRITER)).hasSize(1);
+	}
+
+	@Test
+	public void testOnlyRequestedFields() throws Exception {
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		EnumSet<DetailField> missing = MobilePageSpec.extractDetail(Corpus.document("detail-19977-mobile.html"), md,
+				EnumSet.of(DetailField.RATING, DetailField.IMDB));
+
+		assertEquals(EnumSet.of(DetailField.IMDB), missing);
+		assertThat(md.getDoubleValue(MediaMetadata.RATING)).isBetween(8.2, 8.9);
+		assertThat(md.getStringValue(MediaMetadata.TITLE)).isEmpty();
+		assertThat(md.getCastMembers()).isEmpty();
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		List<SearchEntry> entries = MobilePageSpec.extractSearch(Corpus.document("search-planeta-opic-mobile.html"));
+		List<SearchEntry> desktop = SearchPageSpec.extract(Corpus.document("search-planeta-opic.html"));
+
+		assertThat(entries).hasSize(7);
+		for (int i = 0; i < entries.size(); i++) {
+			assertEquals(desktop.get(i).id, entries.get(i).id);
+			assertEquals(desktop.get(i).title, entries.get(i).title);
+			assertEquals(desktop.get(i).year, entries.get(i).year);
+			assertEquals(desktop.get(i).url, entries.get(i).url);
+		}
+	}
+}
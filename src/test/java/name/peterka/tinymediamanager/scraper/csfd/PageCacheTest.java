@@ -0,0 +1,134 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageCacheTest {
+
+	File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("csfd-cache").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		new PageCache(dir, 0, 0, 0).clear();
+		dir.delete();
+	}
+
+	@Test
+	public void testMemoryHit() {
+		PageCache cache = new PageCache(null, 10, 60000, 0);
+		assertNull(cache.get(PageKind.DETAIL, "19977"));
+		cache.put(PageKind.DETAIL, "19977", "<html>Planeta opic</html>");
+
+		assertEquals("<html>Planeta opic</html>", cache.get(PageKind.DETAIL, "19977"));
+		assertNull(cache.get(PageKind.GALLERY, "19977"));
+		assertEquals(1, cache.getMemoryHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testLruEviction() {
+		PageCache cache = new PageCache(null, 2, 60000, 0);
+		cache.put(PageKind.DETAIL, "1", "a");
+		cache.put(PageKind.DETAIL, "2", "b");
+		cache.get(PageKind.DETAIL, "1");
+		cache.put(PageKind.DETAIL, "3", "c");
+
+		assertEquals("a", cache.get(PageKind.DETAIL, "1"));
+		assertNull(cache.get(PageKind.DETAIL, "2"));
+		assertEquals("c", cache.get(PageKind.DETAIL, "3"));
+	}
+
+	@Test
+	public void testDiskTier() {
+		new PageCache(dir, 10, 60000, 1024 * 1024).put(PageKind.DETAIL, "147525", "<html>Malá čarodějnice</html>");
+		assertTrue(new File(dir, "detail-147525.html.gz").isFile());
+
+		PageCache cache = new PageCache(dir, 10, 60000, 1024 * 1024);
+		assertEquals("<html>Malá čarodějnice</html>", cache.get(PageKind.DETAIL, "147525"));
+		assertEquals(1, cache.getDiskHitCount());
+		cache.get(PageKind.DETAIL, "147525");
+		assertEquals(1, cache.getMemoryHitCount());
+	}
+
+	@Test
+	public void testExpired() throws Exception {
+		PageCache cache = new PageCache(dir, 10, 1, 1024 * 1024);
+		cache.put(PageKind.GALLERY, "19977", "<html/>");
+		Thread.sleep(20);
+
+		assertNull(cache.get(PageKind.GALLERY, "19977"));
+		assertTrue(!new File(dir, "gallery-19977.html.gz").exists());
+	}
+
+	@Test
+	public void testExpiredWithVersionIsKept() throws Exception {
+		PageCache cache = new PageCache(dir, 10, 1, 1024 * 1024);
+		cache.put(PageKind.DETAIL, "19977", "<html/>", new PageVersion("\"v1\"", null, "abc"));
+		Thread.sleep(20);
+
+		assertNull(cache.get(PageKind.DETAIL, "19977"));
+		PageCache.Entry stale = new PageCache(dir, 10, 1, 1024 * 1024).getStale(PageKind.DETAIL, "19977");
+		assertEquals("<html/>", stale.html);
+		assertEquals("\"v1\"", stale.version.etag);
+		assertNull(stale.version.lastModified);
+		assertEquals("abc", stale.version.hash);
+
+		cache = new PageCache(dir, 10, 60000, 1024 * 1024);
+		cache.touch(PageKind.DETAIL, "19977");
+		assertEquals("<html/>", cache.get(PageKind.DETAIL, "19977"));
+	}
+
+	@Test
+	public void testDiskLimit() {
+		PageCache cache = new PageCache(dir, 0, 60000, 1);
+		cache.put(PageKind.DETAIL, "1", "<html>first</html>");
+		cache.put(PageKind.DETAIL, "2", "<html>second</html>");
+
+		assertTrue(dir.listFiles().length <= 1);
+	}
+
+	@Test
+	public void testReplacedPageIsCountedOnce() {
+		PageCache cache = new PageCache(dir, 0, 60000, 1024);
+		cache.put(PageKind.DETAIL, "1", "<html>first</html>");
+		for (int i = 0; i < 100; i++) {
+			cache.put(PageKind.DETAIL, "2", "<html>revalidated</html>", new PageVersion("\"" + i + "\"", null, "hash"));
+		}
+
+		assertEquals("<html>first</html>", new PageCache(dir, 0, 60000, 1024).get(PageKind.DETAIL, "1"));
+	}
+
+	@Test
+	public void testOtherStoresInTheCacheDirAreKept() throws Exception {
+		IdIndex ids = IdIndex.open(new File(dir, IdIndex.FILE_NAME));
+		ids.add("19977", "tt0063442", "Planeta opic", "Planet of the Apes", "1968");
+		File images = new File(dir, "images");
+		assertTrue(images.mkdir());
+
+		PageCache cache = new PageCache(dir, 0, 60000, 1);
+		for (int i = 0; i < 10; i++) {
+			cache.put(PageKind.DETAIL, String.valueOf(i), "<html>film " + i + "</html>", new PageVersion(null, null, "hash" + i));
+		}
+		assertTrue(new File(dir, IdIndex.FILE_NAME).isFile());
+		cache.clear();
+
+		assertTrue(images.isDirectory());
+		assertEquals("19977", IdIndex.open(new File(dir, IdIndex.FILE_NAME)).findByImdbId("tt0063442"));
+		assertTrue(new File(dir, IdIndex.FILE_NAME).delete());
+		assertTrue(images.delete());
+		assertEquals(0, dir.listFiles().length);
+	}
+}
@@ -0,0 +1,97 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class PageLoaderTest {
+
+	@Test
+	public void testConditionalRequest() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicInteger notModified = new AtomicInteger();
+		PageFetcher site = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				requests.incrementAndGet();
+				if ("\"v1\"".equals(requestHeaders.get("If-None-Match"))) {
+					notModified.incrementAndGet();
+					return new FetchResponse(url, 304, null, null);
+				}
+				Map<String, List<String>> headers = Collections.singletonMap("ETag", Collections.singletonList("\"v1\""));
+				return new FetchResponse(url, 200, headers, new ByteArrayInputStream("<html>Planeta opic</html>".getBytes("UTF-8")));
+			}
+		};
+		PageLoader loader = new PageLoader(new PageCache(null, 10, 1, 0), new RateLimiter(1000, 1000, 60000), site);
+
+		assertEquals("<html>Planeta opic</html>", loader.load(PageKind.DETAIL, "19977"));
+		Thread.sleep(20);
+		assertEquals("<html>Planeta opic</html>", loader.load(PageKind.DETAIL, "19977"));
+
+		assertEquals(2, requests.get());
+		assertEquals(1, notModified.get());
+		assertEquals("\"v1\"", loader.getVersion(PageKind.DETAIL, "19977").etag);
+	}
+
+	@Test
+	public void testNoiseDoesNotChangeTheHash() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		PageFetcher site = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				String html = "<html><h1>Planeta opic</h1><div id=\"comments\"><div>comment " + requests.incrementAndGet()
+						+ "</div></div></html>";
+				return new FetchResponse(url, 200, null, new ByteArrayInputStream(html.getBytes("UTF-8")));
+			}
+		};
+		PageLoader loader = new PageLoader(new PageCache(null, 10, 1, 0), new RateLimiter(1000, 1000, 60000), site);
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long unchanged = metrics.getCounter("pages.unchanged");
+
+		loader.load(PageKind.DETAIL, "19977");
+		String hash = loader.getVersion(PageKind.DETAIL, "19977").hash;
+		Thread.sleep(20);
+		assertEquals("<html><h1>Planeta opic</h1><div id=\"comments\"><div>comment 2</div></div></html>",
+				loader.load(PageKind.DETAIL, "19977"));
+
+		assertEquals(hash, loader.getVersion(PageKind.DETAIL, "19977").hash);
+		assertEquals(unchanged + 1, metrics.getCounter("pages.unchanged"));
+	}
+
+	@Test
+	public void testStreamedPageIsNotDownloadedAgain() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		PageFetcher site = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				requests.incrementAndGet();
+				return new FetchResponse(url, 200, null, new ByteArrayInputStream("<html>Planeta opic</html>".getBytes("UTF-8")));
+			}
+		};
+		PageLoader loader = new PageLoader(new PageCache(null, 0, 0, 0), new RateLimiter(1000, 1000, 60000), site);
+
+		// read to the end, the parse of a missed field gets the same page
+		try (Reader reader = loader.openReader(PageKind.DETAIL, "19977")) {
+			while (reader.read() != -1) {
+				// whole page
+			}
+		}
+		assertEquals("<html>Planeta opic</html>", loader.load(PageKind.DETAIL, "19977"));
+		assertEquals(1, requests.get());
+
+		// stopped early, nothing to reuse
+		try (Reader reader = loader.openReader(PageKind.DETAIL, "147525")) {
+			reader.read();
+		}
+		loader.load(PageKind.DETAIL, "147525");
+		assertEquals(3, requests.get());
+	}
+}
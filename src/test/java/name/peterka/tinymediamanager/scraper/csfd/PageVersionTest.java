@@ -0,0 +1,26 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PageVersionTest {
+
+	@Test
+	public void testContentHash() throws Exception {
+		String page = Corpus.html("detail-19977.html");
+		String hash = PageVersion.contentHash(page);
+
+		assertEquals(hash, PageVersion.contentHash(page.replace("<script type=\"text/javascript\">", "<script>var x = 1;")));
+		assertEquals(hash, PageVersion.contentHash(page.replace("</p>", "</p>\n\n")));
+		assertEquals(hash, PageVersion.contentHash(page.replaceAll("<li id=\"comment-1\"", "<li id=\"comment-x\"")));
+		assertFalse(hash.equals(PageVersion.contentHash(page.replace("Planeta opic", "Planeta opic 2"))));
+	}
+
+	@Test
+	public void testConditionalHeaders() {
+		assertEquals(0, new PageVersion(null, null, "abc").conditionalHeaders().size());
+		assertEquals("\"v1\"", new PageVersion("\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT", "abc").conditionalHeaders().get("If-None-Match"));
+	}
+}
@@ -0,0 +1,112 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PersonCacheTest {
+
+	private PageLoader live;
+
+	@Before
+	public void setUp() throws Exception {
+		live = Corpus.replay();
+	}
+
+	@After
+	public void tearDown() {
+		PageLoader.setInstance(live);
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		PersonCache.Person heston = PersonCache.parse("5952", Corpus.document("person-5952.html"));
+		assertEquals("Charlton Heston", heston.name);
+		assertThat(heston.photoUrl).startsWith("http://img.csfd.cz/files/images/creator/photos/");
+
+		// placeholder instead of a photo
+		assertEquals("", PersonCache.parse("374", Corpus.document("person-374.html")).photoUrl);
+	}
+
+	@Test
+	public void testPersonIsReadOnce() throws Exception {
+		File file = new File(Files.createTempDirectory("csfd-persons").toFile(), PersonCache.FILE_NAME);
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long fetched = metrics.getCounter("persons.fetched");
+
+		PersonCache persons = new PersonCache(file);
+		assertNull(persons.get("5952"));
+		persons.resolve("5952");
+		persons.resolve("5952");
+		persons.resolve("374");
+		assertEquals(fetched + 2, metrics.getCounter("persons.fetched"));
+
+		// the next session knows them without csfd.cz
+		PersonCache reopened = new PersonCache(file);
+		assertEquals(2, reopened.size());
+		assertEquals("Charlton Heston", reopened.get("5952").name);
+		assertEquals("", reopened.get("374").photoUrl);
+	}
+
+	@Test
+	public void testHalfWrittenPersonIsDropped() throws Exception {
+		File file = new File(Files.createTempDirectory("csfd-persons").toFile(), PersonCache.FILE_NAME);
+		PersonCache persons = new PersonCache(file);
+		persons.resolve("5952");
+		long length = file.length();
+		persons.resolve("374");
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(file.length() - 3);
+		}
+
+		persons = new PersonCache(file);
+		assertEquals(1, persons.size());
+		assertEquals(length, file.length());
+		persons.resolve("374");
+		assertEquals(2, new PersonCache(file).size());
+	}
+
+	@Test
+	public void testEnrich() throws Exception {
+		MediaMetadata md = new MediaMetadata(Constants.PROVIDER_ID);
+		DetailPageSpec.extract(Corpus.document("detail-19977.html"), md, EnumSet.of(DetailField.CREATORS));
+		List<MediaCastMember> actors = md.getCastMembers(MediaCastMember.CastType.ACTOR);
+		assertEquals("5952", actors.get(0).getId());
+		assertEquals("374", actors.get(2).getId());
+
+		PersonCache persons = new PersonCache(null);
+		// nothing known, nothing downloaded
+		List<String> unknown = persons.enrich(actors);
+		assertEquals(actors.size(), unknown.size());
+		assertEquals("5952", unknown.get(0));
+		assertNull(actors.get(0).getImageUrl());
+		assertEquals(0, persons.size());
+
+		// 77561 is not in the corpus and is skipped, 374 has no photo
+		assertEquals(2, (int) persons.resolveLater(unknown, 3).get(10, TimeUnit.SECONDS));
+		assertEquals(2, persons.size());
+		assertEquals(actors.size() - 2, persons.enrich(actors).size());
+		assertThat(actors.get(0).getImageUrl()).startsWith("http://img.csfd.cz/files/images/creator/photos/");
+		assertNull(actors.get(2).getImageUrl());
+
+		// known persons cost nothing
+		MediaCastMember again = new MediaCastMember(MediaCastMember.CastType.ACTOR);
+		again.setId("5952");
+		assertThat(persons.enrich(Collections.singletonList(again))).isEmpty();
+		assertThat(again.getImageUrl()).startsWith("http://img.csfd.cz/");
+	}
+}
@@ -0,0 +1,133 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaSearchResult;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrefetcherTest {
+
+	private PageLoader live;
+	private ReplayFetcher corpus;
+
+	@Before
+	public void setUp() throws Exception {
+		live = PageLoader.getInstance();
+		corpus = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+	}
+
+	@After
+	public void tearDown() {
+		PageLoader.setInstance(live);
+	}
+
+	private static void awaitIdle(Prefetcher prefetcher) throws InterruptedException {
+		for (int i = 0; i < 500 && prefetcher.getPendingCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, prefetcher.getPendingCount());
+	}
+
+	@Test
+	public void testPrefetchedPagesAreServed() throws Exception {
+		PageLoader loader = PageLoader.replaying(corpus);
+		PageLoader.setInstance(loader);
+		Prefetcher prefetcher = new Prefetcher(true, 1, 2);
+
+		MediaSearchResult best = new MediaSearchResult(Constants.PROVIDER_ID);
+		best.setId("19977");
+		best.setScore(1);
+		MediaSearchResult other = new MediaSearchResult(Constants.PROVIDER_ID);
+		other.setId("6649");
+		other.setScore(0.5f);
+		prefetcher.afterSearch(Arrays.asList(other, best));
+		prefetcher.afterDetail("147525");
+		awaitIdle(prefetcher);
+		assertEquals(2, corpus.getRequestCount());
+
+		loader.load(PageKind.DETAIL, "19977");
+		loader.load(PageKind.GALLERY, "147525");
+		assertEquals(2, corpus.getRequestCount());
+	}
+
+	@Test
+	public void testNothingIsFetchedUnderPressure() throws Exception {
+		RateLimiter limiter = new RateLimiter(1, 1, 60000);
+		limiter.reserve(System.nanoTime());
+		limiter.reserve(System.nanoTime());
+		PageLoader.setInstance(new PageLoader(new PageCache(null, 0, 0, 0), limiter, corpus));
+
+		Prefetcher prefetcher = new Prefetcher(true, 1, 2);
+		prefetcher.afterDetail("147525");
+
+		assertEquals(0, prefetcher.getPendingCount());
+		assertEquals(0, corpus.getRequestCount());
+	}
+
+	@Test
+	public void testBudget() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		PageFetcher slow = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return corpus.fetch(url, requestHeaders);
+			}
+		};
+		PageLoader.setInstance(PageLoader.replaying(slow));
+
+		Prefetcher prefetcher = new Prefetcher(true, 1, 1);
+		prefetcher.afterDetail("147525");
+		prefetcher.afterDetail("19977");
+		assertEquals(1, prefetcher.getPendingCount());
+
+		release.countDown();
+		awaitIdle(prefetcher);
+		assertEquals(1, corpus.getRequestCount());
+	}
+
+	@Test
+	public void testCancelKeepsRunningPrefetch() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		PageFetcher slow = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return corpus.fetch(url, requestHeaders);
+			}
+		};
+		PageLoader.setInstance(PageLoader.replaying(slow));
+
+		Prefetcher prefetcher = new Prefetcher(true, 1, 1);
+		prefetcher.afterDetail("147525");
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		prefetcher.cancelPending();
+		// still running, so neither fetched twice nor over the budget
+		assertEquals(1, prefetcher.getPendingCount());
+		prefetcher.afterDetail("147525");
+		prefetcher.afterDetail("19977");
+
+		release.countDown();
+		awaitIdle(prefetcher);
+		assertEquals(1, corpus.getRequestCount());
+	}
+}
@@ -0,0 +1,66 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+	@Test
+	public void testBurstThenRate() {
+		RateLimiter limiter = new RateLimiter(2.0, 2, 5000);
+		long now = System.nanoTime();
+
+		assertEquals(0, limiter.reserve(now));
+		assertEquals(0, limiter.reserve(now));
+		// third request waits for the next token, 2 per second
+		assertEquals(500, TimeUnit.NANOSECONDS.toMillis(limiter.reserve(now)), 5);
+		assertEquals(1000, TimeUnit.NANOSECONDS.toMillis(limiter.reserve(now)), 5);
+	}
+
+	@Test
+	public void testThrottledPausesAndSlowsDown() {
+		RateLimiter limiter = new RateLimiter(4.0, 4, 5000);
+		assertFalse(limiter.isUnderPressure());
+
+		limiter.onThrottled(3000);
+
+		assertEquals(2.0, limiter.getRate(), 0.001);
+		assertTrue(limiter.isUnderPressure());
+		long wait = TimeUnit.NANOSECONDS.toMillis(limiter.reserve(System.nanoTime()));
+		assertTrue("wait " + wait, wait > 2900 && wait <= 3000);
+	}
+
+	@Test
+	public void testRecovers() {
+		RateLimiter limiter = new RateLimiter(4.0, 4, 5000);
+		limiter.onThrottled(0);
+		for (int i = 0; i < 100; i++) {
+			limiter.onResponse(TimeUnit.MILLISECONDS.toNanos(100));
+		}
+
+		assertEquals(4.0, limiter.getRate(), 0.001);
+	}
+
+	@Test
+	public void testSlowResponse() {
+		RateLimiter limiter = new RateLimiter(4.0, 4, 5000);
+		limiter.onResponse(TimeUnit.SECONDS.toNanos(6));
+		// only one decrease per second
+		limiter.onResponse(TimeUnit.SECONDS.toNanos(6));
+
+		assertEquals(3.2, limiter.getRate(), 0.001);
+	}
+
+	@Test
+	public void testParseRetryAfter() {
+		assertEquals(120000, RateLimiter.parseRetryAfter("120"));
+		assertEquals(-1, RateLimiter.parseRetryAfter(null));
+		assertEquals(-1, RateLimiter.parseRetryAfter("soon"));
+		assertEquals(0, RateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+	}
+}
@@ -0,0 +1,63 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayFetcherTest {
+
+	@Test
+	public void testKey() {
+		assertEquals("/hledat/?q=krtek a auticko", ReplayFetcher.key("http://www.csfd.cz/hledat/?q=Krtek+a+auti%C4%8Dko"));
+		assertEquals("/film/19977", ReplayFetcher.key("https://www.csfd.cz/film/19977/"));
+		assertEquals("/", ReplayFetcher.key("http://www.csfd.cz"));
+		assertEquals("//m.csfd.cz/film/19977", ReplayFetcher.key("http://m.csfd.cz/film/19977/"));
+	}
+
+	@Test
+	public void testServesCorpus() throws Exception {
+		ReplayFetcher fetcher = ReplayFetcher.fromClasspath("/csfd-corpus/" + Corpus.VERSION);
+
+		try (FetchResponse response = fetcher.fetch(PageKind.DETAIL.url("19977"), PageFetcher.NO_HEADERS)) {
+			assertEquals(200, response.getStatus());
+			assertEquals(Corpus.html("detail-19977.html"), new String(ReplayFetcher.readFully(response.getBody()), "UTF-8"));
+		}
+		try (FetchResponse response = fetcher.fetch(PageKind.DETAIL.url("1"), PageFetcher.NO_HEADERS)) {
+			assertEquals(404, response.getStatus());
+			assertNull(response.getBody());
+		}
+		assertEquals(2, fetcher.getRequestCount());
+	}
+
+	@Test
+	public void testRecordedPagesAreReplayed() throws Exception {
+		File dir = Files.createTempDirectory("csfd-corpus").toFile();
+		PageFetcher site = new PageFetcher() {
+			@Override
+			public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+				Map<String, List<String>> headers = Collections.singletonMap("ETag", Collections.singletonList("\"v1\""));
+				return new FetchResponse(url, 200, headers, new ByteArrayInputStream(("<html>" + url).getBytes("UTF-8")));
+			}
+		};
+		String url = PageKind.SEARCH.url("Planeta+opic");
+		RecordingFetcher recorder = new RecordingFetcher(site, dir);
+		try (FetchResponse recorded = recorder.fetch(url, PageFetcher.NO_HEADERS)) {
+			assertEquals("\"v1\"", recorded.getHeader("ETag"));
+		}
+
+		assertTrue(new File(dir, "hledat-q-planeta-opic.html").isFile());
+		try (FetchResponse response = ReplayFetcher.fromDirectory(dir).fetch(url, PageFetcher.NO_HEADERS)) {
+			assertEquals("<html>" + url, new String(ReplayFetcher.readFully(response.getBody()), "UTF-8"));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaType;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class ScraperMetricsTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+		assertThat(histogram.getPercentileMillis(50)).isBetween(50.0, 50 * 1.125);
+		assertThat(histogram.getPercentileMillis(95)).isBetween(95.0, 95 * 1.125);
+		assertEquals(100.0, histogram.getPercentileMillis(100), 0.001);
+	}
+
+	@Test
+	public void testDisabled() {
+		ScraperMetrics metrics = new ScraperMetrics(false);
+		long start = metrics.start();
+		metrics.stop(ScraperMetrics.Stage.FETCH, start);
+		metrics.count("pages.fetched");
+
+		assertEquals(0, start);
+		assertEquals(0, metrics.getCount(ScraperMetrics.Stage.FETCH));
+		assertEquals(0, metrics.getCounter("pages.fetched"));
+		assertEquals(0, metrics.getCounters().size());
+	}
+
+	@Test
+	public void testScrapeIsMeasured() throws Exception {
+		ScraperMetrics metrics = ScraperMetrics.getInstance();
+		long pages = metrics.getCounter("pages.fetched");
+		long bytes = metrics.getCounter("bytes.read");
+		long parses = metrics.getCount(ScraperMetrics.Stage.PARSE);
+		long extracts = metrics.getCount(ScraperMetrics.Stage.EXTRACT);
+
+		PageLoader live = Corpus.replay();
+		try {
+			// the film is parsed, not copied from a store of other tests
+			CsfdMetadataProvider.setFilmStore(FilmStore.open(null));
+			CsfdMetadataProvider provider = new CsfdMetadataProvider();
+			MediaScrapeOptions options = new MediaScrapeOptions(MediaType.MOVIE);
+			options.setId(provider.getProviderInfo().getId(), "147525");
+			provider.getMetadata(options);
+		} finally {
+			PageLoader.setInstance(live);
+		}
+
+		assertEquals(pages + 1, metrics.getCounter("pages.fetched"));
+		assertEquals(Corpus.html("detail-147525.html").getBytes("UTF-8").length, metrics.getCounter("bytes.read") - bytes);
+		assertEquals(parses + 1, metrics.getCount(ScraperMetrics.Stage.PARSE));
+		assertEquals(extracts + 1, metrics.getCount(ScraperMetrics.Stage.EXTRACT));
+		assertThat(metrics.getTimings().get("fetch.count")).isGreaterThan(0.0);
+	}
+}
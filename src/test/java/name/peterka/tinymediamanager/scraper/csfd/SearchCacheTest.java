@@ -0,0 +1,46 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SearchCacheTest {
+
+	private static final List<SearchEntry> KRTEK = Collections.singletonList(
+			new SearchEntry("11", "Krtek a autíčko", "1963", Constants.BASE_URL + "/film/11", "http://img"));
+
+	@Test
+	public void testKeyIgnoresCaseAndDiacritics() {
+		SearchCache cache = new SearchCache(10, 60000);
+		cache.put("Krtek a autíčko", KRTEK);
+
+		assertEquals(KRTEK, cache.get("krtek a auticko"));
+		assertEquals(KRTEK, cache.get("KRTEK  A AUTÍČKO "));
+		assertNull(cache.get("krtek"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testBounded() {
+		SearchCache cache = new SearchCache(1, 60000);
+		cache.put("krtek", KRTEK);
+		cache.put("planeta opic", Collections.<SearchEntry>emptyList());
+
+		assertNull(cache.get("krtek"));
+		assertEquals(0, cache.get("planeta opic").size());
+	}
+
+	@Test
+	public void testExpired() throws Exception {
+		SearchCache cache = new SearchCache(10, 1);
+		cache.put("krtek", KRTEK);
+		Thread.sleep(20);
+
+		assertNull(cache.get("krtek"));
+	}
+}
@@ -0,0 +1,36 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchPageSpecTest {
+
+	@Test
+	public void testSearchPage() throws Exception {
+		List<SearchEntry> entries = SearchPageSpec.extract(Corpus.document("search-planeta-opic.html"));
+
+		assertThat(entries).hasSize(50);
+		SearchEntry first = entries.get(0);
+		assertThat(first.id).isEqualTo("19977");
+		assertThat(first.title).isEqualTo("Planeta opic");
+		assertThat(first.year).isEqualTo("1968");
+		assertThat(first.url).isEqualTo(Constants.BASE_URL + "//film/19977-planeta-opic/");
+		assertThat(first.posterUrl).startsWith("http://img.csfd.cz/");
+
+		// "Další nalezené záznamy" have the year in brackets
+		SearchEntry other = entries.get(10);
+		assertThat(other.title).isEqualTo("Planeta hrůzy");
+		assertThat(other.year).isEqualTo("1950");
+	}
+
+	@Test
+	public void testContainsToken() {
+		assertThat(ExtractionSpec.containsToken("film c1", "film")).isTrue();
+		assertThat(ExtractionSpec.containsToken("c1 film", "film")).isTrue();
+		assertThat(ExtractionSpec.containsToken("film-year", "film")).isFalse();
+		assertThat(ExtractionSpec.containsToken("films others", "film")).isFalse();
+	}
+}
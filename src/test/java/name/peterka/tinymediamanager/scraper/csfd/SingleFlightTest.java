@@ -0,0 +1,96 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+	@Test
+	public void testConcurrentCallersShareOneCall() throws Exception {
+		final SingleFlight<String, String> flight = new SingleFlight<>();
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<String> download = new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return "<html>";
+			}
+		};
+
+		int callers = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			results.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return flight.execute("/film/19977", download);
+				}
+			}));
+			started.await(5, TimeUnit.SECONDS);
+			for (int i = 1; i < callers; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return flight.execute("/film/19977", download);
+					}
+				}));
+			}
+			while (flight.getSharedCount() < callers - 1) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			for (Future<String> result : results) {
+				assertEquals("<html>", result.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, calls.get());
+			assertEquals(callers - 1, flight.getSharedCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailureIsSharedAndNotRemembered() throws Exception {
+		SingleFlight<String, String> flight = new SingleFlight<>();
+		try {
+			flight.execute("/film/1", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					throw new IOException("HTTP 500");
+				}
+			});
+			fail();
+		} catch (IOException e) {
+			assertEquals("HTTP 500", e.getMessage());
+		}
+
+		String html = flight.execute("/film/1", new Callable<String>() {
+			@Override
+			public String call() {
+				return "<html>";
+			}
+		});
+		assertEquals("<html>", html);
+		assertNull(flight.join("/film/1"));
+	}
+}
@@ -0,0 +1,77 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaCastMember;
+import org.tinymediamanager.scraper.MediaGenres;
+import org.tinymediamanager.scraper.MediaMetadata;
+
+import java.io.Reader;
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingDetailExtractorTest {
+
+	@Test
+	public void testPlanetaOpic() throws Exception {
+		MediaMetadata md = new MediaMetadata("csfd");
+		StreamingDetailExtractor extractor = new StreamingDetailExtractor(EnumSet.allOf(DetailField.class));
+
+		EnumSet<DetailField> missing;
+		try (Reader reader = Corpus.reader("detail-19977.html")) {
+			missing = extractor.extract(reader, md);
+		}
+
+		assertThat(missing).isEmpty();
+		assertThat(md.getStringValue(MediaMetadata.TITLE)).isEqualTo("Planeta opic");
+		assertThat(md.getStringValue(MediaMetadata.ORIGINAL_TITLE)).isEqualTo("Planet of the Apes");
+		assertThat(md.getStringValue(MediaMetadata.YEAR)).isEqualTo("1968");
+		assertThat(md.getStringValue(MediaMetadata.PLOT)).startsWith(
+				"Někde ve vesmíru přece musí být něco, co je lepší než člověk.");
+		assertThat(md.getStringValue(MediaMetadata.PLOT)).contains("opice & lidé");
+		assertThat(md.getStringValue(MediaMetadata.POSTER_URL)).startsWith("http://img.csfd.cz/files/images/film/posters/");
+		assertThat(md.getDoubleValue(MediaMetadata.RATING)).isEqualTo(8.5);
+		assertThat(md.getDoubleValue(MediaMetadata.VOTE_COUNT)).isGreaterThan(22500);
+		assertThat(md.getGenres()).containsExactly(MediaGenres.SCIENCE_FICTION, MediaGenres.ADVENTURE);
+
+		assertThat(md.getCastMembers(MediaCastMember.CastType.ACTOR).size()).isEqualTo(16);
+		assertThat(md.getCastMembers(MediaCastMember.CastType.ACTOR).get(0).getName()).isEqualTo("Charlton Heston");
+		assertThat(md.getCastMembers(MediaCastMember.CastType.ACTOR).get(0).getId()).isEqualTo("5952");
+		assertThat(md.getCastMembers(MediaCastMember.CastType.DIRECTOR).size()).isEqualTo(1);
+		assertThat(md.getCastMembers(MediaCastMember.CastType.WRITER).size()).isEqualTo(1);
+		assertThat(md.getStringValue(MediaMetadata.IMDB)).isEqualTo("tt0063442");
+	}
+
+	@Test
+	public void testStopsAfterLastField() throws Exception {
+		StreamingDetailExtractor extractor = new StreamingDetailExtractor(EnumSet.of(DetailField.TITLE_YEAR, DetailField.POSTER));
+		try (Reader reader = Corpus.reader("detail-19977.html")) {
+			extractor.extract(reader, new MediaMetadata("csfd"));
+		}
+
+		// title and poster are at the top of the page, comments and the rest are never read
+		assertThat(extractor.getCharsRead()).isLessThan(16 * 1024);
+	}
+
+	@Test
+	public void testMissingFieldIsReported() throws Exception {
+		// czech movie, og:title has no original title
+		MediaMetadata md = new MediaMetadata("csfd");
+		EnumSet<DetailField> missing;
+		try (Reader reader = Corpus.reader("detail-147525.html")) {
+			missing = new StreamingDetailExtractor(EnumSet.allOf(DetailField.class)).extract(reader, md);
+		}
+
+		assertThat(missing).containsExactly(DetailField.TITLE_YEAR);
+		assertThat(md.getStringValue(MediaMetadata.TITLE)).isEmpty();
+		assertThat(md.getCastMembers(MediaCastMember.CastType.ACTOR).size()).isEqualTo(3);
+	}
+
+	@Test
+	public void testAttr() {
+		assertThat(StreamingDetailExtractor.attr(" property=\"og:title\" content='a \"b\"'", "content")).isEqualTo("a \"b\"");
+		assertThat(StreamingDetailExtractor.attr(" itemProp=ratingCount content=12", "itemprop")).isEqualTo("ratingCount");
+		assertThat(StreamingDetailExtractor.attr(" disabled class=x", "class")).isEqualTo("x");
+		assertThat(StreamingDetailExtractor.attr(" class=x", "id")).isEqualTo("");
+	}
+}
@@ -0,0 +1,76 @@
+package name.peterka.tinymediamanager.scraper.csfd;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TitleIndexTest {
+
+	private static SearchEntry entry(String id, String title, String year) {
+		return new SearchEntry(id, title, year, PageKind.DETAIL.url(id), null);
+	}
+
+	@Test
+	public void testFindWithoutDiacritics() {
+		TitleIndex index = new TitleIndex(null, 0.9);
+		index.addAll(Arrays.asList(entry("19977", "Planeta opic", "1968"), entry("19977", "Planet of the Apes", "1968"),
+				entry("147525", "Malá čarodějnice", "1984"), entry("9499", "Matrix", "1999")));
+
+		List<SearchEntry> found = index.find("mala carodejnice", 5);
+		assertEquals("147525", found.get(0).id);
+		assertEquals("Malá čarodějnice", found.get(0).title);
+
+		found = index.find("Planeta", 5);
+		assertEquals(2, found.size());
+		assertEquals("Planeta opic", found.get(0).title);
+		assertEquals("Planet of the Apes", found.get(1).title);
+
+		assertTrue(index.find("Pelíšky", 5).isEmpty());
+		assertTrue(index.find("", 5).isEmpty());
+	}
+
+	@Test
+	public void testPersists() throws Exception {
+		File file = new File(Files.createTempDirectory("csfd-titles").toFile(), TitleIndex.FILE_NAME);
+		TitleIndex index = new TitleIndex(file, 0.9);
+		index.add(entry("19977", "Planeta opic", "1968"));
+		index.add(entry("19977", "Planeta opic", "1968"));
+		index.add(entry("6649", "Planeta opic", "2001"));
+		assertEquals(2, index.size());
+
+		TitleIndex reopened = new TitleIndex(file, 0.9);
+		assertEquals(2, reopened.size());
+		List<SearchEntry> found = reopened.find("planeta opic", 5);
+		assertEquals(2, found.size());
+		assertEquals("1968", found.get(0).year);
+		assertEquals(PageKind.DETAIL.url("19977"), found.get(0).url);
+	}
+
+	@Test
+	public void testHalfWrittenTitleIsDropped() throws Exception {
+		File file = new File(Files.createTempDirectory("csfd-titles").toFile(), TitleIndex.FILE_NAME);
+		TitleIndex index = new TitleIndex(file, 0.9);
+		index.add(entry("19977", "Planeta opic", "1968"));
+		long length = file.length();
+		index.add(entry("6649", "Planeta opic", "2001"));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(file.length() - 3);
+		}
+
+		index = new TitleIndex(file, 0.9);
+		assertEquals(1, index.size());
+		assertEquals(length, file.length());
+		index.add(entry("147525", "Malá čarodějnice", "1984"));
+
+		TitleIndex reopened = new TitleIndex(file, 0.9);
+		assertEquals(2, reopened.size());
+		assertEquals("147525", reopened.find("mala carodejnice", 5).get(0).id);
+	}
+}